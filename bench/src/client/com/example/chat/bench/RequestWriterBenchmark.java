@@ -0,0 +1,53 @@
+package com.example.chat.bench;
+
+import com.example.chat.SoapRequestWriter;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Encoding a sendRoomMessage request (SoapRequestWriter replaced
+// ChatServiceImpl.escapeXml: escaping and UTF-8 encoding are one pass).
+// Each thread reuses its writer, as the client does.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+public class RequestWriterBenchmark {
+
+    // Message length in characters
+    @Param({"16", "256", "4096"})
+    public int length;
+
+    // plain: ASCII only; escaped: accents plus XML special characters
+    @Param({"plain", "escaped"})
+    public String content;
+
+    private final SoapRequestWriter writer = new SoapRequestWriter();
+    private String message;
+
+    @Setup
+    public void setUp() {
+        String unit = "plain".equals(content) ? "see you at six " : "à 18h <salle B> & café ";
+        StringBuilder text = new StringBuilder(length + unit.length());
+        while (text.length() < length) {
+            text.append(unit);
+        }
+        message = text.substring(0, length);
+    }
+
+    @Benchmark
+    public int sendRoomMessage() {
+        return writer.writeRequest("sendRoomMessage", "general", "alice", message).size();
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.chat.bench;
+
+import com.example.chat.SoapResponseParser;
+import com.sun.xml.fastinfoset.stax.StAXDocumentSerializer;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+// Decoding a getMessagesResponse, as the client does for every poll
+// (SoapResponseParser replaced ChatServiceImpl.parseMessages). The document
+// has the shape the JAX-WS RI sends, in plain XML or Fast Infoset.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+public class ResponseParserBenchmark {
+
+    private static final String SOAP_NS = "http://schemas.xmlsoap.org/soap/envelope/";
+    private static final String CHAT_NS = "http://chat.example.com/";
+
+    @Param({"10", "100", "1000"})
+    public int messages;
+
+    @Param({"false", "true"})
+    public boolean fastInfoset;
+
+    private byte[] response;
+
+    @Setup
+    public void setUp() throws XMLStreamException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        XMLStreamWriter writer;
+        if (fastInfoset) {
+            StAXDocumentSerializer serializer = new StAXDocumentSerializer();
+            serializer.setOutputStream(out);
+            writer = serializer;
+        } else {
+            writer = XMLOutputFactory.newFactory().createXMLStreamWriter(out, "UTF-8");
+        }
+        writer.writeStartDocument();
+        writer.writeStartElement("S", "Envelope", SOAP_NS);
+        writer.writeNamespace("S", SOAP_NS);
+        writer.writeStartElement("S", "Body", SOAP_NS);
+        writer.writeStartElement("ns2", "getMessagesResponse", CHAT_NS);
+        writer.writeNamespace("ns2", CHAT_NS);
+        for (int i = 0; i < messages; i++) {
+            writer.writeStartElement("return");
+            element(writer, "sender", "user" + (i % 16));
+            element(writer, "seq", Integer.toString(i + 1));
+            element(writer, "text", Payloads.message(i));
+            element(writer, "timestamp", Long.toString(1_700_000_000_000L + i));
+            writer.writeEndElement();
+        }
+        writer.writeEndElement();
+        writer.writeEndElement();
+        writer.writeEndElement();
+        writer.writeEndDocument();
+        writer.close();
+        response = out.toByteArray();
+    }
+
+    private static void element(XMLStreamWriter writer, String name, String text) throws XMLStreamException {
+        writer.writeStartElement(name);
+        writer.writeCharacters(text);
+        writer.writeEndElement();
+    }
+
+    @Benchmark
+    public void parse(Blackhole blackhole) throws XMLStreamException {
+        SoapResponseParser.parse(new ByteArrayInputStream(response), fastInfoset,
+            SoapResponseParser.forMessages(blackhole::consume));
+    }
+}
@@ -0,0 +1,22 @@
+package com.example.chat.bench;
+
+// Chat-like message bodies: mostly short, some long, French accents and the
+// odd character that needs escaping in XML
+final class Payloads {
+
+    private static final String[] SAMPLES = {
+        "ok",
+        "Salut tout le monde !",
+        "Quelqu'un a vu la dernière version du rapport ?",
+        "Réunion déplacée à 14h, salle B <pas la A> & apportez vos portables",
+        "Je regarde ça tout de suite, merci pour le retour détaillé sur la partie réseau. "
+            + "Il faudra sans doute revoir les délais de reconnexion côté client.",
+    };
+
+    private Payloads() {
+    }
+
+    static String message(int i) {
+        return SAMPLES[i % SAMPLES.length];
+    }
+}
@@ -0,0 +1,411 @@
+package com.example.chat.bench;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.net.HttpURLConnection;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+// Not a JMH benchmark: starts ChatPublisher in its own JVM once per executor
+// mode and drives it with a fixed number of concurrent clients (1000 by
+// default), each on its own keep-alive connection. Like the Swing client, most
+// of them long-poll their room with waitForRoomChatMessages (and honour the
+// server's nextPollMs); the others send to it at a steady pace. Reports per
+// mode the send latency, the delivery latency (send to receipt by a poller)
+// and the poll answers per second, and writes them to
+// results/load-<label>.json with the senders that completed no send at all
+// while measuring (starved). Fails if a request fails or a client gets no
+// first answer within a minute, so it also checks that the server holds that
+// many clients.
+//
+// System properties: load.clients, load.senders (how many of the clients
+// send), load.rooms, load.warmup and load.seconds (s), load.modes (comma
+// separated), load.endpoint (jaxws|raw), load.send.interval and load.wait
+// (ms), load.label and load.results. Virtual threads need Java 21+; on older
+// runtimes the server falls back to the default executor and says so on
+// stderr.
+public class LoadTest {
+
+    private static final String NAMESPACE = "http://chat.example.com/";
+
+    public static void main(String[] args) throws Exception {
+        int clients = Integer.getInteger("load.clients", 1000);
+        int senders = Integer.getInteger("load.senders", clients / 10);
+        int rooms = Integer.getInteger("load.rooms", 10);
+        int warmup = Integer.getInteger("load.warmup", 5);
+        int seconds = Integer.getInteger("load.seconds", 15);
+        int sendIntervalMs = Integer.getInteger("load.send.interval", 1000);
+        int waitMs = Integer.getInteger("load.wait", 25_000);
+        String endpoint = System.getProperty("load.endpoint", "jaxws");
+        String[] modes = System.getProperty("load.modes", "default,pool,virtual").split(",");
+
+        // One pooled keep-alive connection per client (the JDK keeps 5 by default)
+        System.setProperty("http.maxConnections", String.valueOf(clients));
+        List<Result> results = new ArrayList<>();
+        for (String mode : modes) {
+            Result result = run(mode.trim(), endpoint, clients, senders, rooms, warmup, seconds, sendIntervalMs,
+                    waitMs);
+            System.out.println(result);
+            results.add(result);
+        }
+        write(Paths.get(System.getProperty("load.results", "results"),
+                "load-" + System.getProperty("load.label", "current") + ".json"), results);
+        for (Result result : results) {
+            if (result.errors > 0 || result.unanswered > 0) {
+                throw new AssertionError(result.mode + ": " + result.errors + " failed requests, "
+                        + result.unanswered + " clients never answered");
+            }
+        }
+    }
+
+    private static Result run(String mode, String endpoint, int clients, int senders, int rooms, int warmup,
+            int seconds, int sendIntervalMs, int waitMs) throws Exception {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        Process server = new ProcessBuilder(Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+                "-cp", System.getProperty("java.class.path"), "com.example.chat.ChatPublisher",
+                "--port=" + port, "--executor=" + mode, "--endpoint=" + endpoint, "--metrics=false")
+                .inheritIO().start();
+        try {
+            URL url = new URL("http://localhost:" + port + "/chat");
+            awaitStarted(url, server);
+
+            AtomicBoolean running = new AtomicBoolean(true);
+            AtomicBoolean measuring = new AtomicBoolean(false);
+            LongAdder errors = new LongAdder();
+            CountDownLatch connected = new CountDownLatch(clients);
+            List<Client> workers = new ArrayList<>();
+            for (int i = 0; i < clients; i++) {
+                Client client = i < senders
+                        ? new Sender(url, "load" + (i % rooms), "user" + i, sendIntervalMs)
+                        : new Poller(url, "load" + (i % rooms), "user" + i, waitMs);
+                workers.add(client);
+                Thread thread = new Thread(() -> client.run(running, measuring, errors, connected), client.user);
+                thread.setDaemon(true);
+                thread.start();
+            }
+            connected.await(60, TimeUnit.SECONDS);
+            long unanswered = connected.getCount();
+            Thread.sleep(warmup * 1000L);
+            measuring.set(true);
+            long start = System.nanoTime();
+            Thread.sleep(seconds * 1000L);
+            measuring.set(false);
+            long elapsed = System.nanoTime() - start;
+            // Pollers may sit in a long poll for a while yet; they stop on their
+            // own, and nothing they do from now on is recorded
+            running.set(false);
+            long failed = errors.sum();
+
+            int starved = 0;
+            long polls = 0;
+            List<long[]> sends = new ArrayList<>();
+            List<long[]> deliveries = new ArrayList<>();
+            for (Client client : workers) {
+                long[] latencies = client.latencies();
+                if (client instanceof Sender) {
+                    sends.add(latencies);
+                    if (latencies.length == 0) {
+                        starved++;
+                    }
+                } else {
+                    deliveries.add(latencies);
+                    polls += ((Poller) client).answers();
+                }
+            }
+            long[] send = merge(sends);
+            long[] delivery = merge(deliveries);
+            return new Result(mode, clients, senders, send.length * 1e9 / elapsed, percentile(send, 0.50),
+                    percentile(send, 0.99), percentile(send, 0.999), percentile(delivery, 0.50),
+                    percentile(delivery, 0.99), polls * 1e9 / elapsed, failed, unanswered, starved);
+        } finally {
+            server.destroy();
+            server.waitFor();
+        }
+    }
+
+    private static long[] merge(List<long[]> parts) {
+        int total = 0;
+        for (long[] part : parts) {
+            total += part.length;
+        }
+        long[] merged = new long[total];
+        int offset = 0;
+        for (long[] part : parts) {
+            System.arraycopy(part, 0, merged, offset, part.length);
+            offset += part.length;
+        }
+        Arrays.sort(merged);
+        return merged;
+    }
+
+    private static void awaitStarted(URL url, Process server) throws Exception {
+        URL wsdl = new URL(url + "?wsdl");
+        for (int i = 0; i < 200; i++) {
+            if (!server.isAlive()) {
+                throw new IllegalStateException("server exited with " + server.exitValue());
+            }
+            try {
+                HttpURLConnection connection = (HttpURLConnection) wsdl.openConnection();
+                if (connection.getResponseCode() == 200) {
+                    connection.getInputStream().readAllBytes();
+                    return;
+                }
+            } catch (IOException notYet) {
+                // Not listening yet
+            }
+            Thread.sleep(100);
+        }
+        throw new IllegalStateException("server did not start on " + url);
+    }
+
+    private static double percentile(long[] sorted, double fraction) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        return sorted[Math.min(sorted.length - 1, (int) (sorted.length * fraction))] / 1e6;
+    }
+
+    private static void write(Path file, List<Result> results) throws IOException {
+        Files.createDirectories(file.getParent());
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8))) {
+            out.println("[");
+            for (int i = 0; i < results.size(); i++) {
+                Result r = results.get(i);
+                out.printf(Locale.ROOT, "  {\"mode\": \"%s\", \"clients\": %d, \"senders\": %d, "
+                        + "\"sendsPerSecond\": %.1f, \"sendP50Ms\": %.3f, \"sendP99Ms\": %.3f, "
+                        + "\"sendP999Ms\": %.3f, \"deliveryP50Ms\": %.3f, \"deliveryP99Ms\": %.3f, "
+                        + "\"pollAnswersPerSecond\": %.1f, \"errors\": %d, \"unanswered\": %d, "
+                        + "\"starved\": %d}%s%n", r.mode, r.clients, r.senders, r.sendsPerSecond, r.sendP50,
+                        r.sendP99, r.sendP999, r.deliveryP50, r.deliveryP99, r.pollsPerSecond, r.errors,
+                        r.unanswered, r.starved, i < results.size() - 1 ? "," : "");
+            }
+            out.println("]");
+        }
+        System.out.println("Results written to " + file);
+    }
+
+    // One simulated user: a loop of blocking SOAP calls, latencies kept only
+    // while measuring
+    private abstract static class Client {
+        final URL url;
+        final String room;
+        final String user;
+        private long[] latencies = new long[256];
+        private int count;
+
+        Client(URL url, String room, String user) {
+            this.url = url;
+            this.room = room;
+            this.user = user;
+        }
+
+        void run(AtomicBoolean running, AtomicBoolean measuring, LongAdder errors, CountDownLatch connected) {
+            boolean first = true;
+            while (running.get()) {
+                boolean answered = step(measuring);
+                if (first) {
+                    first = false;
+                    connected.countDown();
+                }
+                if (!answered && running.get()) {
+                    errors.increment();
+                }
+            }
+        }
+
+        // One call and what follows it; false if the call failed
+        abstract boolean step(AtomicBoolean measuring);
+
+        synchronized void record(long latencyNanos) {
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count * 2);
+            }
+            latencies[count++] = latencyNanos;
+        }
+
+        synchronized long[] latencies() {
+            return Arrays.copyOf(latencies, count);
+        }
+
+        // The response body, or null when the call failed
+        String post(String body) {
+            try {
+                HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+                connection.setDoOutput(true);
+                connection.setRequestMethod("POST");
+                connection.setRequestProperty("Content-Type", "text/xml; charset=utf-8");
+                connection.setRequestProperty("SOAPAction", "\"\"");
+                try (OutputStream out = connection.getOutputStream()) {
+                    out.write(body.getBytes(StandardCharsets.UTF_8));
+                }
+                int status = connection.getResponseCode();
+                InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+                ByteArrayOutputStream response = new ByteArrayOutputStream();
+                if (in != null) {
+                    try (in) {
+                        in.transferTo(response);
+                    }
+                }
+                return status == 200 ? response.toString(StandardCharsets.UTF_8) : null;
+            } catch (IOException e) {
+                return null;
+            }
+        }
+    }
+
+    // Sends to its room every sendIntervalMs; records the send latency. Each
+    // text starts with the send time, for the pollers' delivery latency
+    private static final class Sender extends Client {
+        final int sendIntervalMs;
+        int sent = ThreadLocalRandom.current().nextInt(1000);
+
+        Sender(URL url, String room, String user, int sendIntervalMs) {
+            super(url, room, user);
+            this.sendIntervalMs = sendIntervalMs;
+        }
+
+        @Override
+        boolean step(AtomicBoolean measuring) {
+            long start = System.nanoTime();
+            String response = post(call("sendRoomMessage", room, user, start + " " + Payloads.message(sent++)));
+            if (response != null && measuring.get()) {
+                record(System.nanoTime() - start);
+            }
+            pause(ThreadLocalRandom.current().nextInt(sendIntervalMs / 2, sendIntervalMs * 3 / 2 + 1));
+            return response != null;
+        }
+    }
+
+    // Long-polls its room from the last sequence it holds; records for every
+    // message received how long after its send it arrived
+    private static final class Poller extends Client {
+        final int waitMs;
+        long lastSeq;
+        private final LongAdder answers = new LongAdder();
+
+        Poller(URL url, String room, String user, int waitMs) {
+            super(url, room, user);
+            this.waitMs = waitMs;
+        }
+
+        @Override
+        boolean step(AtomicBoolean measuring) {
+            String response = post(call("waitForRoomChatMessages", room, String.valueOf(lastSeq),
+                    String.valueOf(waitMs)));
+            if (response == null) {
+                pause(100);
+                return false;
+            }
+            long received = System.nanoTime();
+            if (measuring.get()) {
+                answers.increment();
+                for (int text = response.indexOf("<text>"); text >= 0; text = response.indexOf("<text>", text + 6)) {
+                    int space = response.indexOf(' ', text);
+                    record(received - Long.parseLong(response.substring(text + 6, space)));
+                }
+            }
+            lastSeq = longElement(response, "lastSeq", lastSeq);
+            // A server that cannot hold the poll says when to come back
+            pause(longElement(response, "nextPollMs", 0));
+            return true;
+        }
+
+        long answers() {
+            return answers.sum();
+        }
+    }
+
+    private static long longElement(String xml, String name, long defaultValue) {
+        int start = xml.indexOf("<" + name + ">");
+        if (start < 0) {
+            return defaultValue;
+        }
+        start += name.length() + 2;
+        return Long.parseLong(xml.substring(start, xml.indexOf("</" + name + ">", start)));
+    }
+
+    private static void pause(long ms) {
+        if (ms <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static String call(String operation, String... args) {
+        StringBuilder xml = new StringBuilder("<S:Envelope xmlns:S=\"http://schemas.xmlsoap.org/soap/envelope/\">"
+                + "<S:Body><ns2:").append(operation).append(" xmlns:ns2=\"").append(NAMESPACE).append("\">");
+        for (int i = 0; i < args.length; i++) {
+            xml.append("<arg").append(i).append('>').append(escape(args[i])).append("</arg").append(i).append('>');
+        }
+        return xml.append("</ns2:").append(operation).append("></S:Body></S:Envelope>").toString();
+    }
+
+    private static String escape(String text) {
+        return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+    }
+
+    private static final class Result {
+        final String mode;
+        final int clients;
+        final int senders;
+        final double sendsPerSecond;
+        final double sendP50;
+        final double sendP99;
+        final double sendP999;
+        final double deliveryP50;
+        final double deliveryP99;
+        final double pollsPerSecond;
+        final long errors;
+        final long unanswered;
+        final int starved;
+
+        Result(String mode, int clients, int senders, double sendsPerSecond, double sendP50, double sendP99,
+                double sendP999, double deliveryP50, double deliveryP99, double pollsPerSecond, long errors,
+                long unanswered, int starved) {
+            this.mode = mode;
+            this.clients = clients;
+            this.senders = senders;
+            this.sendsPerSecond = sendsPerSecond;
+            this.sendP50 = sendP50;
+            this.sendP99 = sendP99;
+            this.sendP999 = sendP999;
+            this.deliveryP50 = deliveryP50;
+            this.deliveryP99 = deliveryP99;
+            this.pollsPerSecond = pollsPerSecond;
+            this.errors = errors;
+            this.unanswered = unanswered;
+            this.starved = starved;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-8s %5d clients (%d senders): %,7.0f sends/s, send p50 %7.2f ms p99 %8.2f ms"
+                    + " p99.9 %8.2f ms, delivery p50 %8.2f ms p99 %8.2f ms, %,7.0f poll answers/s,"
+                    + " errors %d, unanswered %d, starved %d", mode, clients, senders, sendsPerSecond, sendP50,
+                    sendP99, sendP999, deliveryP50, deliveryP99, pollsPerSecond, errors, unanswered, starved);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.chat.bench;
+
+import com.example.chat.ChatService;
+import com.example.chat.ChatServiceImpl;
+import com.example.chat.RoomRegistry;
+import com.sun.net.httpserver.HttpServer;
+import jakarta.xml.ws.Endpoint;
+import jakarta.xml.ws.Service;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import javax.xml.namespace.QName;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// getMessages end to end through the JAX-WS RI on both sides over loopback:
+// request marshalling, dispatch, getMessagesResponse marshalling and
+// unmarshalling. Plain XML, no compression.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 10, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgsAppend = {"-Xms1g", "-Xmx1g", "-Dsun.net.httpserver.nodelay=true"})
+public class RoundTripBenchmark {
+
+    private static final QName SERVICE_NAME = new QName("http://chat.example.com/", "ChatServiceImplService");
+
+    @Param({"10", "100", "1000"})
+    public int messages;
+
+    private HttpServer server;
+    private ChatService port;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        ChatServiceImpl service = new ChatServiceImpl(new RoomRegistry(Math.max(messages, 16), null));
+        for (int i = 0; i < messages; i++) {
+            service.sendMessage("user" + (i % 16), Payloads.message(i));
+        }
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        Endpoint.create(service).publish(server.createContext("/chat"));
+        server.start();
+
+        URL wsdl = new URL("http://localhost:" + server.getAddress().getPort() + "/chat?wsdl");
+        port = Service.create(wsdl, SERVICE_NAME).getPort(ChatService.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Benchmark
+    public List<String> getMessages() {
+        return port.getMessages();
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.chat.bench;
+
+import com.example.chat.ChatServiceImpl;
+import com.example.chat.MessageBatch;
+import com.example.chat.RoomRegistry;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Service calls straight on ChatServiceImpl, without SOAP or HTTP: what the
+// store costs under contention. Thread count comes from -t (see the
+// bench-contention target); every thread shares one service and one room.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+public class StoreBenchmark {
+
+    // Messages already in the room, up to the ring capacity
+    @Param({"1000", "10000"})
+    public int history;
+
+    private ChatServiceImpl service;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        service = new ChatServiceImpl(new RoomRegistry(history, null));
+        for (int i = 0; i < history; i++) {
+            service.sendMessage("user" + (i % 16), Payloads.message(i));
+        }
+    }
+
+    @Benchmark
+    public void sendMessage() {
+        service.sendMessage("alice", "Salut tout le monde, on se retrouve à 18h ?");
+    }
+
+    @Benchmark
+    public List<String> getMessages() {
+        return service.getMessages();
+    }
+
+    // What a polling client asks for most of the time: only the newest messages
+    @Benchmark
+    public MessageBatch getMessagesSinceTail() {
+        return service.getMessagesSince(Math.max(0, history - 10));
+    }
+}
@@ -0,0 +1,215 @@
+package com.example.chat;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rythme adaptatif des interrogations du serveur.
+ * L'intervalle entre deux interrogations recule exponentiellement tant qu'elles
+ * ne rapportent rien de nouveau (ou échouent), et revient immédiatement au
+ * minimum dès qu'une activité est constatée ou signalée (envoi local, retour de
+ * la fenêtre au premier plan). Chaque délai reçoit une part aléatoire pour que
+ * de nombreux clients ne se synchronisent pas ; le délai minimal éventuellement
+ * indiqué par le serveur est toujours respecté. En pause (fenêtre réduite),
+ * aucune interrogation n'est lancée. Une attente (long-polling) que le serveur
+ * a tenue sert elle-même de pause : la suivante est relancée sans délai, et le
+ * recul ne s'applique qu'aux échecs et aux réponses vides rendues sans attendre.
+ *
+ * @author Client Chat SOAP
+ * @version 1.0
+ */
+public class AdaptivePollScheduler {
+
+    private PollingPolicy policy;
+
+    // État protégé par le moniteur de l'instance
+    private long intervalMs;
+    private long hintMs;
+    private boolean paused;
+    private long boosts;
+    // Vrai quand la prochaine interrogation doit partir sans délai
+    private boolean rearm;
+
+    /**
+     * Crée un ordonnanceur avec la politique par défaut
+     */
+    public AdaptivePollScheduler() {
+        this(PollingPolicy.DEFAULT);
+    }
+
+    /**
+     * Crée un ordonnanceur
+     *
+     * @param policy Politique d'interrogation
+     */
+    public AdaptivePollScheduler(PollingPolicy policy) {
+        this.policy = policy;
+        this.intervalMs = policy.getMinIntervalMs();
+    }
+
+    /**
+     * @return La politique d'interrogation
+     */
+    public synchronized PollingPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Remplace la politique d'interrogation ; l'intervalle courant est ramené
+     * dans ses bornes
+     *
+     * @param policy Nouvelle politique
+     */
+    public synchronized void setPolicy(PollingPolicy policy) {
+        this.policy = policy;
+        intervalMs = clamp(intervalMs);
+        notifyAll();
+    }
+
+    /**
+     * @return L'intervalle courant entre deux interrogations, hors part aléatoire
+     *         et hors délai demandé par le serveur, en millisecondes
+     */
+    public synchronized long getCurrentIntervalMs() {
+        return intervalMs;
+    }
+
+    /**
+     * @return Le délai minimal demandé par le serveur lors de la dernière
+     *         interrogation, en millisecondes (0 si aucun)
+     */
+    public synchronized long getServerHintMs() {
+        return hintMs;
+    }
+
+    /**
+     * @return true si les interrogations sont suspendues
+     */
+    public synchronized boolean isPaused() {
+        return paused;
+    }
+
+    /**
+     * Enregistre le résultat d'une interrogation réussie
+     *
+     * @param changed true si l'interrogation a rapporté du nouveau
+     * @param nextPollMs Délai minimal demandé par le serveur (0 si aucun)
+     */
+    public synchronized void recordResult(boolean changed, long nextPollMs) {
+        hintMs = Math.max(0, nextPollMs);
+        intervalMs = changed ? policy.getMinIntervalMs() : backoff(intervalMs);
+        rearm = false;
+    }
+
+    /**
+     * Enregistre le résultat d'une attente (long-polling) réussie. Si elle a
+     * rapporté du nouveau, ou si le serveur l'a tenue au moins la moitié de son
+     * délai, l'attente suivante est relancée sans délai (hors délai demandé par
+     * le serveur) : elle livrera le prochain message dès son envoi. Une réponse
+     * vide rendue plus tôt (serveur qui ne tient pas les attentes) recule comme
+     * une interrogation sans nouveauté.
+     *
+     * @param changed true si l'attente a rapporté du nouveau
+     * @param nextPollMs Délai minimal demandé par le serveur (0 si aucun)
+     * @param waitedMs Durée de l'attente, en millisecondes
+     * @param timeoutMs Délai d'attente demandé au serveur, en millisecondes
+     */
+    public synchronized void recordLongPollResult(boolean changed, long nextPollMs, long waitedMs, long timeoutMs) {
+        if (!changed && waitedMs < timeoutMs / 2) {
+            recordResult(false, nextPollMs);
+            return;
+        }
+        hintMs = Math.max(0, nextPollMs);
+        if (changed) {
+            intervalMs = policy.getMinIntervalMs();
+        }
+        rearm = true;
+    }
+
+    /**
+     * Enregistre l'échec d'une interrogation : l'intervalle recule comme en
+     * l'absence de nouveauté
+     */
+    public synchronized void recordFailure() {
+        intervalMs = backoff(intervalMs);
+        rearm = false;
+    }
+
+    /**
+     * Signale une activité locale : l'intervalle revient au minimum et une
+     * attente en cours est raccourcie d'autant
+     */
+    public synchronized void boost() {
+        intervalMs = policy.getMinIntervalMs();
+        boosts++;
+        notifyAll();
+    }
+
+    /**
+     * Suspend ou reprend les interrogations ; la reprise compte comme une activité
+     *
+     * @param paused true pour suspendre
+     */
+    public synchronized void setPaused(boolean paused) {
+        if (this.paused == paused) {
+            return;
+        }
+        this.paused = paused;
+        if (paused) {
+            notifyAll();
+        } else {
+            boost();
+        }
+    }
+
+    /**
+     * Attend le moment de la prochaine interrogation. L'attente est raccourcie
+     * par {@link #boost()}, sans descendre sous le délai demandé par le serveur,
+     * et se prolonge tant que les interrogations sont suspendues. Après une
+     * attente tenue par le serveur, seul le délai demandé par celui-ci s'applique.
+     *
+     * @throws InterruptedException Si le thread est interrompu pendant l'attente
+     */
+    public synchronized void awaitNextPoll() throws InterruptedException {
+        long start = System.nanoTime();
+        long earliest = start + TimeUnit.MILLISECONDS.toNanos(hintMs);
+        long deadline = rearm ? earliest
+                : Math.max(earliest, start + TimeUnit.MILLISECONDS.toNanos(jittered(intervalMs)));
+        rearm = false;
+        long seenBoosts = boosts;
+        while (true) {
+            if (paused) {
+                wait();
+                continue;
+            }
+            if (boosts != seenBoosts) {
+                seenBoosts = boosts;
+                deadline = Math.min(deadline,
+                        Math.max(earliest, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(jittered(intervalMs))));
+            }
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return;
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+    }
+
+    private long backoff(long interval) {
+        // Partir d'au moins 1 ms pour qu'un minimum nul puisse reculer
+        return clamp((long) Math.ceil(Math.max(1, interval) * policy.getBackoffFactor()));
+    }
+
+    private long clamp(long interval) {
+        return Math.max(policy.getMinIntervalMs(), Math.min(policy.getMaxIntervalMs(), interval));
+    }
+
+    private long jittered(long interval) {
+        double jitter = policy.getJitter();
+        if (jitter == 0 || interval == 0) {
+            return interval;
+        }
+        double factor = 1 + jitter * (2 * ThreadLocalRandom.current().nextDouble() - 1);
+        return Math.round(interval * factor);
+    }
+}
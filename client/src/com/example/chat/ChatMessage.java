@@ -0,0 +1,68 @@
+package com.example.chat;
+
+/**
+ * Message d'un salon tel que renvoyé par le serveur : son numéro de séquence
+ * dans le salon, son expéditeur, son heure de réception par le serveur et
+ * son texte.
+ *
+ * @author Client Chat SOAP
+ * @version 1.0
+ */
+public class ChatMessage {
+    
+    private final long seq;
+    private final String sender;
+    private final long timestamp;
+    private final String text;
+    
+    /**
+     * Construit un message
+     * 
+     * @param seq Numéro de séquence du message dans son salon
+     * @param sender Nom d'utilisateur de l'expéditeur
+     * @param timestamp Heure de réception par le serveur, en millisecondes depuis l'epoch
+     * @param text Contenu du message
+     */
+    public ChatMessage(long seq, String sender, long timestamp, String text) {
+        this.seq = seq;
+        this.sender = sender != null ? sender : "";
+        this.timestamp = timestamp;
+        this.text = text != null ? text : "";
+    }
+    
+    /**
+     * @return Le numéro de séquence du message dans son salon
+     */
+    public long getSeq() {
+        return seq;
+    }
+    
+    /**
+     * @return Le nom d'utilisateur de l'expéditeur
+     */
+    public String getSender() {
+        return sender;
+    }
+    
+    /**
+     * @return L'heure de réception du message par le serveur, en millisecondes depuis l'epoch
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+    
+    /**
+     * @return Le contenu du message
+     */
+    public String getText() {
+        return text;
+    }
+    
+    /**
+     * @return Le message au format "username: message"
+     */
+    @Override
+    public String toString() {
+        return sender + ": " + text;
+    }
+}
@@ -1,19 +1,28 @@
 package com.example.chat;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
-import java.io.OutputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
-import java.nio.charset.StandardCharsets;
+import com.sun.xml.fastinfoset.stax.StAXDocumentSerializer;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Consumer;
+import javax.xml.stream.XMLStreamException;
 
 /**
  * Implémentation HTTP du service de chat SOAP.
  * Cette classe fait les appels SOAP manuellement en utilisant des requêtes HTTP standard
  * au lieu d'utiliser les bibliothèques générées par wsimport.
  * Cela permet d'éviter les problèmes de compatibilité entre les namespaces javax et jakarta.
+ * L'historique est lu par les opérations getRoomChatMessages, getRoomChatMessagesSince, etc.,
+ * qui renvoient des messages structurés ; les opérations d'origine, qui renvoient des chaînes
+ * "expéditeur: texte", restent servies pour les anciens clients.
  *
  * @author Client Chat SOAP
  * @version 1.0
@@ -22,7 +31,36 @@ public class ChatServiceImpl implements JakartaClient.ChatService {
     
     // URL du service SOAP, modifiable via un setter pour plus de flexibilité
     private String endpointUrl = "http://localhost:8080/chat";
-    private static final String SOAP_ACTION = "";
+    
+    // Transport HTTP partagé : connexions persistantes et délais d'attente
+    private volatile SoapTransport transport = new SoapTransport();
+    
+    private static final String SOAP_ENV_NS = "http://schemas.xmlsoap.org/soap/envelope/";
+    private static final String CHAT_NS = "http://chat.example.com/";
+    private static final String FAST_INFOSET_TYPE = "application/fastinfoset";
+    private static final String XML_TYPE = "text/xml;charset=UTF-8";
+    private static final int HTTP_NOT_MODIFIED = 304;
+    private static final int HTTP_UNSUPPORTED_TYPE = 415;
+    private static final String[] ARG_NAMES = { "arg0", "arg1", "arg2", "arg3" };
+    
+    // Tampons d'encodage des requêtes, réutilisés par chaque thread appelant
+    private static final ThreadLocal<SoapRequestWriter> REQUEST_WRITER =
+        ThreadLocal.withInitial(SoapRequestWriter::new);
+    private static final ThreadLocal<StAXDocumentSerializer> FAST_INFOSET_WRITER =
+        ThreadLocal.withInitial(StAXDocumentSerializer::new);
+    
+    // Réponse sans contenu utile : lue jusqu'au bout pour libérer la connexion
+    private static final SoapResponseParser.ElementHandler IGNORE_CONTENT =
+        SoapResponseParser.forElement("return", value -> { });
+    
+    // Fast Infoset : annoncé dans Accept tant qu'il est activé ; les requêtes
+    // ne passent en binaire qu'après une première réponse Fast Infoset du serveur
+    private volatile boolean fastInfosetEnabled = true;
+    private volatile boolean serverSpeaksFastInfoset = false;
+    
+    // Dernière version (ETag) de l'historique de chaque salon interrogé ;
+    // renvoyée au serveur qui répond 304 sans corps si rien n'a changé
+    private final ConcurrentMap<String, HistoryVersion> historyVersions = new ConcurrentHashMap<>();
     
     /**
      * Constructeur par défaut qui utilise l'URL par défaut (localhost:8080)
@@ -50,6 +88,7 @@ public class ChatServiceImpl implements JakartaClient.ChatService {
     public void setEndpointUrl(String serviceUrl) {
         if (serviceUrl != null && !serviceUrl.isEmpty()) {
             this.endpointUrl = serviceUrl;
+            this.historyVersions.clear();
         }
     }
     
@@ -61,6 +100,52 @@ public class ChatServiceImpl implements JakartaClient.ChatService {
     public String getEndpointUrl() {
         return this.endpointUrl;
     }
+    
+    /**
+     * Modifie les délais de connexion et de lecture. Les connexions déjà
+     * ouvertes sont abandonnées au profit d'un nouveau transport.
+     * 
+     * @param connectTimeout Délai maximal d'établissement d'une connexion
+     * @param readTimeout Délai maximal d'attente d'une réponse, en plus de la
+     *                    durée d'attente demandée au serveur en long-polling
+     */
+    public void setTimeouts(Duration connectTimeout, Duration readTimeout) {
+        this.transport = new SoapTransport(connectTimeout, readTimeout);
+    }
+    
+    /**
+     * Utilise un transport existant, par exemple pour partager ses connexions
+     * entre plusieurs instances du service
+     * 
+     * @param transport Transport HTTP à utiliser
+     */
+    public void setTransport(SoapTransport transport) {
+        this.transport = transport;
+    }
+    
+    /**
+     * Active ou désactive l'encodage binaire Fast Infoset. Lorsqu'il est activé
+     * (par défaut), le client demande des réponses Fast Infoset et envoie ses
+     * requêtes dans ce format dès que le serveur a montré qu'il le comprend ;
+     * sinon tous les échanges se font en XML texte.
+     * 
+     * @param enabled true pour négocier Fast Infoset avec le serveur
+     */
+    public void setFastInfosetEnabled(boolean enabled) {
+        this.fastInfosetEnabled = enabled;
+        if (!enabled) {
+            this.serverSpeaksFastInfoset = false;
+        }
+    }
+    
+    /**
+     * Indique si les échanges avec le serveur se font actuellement en Fast Infoset
+     * 
+     * @return true si le serveur a répondu en Fast Infoset
+     */
+    public boolean isUsingFastInfoset() {
+        return fastInfosetEnabled && serverSpeaksFastInfoset;
+    }
       /**
      * Envoie un message au service de chat
      * 
@@ -70,6 +155,247 @@ public class ChatServiceImpl implements JakartaClient.ChatService {
      */
     @Override
     public void sendMessage(String user, String message) {
+        validateMessage(user, message);
+        invoke("sendMessage", "Erreur lors de l'envoi du message", IGNORE_CONTENT, user, message);
+    }
+      /**
+     * Récupère tous les messages du service de chat
+     * 
+     * @return Liste des messages
+     * @throws RuntimeException Si une erreur survient lors de la récupération
+     */
+    @Override
+    public List<ChatMessage> getMessages() {
+        return getMessages(DEFAULT_ROOM);
+    }
+    
+    /**
+     * Envoie un message sans bloquer le thread appelant
+     * 
+     * @param user Le nom d'utilisateur de l'expéditeur
+     * @param message Le contenu du message
+     * @return Un futur terminé quand le serveur a accepté le message
+     * @throws IllegalArgumentException Si l'utilisateur ou le message est vide
+     */
+    @Override
+    public CompletableFuture<Void> sendMessageAsync(String user, String message) {
+        validateMessage(user, message);
+        return invokeAsync("sendMessage", "Erreur lors de l'envoi du message", IGNORE_CONTENT, user, message);
+    }
+    
+    /**
+     * Récupère tous les messages sans bloquer le thread appelant
+     * 
+     * @return Un futur de la liste des messages
+     */
+    @Override
+    public CompletableFuture<List<ChatMessage>> getMessagesAsync() {
+        return getMessagesAsync(DEFAULT_ROOM);
+    }
+      /**
+     * Récupère les messages plus récents que le numéro de séquence donné
+     * 
+     * @param lastSeq Dernier numéro de séquence déjà reçu (0 pour tout l'historique)
+     * @return Les nouveaux messages et le dernier numéro de séquence du serveur
+     * @throws RuntimeException Si une erreur survient lors de la récupération
+     */
+    @Override
+    public MessageBatch getMessagesSince(long lastSeq) {
+        return getMessagesSince(DEFAULT_ROOM, lastSeq);
+    }
+      /**
+     * Attend côté serveur l'arrivée de messages plus récents que le numéro de séquence donné
+     * 
+     * @param sinceSeq Dernier numéro de séquence déjà reçu
+     * @param timeoutMs Durée d'attente maximale côté serveur, en millisecondes
+     * @return Les nouveaux messages (éventuellement aucun) et le dernier numéro de séquence
+     * @throws RuntimeException Si une erreur survient lors de la récupération
+     */
+    @Override
+    public MessageBatch waitForMessages(long sinceSeq, int timeoutMs) {
+        return waitForMessages(DEFAULT_ROOM, sinceSeq, timeoutMs);
+    }
+    
+    /**
+     * Envoie un message dans un salon donné
+     * 
+     * @param room Nom du salon
+     * @param user Le nom d'utilisateur de l'expéditeur
+     * @param message Le contenu du message
+     * @throws RuntimeException Si une erreur survient lors de l'envoi
+     */
+    @Override
+    public void sendMessage(String room, String user, String message) {
+        validateMessage(user, message);
+        invoke("sendRoomMessage", "Erreur lors de l'envoi du message", IGNORE_CONTENT, room, user, message);
+    }
+    
+    /**
+     * Envoie un message dans un salon sans bloquer le thread appelant
+     * 
+     * @param room Nom du salon
+     * @param user Le nom d'utilisateur de l'expéditeur
+     * @param message Le contenu du message
+     * @return Un futur terminé quand le serveur a accepté le message
+     * @throws IllegalArgumentException Si l'utilisateur ou le message est vide
+     */
+    @Override
+    public CompletableFuture<Void> sendMessageAsync(String room, String user, String message) {
+        validateMessage(user, message);
+        return invokeAsync("sendRoomMessage", "Erreur lors de l'envoi du message", IGNORE_CONTENT, room, user, message);
+    }
+    
+    /**
+     * Envoie plusieurs messages dans un salon en un seul appel SOAP
+     * 
+     * @param room Nom du salon
+     * @param messages Messages à envoyer, ajoutés en une seule fois par le serveur
+     * @throws RuntimeException Si une erreur survient lors de l'envoi
+     */
+    @Override
+    public void sendMessages(String room, List<MessageInput> messages) {
+        if (messages.isEmpty()) {
+            return;
+        }
+        for (MessageInput input : messages) {
+            validateMessage(input.getUser(), input.getMessage());
+        }
+        invoke("sendMessages", "Erreur lors de l'envoi des messages", IGNORE_CONTENT, room, messages);
+    }
+    
+    /**
+     * Récupère tous les messages d'un salon
+     * 
+     * @param room Nom du salon
+     * @return Liste des messages
+     * @throws RuntimeException Si une erreur survient lors de la récupération
+     */
+    @Override
+    public List<ChatMessage> getMessages(String room) {
+        List<ChatMessage> messages = new ArrayList<>();
+        getMessages(room, messages::add);
+        return messages;
+    }
+    
+    /**
+     * Lit tous les messages d'un salon au fil de leur réception : chaque message
+     * est transmis dès qu'il est décodé, sans conserver la réponse en mémoire
+     * 
+     * @param room Nom du salon
+     * @param consumer Destinataire des messages
+     * @throws RuntimeException Si une erreur survient lors de la récupération
+     */
+    @Override
+    public void getMessages(String room, Consumer<ChatMessage> consumer) {
+        invoke("getRoomChatMessages", "Erreur lors de la récupération des messages", returnMessages(consumer), room);
+    }
+    
+    /**
+     * Récupère tous les messages d'un salon sans bloquer le thread appelant
+     * 
+     * @param room Nom du salon
+     * @return Un futur de la liste des messages
+     */
+    @Override
+    public CompletableFuture<List<ChatMessage>> getMessagesAsync(String room) {
+        List<ChatMessage> messages = new ArrayList<>();
+        return invokeAsync("getRoomChatMessages", "Erreur lors de la récupération des messages", returnMessages(messages::add), room)
+            .thenApply(done -> messages);
+    }
+    
+    /**
+     * Récupère les messages d'un salon plus récents que le numéro de séquence donné
+     * 
+     * @param room Nom du salon
+     * @param lastSeq Dernier numéro de séquence déjà reçu dans ce salon
+     * @return Les nouveaux messages et le dernier numéro de séquence du salon
+     * @throws RuntimeException Si une erreur survient lors de la récupération
+     */
+    @Override
+    public MessageBatch getMessagesSince(String room, long lastSeq) {
+        return invokeConditionalBatch("getRoomChatMessagesSince", room, lastSeq, room, lastSeq);
+    }
+    
+    /**
+     * Attend l'arrivée de nouveaux messages dans un salon (long-polling)
+     * 
+     * @param room Nom du salon
+     * @param sinceSeq Dernier numéro de séquence déjà reçu dans ce salon
+     * @param timeoutMs Durée d'attente maximale côté serveur, en millisecondes
+     * @return Les nouveaux messages (éventuellement aucun) et le dernier numéro de séquence
+     * @throws RuntimeException Si une erreur survient lors de la récupération
+     */
+    @Override
+    public MessageBatch waitForMessages(String room, long sinceSeq, int timeoutMs) {
+        return invokeBatch("waitForRoomChatMessages", "Erreur lors de l'attente des messages", timeoutMs,
+            room, sinceSeq, timeoutMs);
+    }
+    
+    /**
+     * Récupère les derniers messages d'un salon
+     * 
+     * @param room Nom du salon
+     * @param limit Nombre maximal de messages
+     * @return Les derniers messages, du plus ancien au plus récent
+     * @throws RuntimeException Si une erreur survient lors de la récupération
+     */
+    @Override
+    public MessagePage getRecentMessages(String room, int limit) {
+        return invokePage("getRoomRecentChatMessages", room, limit);
+    }
+    
+    /**
+     * Récupère les messages d'un salon qui précèdent un numéro de séquence
+     * 
+     * @param room Nom du salon
+     * @param seq Numéro de séquence du plus ancien message déjà reçu
+     * @param limit Nombre maximal de messages
+     * @return Les messages qui précèdent seq, du plus ancien au plus récent
+     * @throws RuntimeException Si une erreur survient lors de la récupération
+     */
+    @Override
+    public MessagePage getMessagesBefore(String room, long seq, int limit) {
+        return invokePage("getRoomChatMessagesBefore", room, seq, limit);
+    }
+    
+    /**
+     * Récupère la liste des salons existants
+     * 
+     * @return Noms des salons, triés par ordre alphabétique
+     * @throws RuntimeException Si une erreur survient lors de la récupération
+     */
+    @Override
+    public List<String> listRooms() {
+        List<String> rooms = new ArrayList<>();
+        invoke("listRooms", "Erreur lors de la récupération des salons", returnValues(rooms::add));
+        return rooms;
+    }
+    
+    /**
+     * Recherche dans l'historique d'un salon, côté serveur
+     * 
+     * @param room Nom du salon
+     * @param query Termes recherchés ; un terme suivi de '*' est un préfixe
+     * @param limit Nombre maximal de résultats
+     * @return Les messages trouvés, du plus récent au plus ancien
+     * @throws RuntimeException Si une erreur survient lors de la recherche
+     */
+    @Override
+    public List<ChatMessage> searchMessages(String room, String query, int limit) {
+        List<ChatMessage> results = new ArrayList<>();
+        invoke("searchRoomChatMessages", "Erreur lors de la recherche des messages", returnMessages(results::add),
+            room, query == null ? "" : query, limit);
+        return results;
+    }
+    
+    /**
+     * Vérifie qu'un message peut être envoyé
+     * 
+     * @param user Le nom d'utilisateur de l'expéditeur
+     * @param message Le contenu du message
+     * @throws IllegalArgumentException Si l'utilisateur ou le message est vide
+     */
+    private void validateMessage(String user, String message) {
         if (user == null || user.trim().isEmpty()) {
             throw new IllegalArgumentException("Le nom d'utilisateur ne peut pas être vide");
         }
@@ -77,140 +403,449 @@ public class ChatServiceImpl implements JakartaClient.ChatService {
         if (message == null || message.trim().isEmpty()) {
             throw new IllegalArgumentException("Le message ne peut pas être vide");
         }
-        
+    }
+    
+    /**
+     * Appelle une opération du service et traduit les erreurs réseau en messages lisibles
+     * 
+     * @param operation Nom de l'opération SOAP
+     * @param errorMessage Message d'erreur utilisé pour les erreurs non réseau
+     * @param handler Destinataire des éléments de la réponse, au fil de leur décodage
+     * @param args Arguments de l'opération, transmis dans l'ordre (arg0, arg1, ...)
+     * @throws RuntimeException Si une erreur survient lors de l'appel
+     */
+    private void invoke(String operation, String errorMessage, SoapResponseParser.ElementHandler handler,
+            Object... args) {
+        invokeWaiting(operation, errorMessage, 0, handler, args);
+    }
+    
+    /**
+     * Appelle une opération qui peut attendre côté serveur ; le délai de lecture
+     * est prolongé de la durée d'attente demandée
+     * 
+     * @param operation Nom de l'opération SOAP
+     * @param errorMessage Message d'erreur utilisé pour les erreurs non réseau
+     * @param waitMs Durée d'attente maximale côté serveur, en millisecondes
+     * @param handler Destinataire des éléments de la réponse, au fil de leur décodage
+     * @param args Arguments de l'opération, transmis dans l'ordre (arg0, arg1, ...)
+     * @throws RuntimeException Si une erreur survient lors de l'appel
+     */
+    private void invokeWaiting(String operation, String errorMessage, long waitMs,
+            SoapResponseParser.ElementHandler handler, Object... args) {
+        invokeConditional(operation, errorMessage, waitMs, null, handler, args);
+    }
+    
+    /**
+     * Appelle une opération en joignant éventuellement la version déjà connue
+     * de sa réponse
+     * 
+     * @param operation Nom de l'opération SOAP
+     * @param errorMessage Message d'erreur utilisé pour les erreurs non réseau
+     * @param waitMs Durée d'attente maximale côté serveur, en millisecondes
+     * @param ifNoneMatch ETag d'une réponse précédente, ou null
+     * @param handler Destinataire des éléments de la réponse, au fil de leur décodage
+     * @param args Arguments de l'opération, transmis dans l'ordre (arg0, arg1, ...)
+     * @return La réponse HTTP, déjà lue et fermée
+     * @throws RuntimeException Si une erreur survient lors de l'appel
+     */
+    private SoapTransport.Response invokeConditional(String operation, String errorMessage, long waitMs,
+            String ifNoneMatch, SoapResponseParser.ElementHandler handler, Object... args) {
         try {
-            String soapRequest = 
-                "<soapenv:Envelope xmlns:soapenv=\"http://schemas.xmlsoap.org/soap/envelope/\" xmlns:chat=\"http://chat.example.com/\">\n" +
-                "   <soapenv:Header/>\n" +
-                "   <soapenv:Body>\n" +
-                "      <chat:sendMessage>\n" +
-                "         <arg0>" + escapeXml(user) + "</arg0>\n" +
-                "         <arg1>" + escapeXml(message) + "</arg1>\n" +
-                "      </chat:sendMessage>\n" +
-                "   </soapenv:Body>\n" +
-                "</soapenv:Envelope>";
-            
-            sendSoapRequest(soapRequest);
-        } catch (java.net.ConnectException e) {
-            throw new RuntimeException("Impossible de se connecter au serveur à l'adresse " + this.endpointUrl, e);
-        } catch (java.net.UnknownHostException e) {
-            throw new RuntimeException("Adresse du serveur introuvable : " + this.endpointUrl, e);
+            return sendSoapRequest(operation, waitMs, ifNoneMatch, handler, args);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(errorMessage, e);
         } catch (Exception e) {
-            throw new RuntimeException("Erreur lors de l'envoi du message", e);
+            throw translateError(e, errorMessage);
         }
     }
-      /**
-     * Récupère tous les messages du service de chat
+    
+    /**
+     * Appelle une opération qui répond par un lot de messages
      * 
-     * @return Liste des messages au format "username: message"
-     * @throws RuntimeException Si une erreur survient lors de la récupération
+     * @param operation Nom de l'opération SOAP
+     * @param errorMessage Message d'erreur utilisé pour les erreurs non réseau
+     * @param waitMs Durée d'attente maximale côté serveur, en millisecondes (0 si l'opération n'attend pas)
+     * @param args Arguments de l'opération, transmis dans l'ordre (arg0, arg1, ...)
+     * @return Le lot de messages reçu
+     * @throws RuntimeException Si une erreur survient lors de l'appel
      */
-    @Override
-    public List<String> getMessages() {
+    private MessageBatch invokeBatch(String operation, String errorMessage, long waitMs, Object... args) {
+        BatchHandler batch = new BatchHandler();
+        invokeWaiting(operation, errorMessage, waitMs, batch, args);
+        return new MessageBatch(batch.lastSeq, batch.messages, batch.nextPollMs);
+    }
+    
+    /**
+     * Appelle une opération qui répond par une page de l'historique
+     * 
+     * @param operation Nom de l'opération SOAP
+     * @param args Arguments de l'opération, transmis dans l'ordre (arg0, arg1, ...)
+     * @return La page reçue
+     * @throws RuntimeException Si une erreur survient lors de l'appel
+     */
+    private MessagePage invokePage(String operation, Object... args) {
+        PageHandler page = new PageHandler();
+        invoke(operation, "Erreur lors de la récupération des messages", page, args);
+        return new MessagePage(page.firstSeq, page.lastSeq, page.messages);
+    }
+    
+    /**
+     * Interroge l'historique d'un salon en joignant la version reçue lors de
+     * l'appel précédent. Si le serveur répond qu'elle n'a pas changé (304),
+     * le lot vide est construit sans rien décoder.
+     * 
+     * @param operation Nom de l'opération SOAP
+     * @param room Salon interrogé, clé de la version mémorisée
+     * @param lastSeq Dernier numéro de séquence déjà reçu dans ce salon
+     * @param args Arguments de l'opération, transmis dans l'ordre (arg0, arg1, ...)
+     * @return Le lot de messages reçu
+     * @throws RuntimeException Si une erreur survient lors de l'appel
+     */
+    private MessageBatch invokeConditionalBatch(String operation, String room, long lastSeq, Object... args) {
+        HistoryVersion known = historyVersions.get(room);
+        BatchHandler batch = new BatchHandler();
+        SoapTransport.Response response = invokeConditional(operation, "Erreur lors de la récupération des messages",
+            0, known == null ? null : known.etag, batch, args);
+        if (response.getStatus() == HTTP_NOT_MODIFIED) {
+            return new MessageBatch(lastSeq, new ArrayList<>(), known == null ? 0 : known.nextPollMs);
+        }
+        if (response.getETag() != null) {
+            historyVersions.put(room, new HistoryVersion(response.getETag(), batch.nextPollMs));
+        } else {
+            historyVersions.remove(room);
+        }
+        return new MessageBatch(batch.lastSeq, batch.messages, batch.nextPollMs);
+    }
+    
+    /**
+     * Appelle une opération du service sans bloquer le thread appelant
+     * 
+     * @param operation Nom de l'opération SOAP
+     * @param errorMessage Message d'erreur utilisé pour les erreurs non réseau
+     * @param handler Destinataire des éléments de la réponse, au fil de leur décodage
+     * @param args Arguments de l'opération, transmis dans l'ordre (arg0, arg1, ...)
+     * @return Un futur terminé une fois la réponse lue, ou en erreur par une
+     *         RuntimeException au message lisible si l'appel échoue
+     */
+    private CompletableFuture<Void> invokeAsync(String operation, String errorMessage,
+            SoapResponseParser.ElementHandler handler, Object... args) {
+        CompletableFuture<Void> response;
         try {
-            String soapRequest = 
-                "<soapenv:Envelope xmlns:soapenv=\"http://schemas.xmlsoap.org/soap/envelope/\" xmlns:chat=\"http://chat.example.com/\">\n" +
-                "   <soapenv:Header/>\n" +
-                "   <soapenv:Body>\n" +
-                "      <chat:getMessages/>\n" +
-                "   </soapenv:Body>\n" +
-                "</soapenv:Envelope>";
-            
-            String response = sendSoapRequest(soapRequest);
-            return parseMessages(response);
-        } catch (java.net.ConnectException e) {
-            throw new RuntimeException("Impossible de se connecter au serveur à l'adresse " + this.endpointUrl, e);
-        } catch (java.net.UnknownHostException e) {
-            throw new RuntimeException("Adresse du serveur introuvable : " + this.endpointUrl, e);
+            response = sendSoapRequestAsync(operation, handler, args);
         } catch (Exception e) {
-            throw new RuntimeException("Erreur lors de la récupération des messages", e);
+            return CompletableFuture.failedFuture(translateError(e, errorMessage));
+        }
+        return response.handle((result, error) -> {
+            if (error != null) {
+                Throwable cause = error instanceof CompletionException && error.getCause() != null
+                    ? error.getCause() : error;
+                throw translateError(cause, errorMessage);
+            }
+            return result;
+        });
+    }
+    
+    /**
+     * Traduit une erreur d'appel en message lisible par l'utilisateur
+     * 
+     * @param error Erreur survenue pendant l'appel
+     * @param errorMessage Message d'erreur utilisé pour les erreurs non réseau
+     * @return L'exception à signaler à l'appelant
+     */
+    private RuntimeException translateError(Throwable error, String errorMessage) {
+        if (error instanceof java.net.ConnectException) {
+            return new RuntimeException("Impossible de se connecter au serveur à l'adresse " + this.endpointUrl, error);
+        }
+        if (error instanceof java.net.UnknownHostException) {
+            return new RuntimeException("Adresse du serveur introuvable : " + this.endpointUrl, error);
+        }
+        if (error instanceof HttpTimeoutException) {
+            return new RuntimeException("Le serveur " + this.endpointUrl + " n'a pas répondu à temps", error);
+        }
+        return new RuntimeException(errorMessage, error);
+    }
+    
+    /**
+     * Encode l'enveloppe SOAP d'un appel d'opération en Fast Infoset
+     * 
+     * @param operation Nom de l'opération SOAP
+     * @param args Arguments de l'opération, transmis dans l'ordre (arg0, arg1, ...) ;
+     *             une liste est transmise comme un élément répété
+     * @param out Tampon réutilisable qui reçoit la requête
+     * @throws XMLStreamException Si l'encodage échoue
+     */
+    private static void encodeFastInfosetRequest(String operation, Object[] args, SoapRequestWriter out)
+            throws XMLStreamException {
+        out.reset();
+        StAXDocumentSerializer writer = FAST_INFOSET_WRITER.get();
+        writer.reset();
+        writer.setOutputStream(out);
+        writer.writeStartDocument();
+        writer.writeStartElement("soapenv", "Envelope", SOAP_ENV_NS);
+        writer.writeNamespace("soapenv", SOAP_ENV_NS);
+        writer.writeNamespace("chat", CHAT_NS);
+        writer.writeStartElement("soapenv", "Body", SOAP_ENV_NS);
+        writer.writeStartElement("chat", operation, CHAT_NS);
+        for (int i = 0; i < args.length; i++) {
+            List<?> values = args[i] instanceof List ? (List<?>) args[i] : Collections.singletonList(args[i]);
+            for (Object value : values) {
+                writer.writeStartElement(i < ARG_NAMES.length ? ARG_NAMES[i] : "arg" + i);
+                if (value instanceof MessageInput) {
+                    MessageInput input = (MessageInput) value;
+                    writer.writeStartElement("user");
+                    writer.writeCharacters(input.getUser() == null ? "" : input.getUser());
+                    writer.writeEndElement();
+                    writer.writeStartElement("message");
+                    writer.writeCharacters(input.getMessage() == null ? "" : input.getMessage());
+                    writer.writeEndElement();
+                } else {
+                    // Comme SoapRequestWriter : un argument null est envoyé vide, pas "null"
+                    writer.writeCharacters(value == null ? "" : value.toString());
+                }
+                writer.writeEndElement();
+            }
         }
+        // Fermer explicitement chaque élément : writeEndDocument ne termine pas
+        // correctement un élément d'opération resté vide
+        writer.writeEndElement();
+        writer.writeEndElement();
+        writer.writeEndElement();
+        writer.writeEndDocument();
+        writer.flush();
     }
       /**
-     * Envoie une requête SOAP et retourne la réponse
+     * Envoie une requête SOAP et lit la réponse au fil de sa réception.
+     * La requête est encodée en Fast Infoset si le serveur l'a déjà accepté,
+     * en XML texte sinon ; un refus (415) du binaire fait revenir au XML texte.
      * 
-     * @param soapRequest La requête SOAP au format XML
-     * @return La réponse du serveur au format XML
+     * @param operation Nom de l'opération SOAP
+     * @param waitMs Durée d'attente demandée au serveur, ajoutée au délai de lecture
+     * @param ifNoneMatch ETag d'une réponse précédente, ou null
+     * @param handler Destinataire des éléments de la réponse
+     * @param args Arguments de l'opération
+     * @return La réponse HTTP, déjà lue et fermée
      * @throws Exception Si une erreur réseau ou de communication se produit
      */
-    private String sendSoapRequest(String soapRequest) throws Exception {
-        URL url = new URL(this.endpointUrl);
-        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-        
-        // Configuration de la connexion
-        connection.setRequestMethod("POST");
-        connection.setRequestProperty("Content-Type", "text/xml;charset=UTF-8");
-        connection.setRequestProperty("SOAPAction", SOAP_ACTION);
-        connection.setDoOutput(true);
-        
-        // Envoi de la requête
-        try (OutputStream os = connection.getOutputStream()) {
-            byte[] input = soapRequest.getBytes(StandardCharsets.UTF_8);
-            os.write(input, 0, input.length);
+    private SoapTransport.Response sendSoapRequest(String operation, long waitMs, String ifNoneMatch,
+            SoapResponseParser.ElementHandler handler, Object... args) throws Exception {
+        boolean binaryRequest = isUsingFastInfoset();
+        SoapRequestWriter request = encodeRequest(binaryRequest, operation, args);
+        SoapTransport.Response response = transport.post(URI.create(this.endpointUrl),
+            request.buffer(), request.size(), contentType(binaryRequest), acceptedTypes(), waitMs, ifNoneMatch);
+        if (binaryRequest && response.getStatus() == HTTP_UNSUPPORTED_TYPE) {
+            // Le serveur n'accepte plus Fast Infoset : revenir au XML texte
+            response.close();
+            serverSpeaksFastInfoset = false;
+            return sendSoapRequest(operation, waitMs, ifNoneMatch, handler, args);
         }
-        
-        // Lecture de la réponse
-        StringBuilder response = new StringBuilder();
-        try (BufferedReader br = new BufferedReader(
-                new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8))) {
-            String responseLine;
-            while ((responseLine = br.readLine()) != null) {
-                response.append(responseLine.trim());
+        readResponse(response, handler);
+        return response;
+    }
+    
+    /**
+     * Envoie une requête SOAP sans bloquer le thread appelant
+     * 
+     * @param operation Nom de l'opération SOAP
+     * @param handler Destinataire des éléments de la réponse
+     * @param args Arguments de l'opération
+     * @return Un futur terminé une fois la réponse lue
+     * @throws Exception Si la requête ne peut pas être encodée
+     */
+    private CompletableFuture<Void> sendSoapRequestAsync(String operation, SoapResponseParser.ElementHandler handler,
+            Object... args) throws Exception {
+        boolean binaryRequest = isUsingFastInfoset();
+        // Le tampon du thread sera réutilisé avant l'envoi : en garder une copie
+        byte[] request = encodeRequest(binaryRequest, operation, args).toByteArray();
+        return transport.postAsync(URI.create(this.endpointUrl),
+                request, contentType(binaryRequest), acceptedTypes(), 0)
+            .thenCompose(response -> {
+                try {
+                    if (binaryRequest && response.getStatus() == HTTP_UNSUPPORTED_TYPE) {
+                        response.close();
+                        serverSpeaksFastInfoset = false;
+                        return sendSoapRequestAsync(operation, handler, args);
+                    }
+                    readResponse(response, handler);
+                    return CompletableFuture.completedFuture(null);
+                } catch (Exception e) {
+                    return CompletableFuture.failedFuture(e);
+                }
+            });
+    }
+    
+    /**
+     * Encode l'enveloppe SOAP d'un appel dans le format choisi, dans le tampon
+     * propre au thread appelant
+     * 
+     * @param binaryRequest true pour Fast Infoset, false pour du XML texte
+     * @param operation Nom de l'opération SOAP
+     * @param args Arguments de l'opération
+     * @return Le tampon contenant le corps de la requête, valable jusqu'au prochain appel du thread
+     * @throws XMLStreamException Si l'encodage Fast Infoset échoue
+     */
+    private static SoapRequestWriter encodeRequest(boolean binaryRequest, String operation, Object... args)
+            throws XMLStreamException {
+        SoapRequestWriter out = REQUEST_WRITER.get();
+        if (binaryRequest) {
+            encodeFastInfosetRequest(operation, args, out);
+            return out;
+        }
+        return out.writeRequest(operation, args);
+    }
+    
+    /**
+     * @param binaryRequest true si la requête est encodée en Fast Infoset
+     * @return Le type du corps de la requête
+     */
+    private static String contentType(boolean binaryRequest) {
+        return binaryRequest ? FAST_INFOSET_TYPE : XML_TYPE;
+    }
+    
+    /**
+     * @return Les types de réponse acceptés, Fast Infoset en premier s'il est activé
+     */
+    private String acceptedTypes() {
+        return fastInfosetEnabled ? FAST_INFOSET_TYPE + ", text/xml" : "text/xml";
+    }
+    
+    /**
+     * Lit la réponse SOAP depuis le flux HTTP, puis libère la connexion
+     * 
+     * @param response Réponse HTTP reçue
+     * @param handler Destinataire des éléments de la réponse
+     * @throws IOException Si le serveur a répondu par une erreur HTTP ou si la lecture échoue
+     * @throws XMLStreamException Si la réponse n'est pas un document SOAP valide
+     */
+    private void readResponse(SoapTransport.Response response, SoapResponseParser.ElementHandler handler)
+            throws IOException, XMLStreamException {
+        try (response) {
+            if (response.getStatus() == HTTP_NOT_MODIFIED) {
+                // Rien n'a changé depuis la version envoyée : pas de corps à lire
+                return;
+            }
+            boolean fastInfoset = response.getContentType().startsWith(FAST_INFOSET_TYPE);
+            if (response.getStatus() >= 400) {
+                throw new IOException("Le serveur a répondu avec le code HTTP " + response.getStatus()
+                    + readFault(response, fastInfoset));
+            }
+            if (fastInfoset) {
+                serverSpeaksFastInfoset = true;
             }
+            SoapResponseParser.parse(response.getBody(), fastInfoset, handler);
         }
-        
-        return response.toString();
     }
-      /**
-     * Parse la réponse XML pour extraire les messages
+    
+    /**
+     * Extrait le message d'une faute SOAP renvoyée avec un code d'erreur
      * 
-     * @param soapResponse Réponse SOAP brute au format XML
-     * @return Liste des messages extraits
+     * @param response Réponse HTTP en erreur
+     * @param fastInfoset true si la réponse est encodée en Fast Infoset
+     * @return Le message de la faute précédé de " : ", ou une chaîne vide
      */
-    private List<String> parseMessages(String soapResponse) {
-        // Méthode simple pour extraire les messages de la réponse SOAP
-        String startTag = "<return>";
-        String endTag = "</return>";
-        
-        ArrayList<String> messages = new ArrayList<>();
+    private static String readFault(SoapTransport.Response response, boolean fastInfoset) {
+        StringBuilder fault = new StringBuilder();
+        try {
+            SoapResponseParser.parse(response.getBody(), fastInfoset,
+                SoapResponseParser.forElement("faultstring", fault::append));
+        } catch (XMLStreamException e) {
+            // Pas une faute SOAP : le code HTTP suffit
+        }
+        return fault.length() == 0 ? "" : " : " + fault;
+    }
+    
+    /**
+     * Crée un gestionnaire qui transmet les valeurs de retour d'une opération
+     * 
+     * @param consumer Destinataire de chaque valeur
+     * @return Le gestionnaire
+     */
+    private static SoapResponseParser.ElementHandler returnValues(Consumer<String> consumer) {
+        return SoapResponseParser.forElement("return", consumer);
+    }
+    
+    /**
+     * Crée un gestionnaire qui transmet les messages renvoyés par une opération
+     * 
+     * @param consumer Destinataire de chaque message
+     * @return Le gestionnaire
+     */
+    private static SoapResponseParser.ElementHandler returnMessages(Consumer<ChatMessage> consumer) {
+        return SoapResponseParser.forMessages(consumer);
+    }
+    
+    /**
+     * Version de l'historique d'un salon, telle que reçue lors du dernier appel
+     */
+    private static final class HistoryVersion {
+        final String etag;
+        final long nextPollMs;
         
-        // Si la réponse est vide ou n'est pas au bon format, retourner une liste vide
-        if (soapResponse == null || soapResponse.isEmpty() || !soapResponse.contains(startTag)) {
-            return messages;
+        HistoryVersion(String etag, long nextPollMs) {
+            this.etag = etag;
+            this.nextPollMs = nextPollMs;
         }
+    }
+    
+    /**
+     * Rassemble un lot de messages (lastSeq + messages) pendant la lecture de la réponse
+     */
+    private static final class BatchHandler implements SoapResponseParser.ElementHandler {
+        long lastSeq;
+        long nextPollMs;
+        final List<ChatMessage> messages = new ArrayList<>();
+        private final SoapResponseParser.ElementHandler reader = SoapResponseParser.forMessages(messages::add);
         
-        int currentIndex = 0;
+        @Override
+        public boolean accepts(String localName) {
+            return "lastSeq".equals(localName) || "nextPollMs".equals(localName) || reader.accepts(localName);
+        }
         
-        while (true) {
-            int startIndex = soapResponse.indexOf(startTag, currentIndex);
-            if (startIndex == -1) break;
-            
-            int endIndex = soapResponse.indexOf(endTag, startIndex + startTag.length());
-            if (endIndex == -1) break;
-            
-            String message = soapResponse.substring(startIndex + startTag.length(), endIndex);
-            messages.add(message);
-            
-            currentIndex = endIndex + endTag.length();
+        @Override
+        public void element(String localName, String text) {
+            if ("lastSeq".equals(localName)) {
+                lastSeq = Long.parseLong(text.trim());
+            } else if ("nextPollMs".equals(localName)) {
+                nextPollMs = Long.parseLong(text.trim());
+            } else {
+                reader.element(localName, text);
+            }
         }
         
-        return messages;
+        @Override
+        public void endElement(String localName) {
+            reader.endElement(localName);
+        }
     }
-      /**
-     * Échappe les caractères XML spéciaux pour éviter les injections XML
-     * 
-     * @param input Texte à échapper
-     * @return Texte échappé sûr pour XML
+    
+    /**
+     * Rassemble une page de l'historique (firstSeq, lastSeq + messages) pendant la lecture de la réponse
      */
-    private String escapeXml(String input) {
-        if (input == null) {
-            return "";
+    private static final class PageHandler implements SoapResponseParser.ElementHandler {
+        long firstSeq;
+        long lastSeq;
+        final List<ChatMessage> messages = new ArrayList<>();
+        private final SoapResponseParser.ElementHandler reader = SoapResponseParser.forMessages(messages::add);
+        
+        @Override
+        public boolean accepts(String localName) {
+            return "firstSeq".equals(localName) || "lastSeq".equals(localName) || reader.accepts(localName);
         }
         
-        return input.replace("&", "&amp;")
-                   .replace("<", "&lt;")
-                   .replace(">", "&gt;")
-                   .replace("\"", "&quot;")
-                   .replace("'", "&apos;");
+        @Override
+        public void element(String localName, String text) {
+            if ("firstSeq".equals(localName)) {
+                firstSeq = Long.parseLong(text.trim());
+            } else if ("lastSeq".equals(localName)) {
+                lastSeq = Long.parseLong(text.trim());
+            } else {
+                reader.element(localName, text);
+            }
+        }
+        
+        @Override
+        public void endElement(String localName) {
+            reader.endElement(localName);
+        }
     }
 }
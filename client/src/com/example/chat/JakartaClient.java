@@ -1,6 +1,8 @@
 package com.example.chat;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 /**
  * Définit l'interface du service de chat SOAP.
@@ -18,6 +20,9 @@ public class JakartaClient {
      * de son implémentation.
      */
     public interface ChatService {
+        /** Salon utilisé par les opérations qui ne précisent pas de salon */
+        String DEFAULT_ROOM = "general";
+        
         /**
          * Envoie un message au service de chat
          * 
@@ -31,9 +36,192 @@ public class JakartaClient {
         /**
          * Récupère la liste de tous les messages du chat
          * 
-         * @return Liste des messages au format "username: message"
+         * @return Liste des messages
+         * @throws RuntimeException Si une erreur survient lors de la récupération
+         */
+        List<ChatMessage> getMessages();
+        
+        /**
+         * Envoie un message sans bloquer le thread appelant
+         * 
+         * @param user Nom d'utilisateur de l'expéditeur
+         * @param message Contenu du message à envoyer
+         * @return Un futur terminé quand le serveur a accepté le message,
+         *         ou en erreur si l'envoi échoue
+         * @throws IllegalArgumentException Si l'utilisateur ou le message est vide
+         */
+        default CompletableFuture<Void> sendMessageAsync(String user, String message) {
+            return sendMessageAsync(DEFAULT_ROOM, user, message);
+        }
+        
+        /**
+         * Récupère tous les messages sans bloquer le thread appelant
+         * 
+         * @return Un futur de la liste des messages
+         */
+        default CompletableFuture<List<ChatMessage>> getMessagesAsync() {
+            return getMessagesAsync(DEFAULT_ROOM);
+        }
+        
+        /**
+         * Récupère uniquement les messages plus récents qu'un numéro de séquence
+         * 
+         * @param lastSeq Dernier numéro de séquence déjà reçu (0 pour tout l'historique)
+         * @return Les nouveaux messages et le dernier numéro de séquence du serveur
+         * @throws RuntimeException Si une erreur survient lors de la récupération
+         */
+        MessageBatch getMessagesSince(long lastSeq);
+        
+        /**
+         * Attend l'arrivée de messages plus récents qu'un numéro de séquence (long-polling).
+         * Le serveur répond dès qu'un nouveau message existe, ou avec un lot vide
+         * à l'expiration du délai.
+         * 
+         * @param sinceSeq Dernier numéro de séquence déjà reçu
+         * @param timeoutMs Durée d'attente maximale côté serveur, en millisecondes
+         * @return Les nouveaux messages (éventuellement aucun) et le dernier numéro de séquence
          * @throws RuntimeException Si une erreur survient lors de la récupération
          */
-        List<String> getMessages();
+        MessageBatch waitForMessages(long sinceSeq, int timeoutMs);
+        
+        /**
+         * Envoie un message dans un salon. Le salon est créé s'il n'existe pas encore.
+         * 
+         * @param room Nom du salon (lettres, chiffres, '_' ou '-')
+         * @param user Nom d'utilisateur de l'expéditeur
+         * @param message Contenu du message à envoyer
+         * @throws RuntimeException Si une erreur survient lors de l'envoi
+         * @throws IllegalArgumentException Si l'utilisateur ou le message est vide
+         */
+        void sendMessage(String room, String user, String message);
+        
+        /**
+         * Envoie un message dans un salon sans bloquer le thread appelant.
+         * L'implémentation par défaut exécute {@link #sendMessage(String, String, String)}
+         * dans le pool commun.
+         * 
+         * @param room Nom du salon
+         * @param user Nom d'utilisateur de l'expéditeur
+         * @param message Contenu du message à envoyer
+         * @return Un futur terminé quand le serveur a accepté le message,
+         *         ou en erreur si l'envoi échoue
+         * @throws IllegalArgumentException Si l'utilisateur ou le message est vide
+         */
+        default CompletableFuture<Void> sendMessageAsync(String room, String user, String message) {
+            return CompletableFuture.runAsync(() -> sendMessage(room, user, message));
+        }
+        
+        /**
+         * Envoie plusieurs messages dans un salon en un seul appel.
+         * Le serveur les ajoute en une seule fois, dans l'ordre de la liste.
+         * 
+         * @param room Nom du salon
+         * @param messages Messages à envoyer
+         * @throws RuntimeException Si une erreur survient lors de l'envoi
+         */
+        void sendMessages(String room, List<MessageInput> messages);
+        
+        /**
+         * Récupère la liste de tous les messages d'un salon
+         * 
+         * @param room Nom du salon
+         * @return Liste des messages
+         * @throws RuntimeException Si une erreur survient lors de la récupération
+         */
+        List<ChatMessage> getMessages(String room);
+        
+        /**
+         * Lit tous les messages d'un salon en les transmettant un par un au fil
+         * de leur réception, pour parcourir un long historique sans le conserver
+         * en mémoire. L'implémentation par défaut parcourt {@link #getMessages(String)}.
+         * 
+         * @param room Nom du salon
+         * @param consumer Destinataire des messages
+         * @throws RuntimeException Si une erreur survient lors de la récupération
+         */
+        default void getMessages(String room, Consumer<ChatMessage> consumer) {
+            getMessages(room).forEach(consumer);
+        }
+        
+        /**
+         * Récupère tous les messages d'un salon sans bloquer le thread appelant.
+         * L'implémentation par défaut exécute {@link #getMessages(String)}
+         * dans le pool commun.
+         * 
+         * @param room Nom du salon
+         * @return Un futur de la liste des messages
+         */
+        default CompletableFuture<List<ChatMessage>> getMessagesAsync(String room) {
+            return CompletableFuture.supplyAsync(() -> getMessages(room));
+        }
+        
+        /**
+         * Récupère les messages d'un salon plus récents qu'un numéro de séquence.
+         * Chaque salon a sa propre numérotation.
+         * 
+         * @param room Nom du salon
+         * @param lastSeq Dernier numéro de séquence déjà reçu dans ce salon
+         * @return Les nouveaux messages et le dernier numéro de séquence du salon
+         * @throws RuntimeException Si une erreur survient lors de la récupération
+         */
+        MessageBatch getMessagesSince(String room, long lastSeq);
+        
+        /**
+         * Attend l'arrivée de nouveaux messages dans un salon (long-polling)
+         * 
+         * @param room Nom du salon
+         * @param sinceSeq Dernier numéro de séquence déjà reçu dans ce salon
+         * @param timeoutMs Durée d'attente maximale côté serveur, en millisecondes
+         * @return Les nouveaux messages (éventuellement aucun) et le dernier numéro de séquence
+         * @throws RuntimeException Si une erreur survient lors de la récupération
+         */
+        MessageBatch waitForMessages(String room, long sinceSeq, int timeoutMs);
+        
+        /**
+         * Récupère les derniers messages d'un salon, sans télécharger tout
+         * l'historique. Les messages suivants s'obtiennent ensuite avec
+         * {@link #getMessagesSince(String, long)} à partir de {@link MessagePage#getLastSeq()}.
+         * 
+         * @param room Nom du salon
+         * @param limit Nombre maximal de messages (le serveur en renvoie au plus 1000)
+         * @return Les derniers messages, du plus ancien au plus récent
+         * @throws RuntimeException Si une erreur survient lors de la récupération
+         */
+        MessagePage getRecentMessages(String room, int limit);
+        
+        /**
+         * Récupère les messages d'un salon qui précèdent un numéro de séquence,
+         * pour remonter dans l'historique page par page
+         * 
+         * @param room Nom du salon
+         * @param seq Numéro de séquence du plus ancien message déjà reçu
+         * @param limit Nombre maximal de messages (le serveur en renvoie au plus 1000)
+         * @return Les messages qui précèdent immédiatement seq, du plus ancien au
+         *         plus récent ; une page vide si l'historique ne remonte pas plus loin
+         * @throws RuntimeException Si une erreur survient lors de la récupération
+         */
+        MessagePage getMessagesBefore(String room, long seq, int limit);
+        
+        /**
+         * Récupère la liste des salons existants
+         * 
+         * @return Noms des salons, triés par ordre alphabétique
+         * @throws RuntimeException Si une erreur survient lors de la récupération
+         */
+        List<String> listRooms();
+        
+        /**
+         * Recherche dans l'historique d'un salon, côté serveur. Les termes sont
+         * comparés sans tenir compte de la casse ni des accents, et doivent tous
+         * apparaître dans un message ; un terme suivi de '*' désigne tous les
+         * mots qui commencent par lui (par exemple "rend*").
+         * 
+         * @param room Nom du salon
+         * @param query Termes recherchés
+         * @param limit Nombre maximal de résultats (le serveur en renvoie au plus 1000)
+         * @return Les messages trouvés, du plus récent au plus ancien
+         * @throws RuntimeException Si une erreur survient lors de la recherche
+         */
+        List<ChatMessage> searchMessages(String room, String query, int limit);
     }
 }
@@ -4,9 +4,11 @@ import javax.swing.*;
 import javax.swing.border.*;
 import java.awt.*;
 import java.awt.event.*;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.util.List;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Client graphique moderne pour le service de chat SOAP.
@@ -20,10 +22,13 @@ public class JakartaSwingClient extends JFrame {
     private static final long serialVersionUID = 1L;
     
     /** Service de chat SOAP */
-    private JakartaClient.ChatService chatService;
+    private volatile JakartaClient.ChatService chatService;
     
-    /** Zone d''affichage des messages */
-    private JTextArea messageArea;
+    /** File d''envoi qui regroupe les messages envoys rapprochs */
+    private MessageOutbox outbox;
+    
+    /** Liste d''affichage des messages ; seules les lignes visibles sont dessines */
+    private JList<ChatMessage> messageList;
     
     /** Champ pour saisir un nouveau message */
     private JTextField messageField;
@@ -31,12 +36,44 @@ public class JakartaSwingClient extends JFrame {
     /** Nom d''utilisateur enregistr */
     private String username;
     
+    /** Historique local des messages dj reus (modifi uniquement sur l''EDT) */
+    private final MessageListModel messageHistory = new MessageListModel(MAX_HISTORY_MESSAGES);
+    
+    /** Rcupration des messages en arrire-plan, hors de l''EDT */
+    private final MessageFetcher fetcher =
+        new MessageFetcher(this::messagesReceived, HISTORY_PAGE_SIZE, MAX_HISTORY_MESSAGES);
+    
+    /** Rythme des interrogations : recul quand rien ne change, retour rapide aprs une activit */
+    private final AdaptivePollScheduler pollScheduler = new AdaptivePollScheduler(loadPollingPolicy());
+    
+    /** Salon actuellement affich */
+    private volatile String currentRoom = JakartaClient.ChatService.DEFAULT_ROOM;
+    
+    /** Slecteur de salon (ditable pour crer un nouveau salon) */
+    private JComboBox<String> roomSelector;
+    
     /** Panneau principal */
     private JPanel mainPanel;
     
     /** URL du serveur par dfaut */
     private static final String DEFAULT_SERVER_URL = "http://localhost:8080/chat";
     
+    /** Dure d''attente maximale d''une requte de long-polling (ms) */
+    private static final int LONG_POLL_TIMEOUT_MS = 25000;
+    
+    /** Nombre maximal de messages affichs par une recherche */
+    private static final int SEARCH_LIMIT = 100;
+    
+    /** Nombre de messages chargs en rejoignant un salon, puis  chaque remonte dans l''historique */
+    private static final int HISTORY_PAGE_SIZE = 200;
+    
+    /** Nombre maximal de messages gards en mmoire ; les plus anciens sont oublis au-del */
+    private static final int MAX_HISTORY_MESSAGES = 5000;
+    
+    /** Heure d''un message, dans le fuseau local, affiche au survol */
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("HH:mm").withZone(ZoneId.systemDefault());
+    
+    
     /** Couleurs du thme */
     private static final Color PRIMARY_COLOR = new Color(64, 81, 181);   // Bleu indigo
     private static final Color ACCENT_COLOR = new Color(255, 64, 129);   // Rose
@@ -51,6 +88,7 @@ public class JakartaSwingClient extends JFrame {
             ChatServiceImpl serviceImpl = new ChatServiceImpl();
             serviceImpl.setEndpointUrl(DEFAULT_SERVER_URL);
             this.chatService = serviceImpl;
+            this.outbox = new MessageOutbox(serviceImpl);
             
             // Demander le pseudonyme au lancement
             requestUsername();
@@ -125,7 +163,7 @@ public class JakartaSwingClient extends JFrame {
      */
     private void initializeUI() {
         // Configuration de la fentre
-        setTitle("Chat SOAP - " + username);
+        setTitle("Chat SOAP - " + username + " - #" + currentRoom);
         setSize(800, 600);
         setMinimumSize(new Dimension(500, 400));
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
@@ -138,17 +176,12 @@ public class JakartaSwingClient extends JFrame {
         // Cration de la barre d''en-tte
         JPanel headerPanel = createHeaderPanel();
         
-        // Zone de messages avec style
-        messageArea = new JTextArea();
-        messageArea.setEditable(false);
-        messageArea.setFont(new Font("Arial", Font.PLAIN, 14));
-        messageArea.setLineWrap(true);
-        messageArea.setWrapStyleWord(true);
-        messageArea.setMargin(new Insets(10, 10, 10, 10));
-        messageArea.setBackground(BG_COLOR);
+        // Liste de messages avec style
+        messageList = createMessageList();
         
-        JScrollPane scrollPane = new JScrollPane(messageArea);
+        JScrollPane scrollPane = new JScrollPane(messageList);
         scrollPane.setBorder(BorderFactory.createEmptyBorder());
+        watchScrollBack(scrollPane.getVerticalScrollBar());
         
         // Panneau de saisie de message
         JPanel inputPanel = createInputPanel();
@@ -161,13 +194,26 @@ public class JakartaSwingClient extends JFrame {
         // Paramtres finaux de la fentre
         setContentPane(mainPanel);
         setLocationRelativeTo(null);
+        
+        // Ne plus interroger le serveur tant que la fentre est rduite
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowIconified(WindowEvent e) {
+                pollScheduler.setPaused(true);
+            }
+            
+            @Override
+            public void windowDeiconified(WindowEvent e) {
+                pollScheduler.setPaused(false);
+            }
+        });
+        
         setVisible(true);
         
         // Focus sur le champ de message
         messageField.requestFocusInWindow();
         
-        // Rafrachir les messages immdiatement puis programmer les rafrachissements
-        refreshMessages();
+        // Charger les messages en arrire-plan puis programmer les rafrachissements
         startMessageRefresher();
     }
     
@@ -189,6 +235,35 @@ public class JakartaSwingClient extends JFrame {
         usernameLabel.setFont(new Font("Arial", Font.PLAIN, 14));
         usernameLabel.setForeground(Color.WHITE);
         
+        // Slecteur de salon : choisir un salon existant ou en saisir un nouveau
+        roomSelector = new JComboBox<>(new String[] { currentRoom });
+        roomSelector.setEditable(true);
+        roomSelector.setToolTipText("Choisissez un salon ou saisissez le nom d''un nouveau salon");
+        roomSelector.addPopupMenuListener(new javax.swing.event.PopupMenuListener() {
+            @Override
+            public void popupMenuWillBecomeVisible(javax.swing.event.PopupMenuEvent e) {
+                refreshRoomList();
+            }
+            
+            @Override
+            public void popupMenuWillBecomeInvisible(javax.swing.event.PopupMenuEvent e) {
+            }
+            
+            @Override
+            public void popupMenuCanceled(javax.swing.event.PopupMenuEvent e) {
+            }
+        });
+        roomSelector.addActionListener(e -> {
+            Object selected = roomSelector.getSelectedItem();
+            if (selected != null) {
+                switchRoom(selected.toString().trim());
+            }
+        });
+        
+        JLabel roomLabel = new JLabel("Salon : ");
+        roomLabel.setFont(new Font("Arial", Font.PLAIN, 14));
+        roomLabel.setForeground(Color.WHITE);
+        
         // Bouton pour les paramtres (optionel)
         JButton settingsButton = new JButton("");
         settingsButton.setFocusPainted(false);
@@ -198,9 +273,24 @@ public class JakartaSwingClient extends JFrame {
         settingsButton.setFont(new Font("Arial", Font.PLAIN, 18));
         settingsButton.addActionListener(e -> showSettings());
         
+        // Bouton de recherche dans l''historique du salon
+        JButton searchButton = new JButton("Rechercher");
+        searchButton.setFocusPainted(false);
+        searchButton.setContentAreaFilled(false);
+        searchButton.setBorderPainted(false);
+        searchButton.setForeground(Color.WHITE);
+        searchButton.setFont(new Font("Arial", Font.PLAIN, 14));
+        searchButton.addActionListener(e -> showSearch());
+        
         headerPanel.add(titleLabel, BorderLayout.WEST);
         headerPanel.add(usernameLabel, BorderLayout.CENTER);
-        headerPanel.add(settingsButton, BorderLayout.EAST);
+        JPanel rightPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT, 5, 0));
+        rightPanel.setOpaque(false);
+        rightPanel.add(roomLabel);
+        rightPanel.add(roomSelector);
+        rightPanel.add(searchButton);
+        rightPanel.add(settingsButton);
+        headerPanel.add(rightPanel, BorderLayout.EAST);
         
         return headerPanel;
     }
@@ -264,6 +354,8 @@ public class JakartaSwingClient extends JFrame {
         
         panel.add(new JLabel("Paramtres du chat"), BorderLayout.NORTH);
         panel.add(serverPanel, BorderLayout.CENTER);
+        panel.add(new JLabel("Intervalle d''interrogation actuel : " + pollScheduler.getCurrentIntervalMs()
+                + " ms (" + pollScheduler.getPolicy() + ")"), BorderLayout.SOUTH);
         
         int result = JOptionPane.showConfirmDialog(this, panel,
                 "Paramtres", JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
@@ -276,13 +368,15 @@ public class JakartaSwingClient extends JFrame {
                     ChatServiceImpl serviceImpl = new ChatServiceImpl();
                     serviceImpl.setEndpointUrl(serverUrl);
                     this.chatService = serviceImpl;
+                    outbox.close();
+                    outbox = new MessageOutbox(serviceImpl);
+                    
+                    // Repartir de zro avec le nouveau serveur
+                    startMessageRefresher();
                     
                     JOptionPane.showMessageDialog(this, 
                             "URL du serveur modifie: " + serverUrl,
                             "Succs", JOptionPane.INFORMATION_MESSAGE);
-                    
-                    // Tester la connexion en rafrachissant
-                    refreshMessages();
                 } catch (Exception e) {
                     JOptionPane.showMessageDialog(this, 
                             "Erreur lors de la modification de l''URL: " + e.getMessage(),
@@ -293,16 +387,96 @@ public class JakartaSwingClient extends JFrame {
     }
     
     /**
-     * Dmarre le rafrachissement automatique des messages
+     * Demande les termes  rechercher dans le salon courant, puis affiche les
+     * messages trouvs par le serveur. La recherche s''excute en arrire-plan ;
+     * rien n''est tlcharg d''autre que les rsultats.
+     */
+    private void showSearch() {
+        String input = JOptionPane.showInputDialog(this,
+                "Termes  rechercher dans #" + currentRoom + " (mot* pour tous les mots commenant par mot) :",
+                "Rechercher", JOptionPane.PLAIN_MESSAGE);
+        if (input == null || input.trim().isEmpty()) {
+            return;
+        }
+        String query = input.trim();
+        String room = currentRoom;
+        JakartaClient.ChatService service = chatService;
+        fetcher.load(() -> service.searchMessages(room, query, SEARCH_LIMIT), results -> {
+            if (results.isEmpty()) {
+                JOptionPane.showMessageDialog(this, "Aucun message trouv pour : " + query,
+                        "Rechercher", JOptionPane.INFORMATION_MESSAGE);
+                return;
+            }
+            JList<ChatMessage> list = new JList<>(results.toArray(new ChatMessage[0]));
+            JScrollPane scrollPane = new JScrollPane(list);
+            scrollPane.setPreferredSize(new Dimension(500, 300));
+            JOptionPane.showMessageDialog(this, scrollPane,
+                    results.size() + " message(s) trouv(s) dans #" + room, JOptionPane.PLAIN_MESSAGE);
+        });
+    }
+    
+    /**
+     * Recharge le salon courant en arrire-plan puis dmarre le rafrachissement
+     * automatique des messages par long-polling : un thread d''arrire-plan attend
+     * ct serveur l''arrive de nouveaux messages et transmet chaque lot reu
+     * au rcuprateur, qui ne publie sur l''EDT que la mise  jour de l''affichage.
+     * Une attente tenue par le serveur est relance aussitt ; aprs un chec, ou
+     * une rponse rendue sans attendre, le thread suit le rythme de l''ordonnanceur
+     * adaptatif.
      */
     private void startMessageRefresher() {
-        Timer timer = new Timer(true);
-        timer.schedule(new TimerTask() {
-            @Override
-            public void run() {
-                SwingUtilities.invokeLater(() -> refreshMessages());
+        // Un nouveau thread remplace le prcdent, qui s''arrte  la fin de son attente en cours
+        JakartaClient.ChatService service = chatService;
+        String room = currentRoom;
+        int generation = fetcher.show(service, room);
+        pollScheduler.boost();
+        Thread poller = new Thread(() -> {
+            while (generation == fetcher.getGeneration()) {
+                try {
+                    long sinceSeq = fetcher.getLastSeq();
+                    // Tant que la dernire page du salon n''est pas charge, la redemander
+                    // plutt que de demander tout l''historique
+                    if (sinceSeq < 0) {
+                        fetcher.refresh();
+                    } else {
+                        long start = System.nanoTime();
+                        MessageBatch batch = service.waitForMessages(room, sinceSeq, LONG_POLL_TIMEOUT_MS);
+                        // Les rponses d''un serveur ou d''un salon remplac entre-temps sont ignores
+                        if (generation != fetcher.getGeneration()) {
+                            return;
+                        }
+                        fetcher.accept(generation, batch);
+                        pollScheduler.recordLongPollResult(
+                            !batch.getMessages().isEmpty() || batch.getLastSeq() != sinceSeq, batch.getNextPollMs(),
+                            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), LONG_POLL_TIMEOUT_MS);
+                    }
+                } catch (Exception ex) {
+                    System.err.println("Erreur de rafrachissement: " + ex.getMessage());
+                    pollScheduler.recordFailure();
+                }
+                try {
+                    pollScheduler.awaitNextPoll();  // Patienter, s''il le faut, avant la prochaine attente
+                } catch (InterruptedException ie) {
+                    return;
+                }
             }
-        }, 0, 3000);  // Rafrachir toutes les 3 secondes
+        }, "chat-long-poll");
+        poller.setDaemon(true);
+        poller.start();
+    }
+    
+    /**
+     * Lit la politique d''interrogation dans les proprits systme chat.poll.*
+     * 
+     * @return La politique configure, ou la politique par dfaut si elle est invalide
+     */
+    private static PollingPolicy loadPollingPolicy() {
+        try {
+            return PollingPolicy.fromSystemProperties();
+        } catch (IllegalArgumentException e) {
+            System.err.println("Politique d''interrogation invalide, valeurs par dfaut utilises: " + e.getMessage());
+            return PollingPolicy.DEFAULT;
+        }
     }
     
     /**
@@ -315,62 +489,165 @@ public class JakartaSwingClient extends JFrame {
             return;  // Ignorer les messages vides
         }
         
-        try {
-            chatService.sendMessage(username, message);
-            messageField.setText("");  // Vider le champ aprs envoi
-            refreshMessages();  // Rafrachir immdiatement
-        } catch (Exception ex) {
-            JOptionPane.showMessageDialog(this, 
-                    "Erreur lors de l''envoi du message: " + ex.getMessage(),
-                    "Erreur", JOptionPane.ERROR_MESSAGE);
+        messageField.setText("");  // Vider le champ ds la mise en file
+        outbox.send(currentRoom, username, message).whenComplete((ok, ex) -> SwingUtilities.invokeLater(() -> {
+            if (ex == null) {
+                fetcher.refresh();  // Rafrachir immdiatement, en arrire-plan
+                pollScheduler.boost();  // La conversation est active : interroger au rythme rapide
+            } else {
+                // Rendre le texte  l''utilisateur pour qu''il puisse ressayer
+                if (messageField.getText().isEmpty()) {
+                    messageField.setText(message);
+                }
+                JOptionPane.showMessageDialog(this, 
+                        "Erreur lors de l''envoi du message: " + ex.getMessage(),
+                        "Erreur", JOptionPane.ERROR_MESSAGE);
+            }
+        }));
+    }
+    
+    /**
+     * Change de salon : vide l''historique local, recharge les messages du salon
+     * et relance le long-polling sur ce salon
+     * 
+     * @param room Nom du salon  afficher
+     */
+    private void switchRoom(String room) {
+        if (room.isEmpty() || room.equals(currentRoom)) {
+            return;
         }
+        currentRoom = room;
+        setTitle("Chat SOAP - " + username + " - #" + room);
+        startMessageRefresher();
     }
     
     /**
-     * Rafrachit l''affichage des messages
+     * Met  jour la liste des salons proposs par le slecteur ; la liste est
+     * rcupre en arrire-plan
      */
-    private void refreshMessages() {
-        try {
-            List<String> messages = chatService.getMessages();
-            
-            // Garder la position du dfilement
-            JScrollBar scrollBar = ((JScrollPane) messageArea.getParent().getParent()).getVerticalScrollBar();
-            boolean shouldScroll = scrollBar.getValue() + scrollBar.getHeight() >= scrollBar.getMaximum() - 20;
+    private void refreshRoomList() {
+        JakartaClient.ChatService service = chatService;
+        fetcher.load(service::listRooms, rooms -> {
+            DefaultComboBoxModel<String> model = (DefaultComboBoxModel<String>) roomSelector.getModel();
+            for (String room : rooms) {
+                if (model.getIndexOf(room) < 0) {
+                    model.addElement(room);
+                }
+            }
+        });
+    }
+    
+    /**
+     * Cre la liste d''affichage des messages. Les lignes ont une hauteur et une
+     * largeur fixes : la liste ne mesure jamais l''ensemble de l''historique et
+     * seules les lignes visibles sont dessines, quelle que soit sa taille.
+     * 
+     * @return La liste, alimente par l''historique local
+     */
+    private JList<ChatMessage> createMessageList() {
+        JList<ChatMessage> list = new JList<ChatMessage>(messageHistory) {
+            private static final long serialVersionUID = 1L;
             
-            StringBuilder formattedMessages = new StringBuilder();
+            @Override
+            public boolean getScrollableTracksViewportWidth() {
+                // Occuper toute la largeur sans mesurer les messages
+                return true;
+            }
             
-            if (messages.isEmpty()) {
-                formattedMessages.append("Aucun message dans le chat. Soyez le premier  crire !\n");
-            } else {
-                for (String msg : messages) {
-                    // Mise en forme des messages
-                    if (msg.startsWith(username + ": ")) {
-                        // Mes messages (aligns  droite)
-                        formattedMessages.append("\n[ Moi ] ");
-                        formattedMessages.append(msg.substring((username + ": ").length()));
-                        formattedMessages.append("\n");
-                    } else {
-                        // Messages des autres
-                        formattedMessages.append("\n");
-                        formattedMessages.append(msg);
-                        formattedMessages.append("\n");
-                    }
+            @Override
+            protected void paintComponent(Graphics g) {
+                super.paintComponent(g);
+                if (getModel().getSize() == 0) {
+                    g.setColor(Color.GRAY);
+                    g.setFont(getFont());
+                    g.drawString("Aucun message dans le chat. Soyez le premier  crire !",
+                        10, 10 + g.getFontMetrics().getAscent());
                 }
             }
+        };
+        Font font = new Font("Arial", Font.PLAIN, 14);
+        list.setFont(font);
+        list.setBackground(BG_COLOR);
+        list.setFixedCellHeight(list.getFontMetrics(font).getHeight() + 12);
+        list.setFixedCellWidth(1);
+        list.setCellRenderer(new DefaultListCellRenderer() {
+            private static final long serialVersionUID = 1L;
             
-            messageArea.setText(formattedMessages.toString());
+            {
+                // Un message commenant par <html> ne doit pas tre interprt
+                putClientProperty("html.disable", Boolean.TRUE);
+            }
             
-            // Dfiler vers le bas si ncessaire
-            if (shouldScroll) {
-                SwingUtilities.invokeLater(() -> {
-                    JScrollBar vertical = ((JScrollPane) messageArea.getParent().getParent()).getVerticalScrollBar();
-                    vertical.setValue(vertical.getMaximum());
-                });
+            @Override
+            public Component getListCellRendererComponent(JList<?> list, Object value, int index,
+                    boolean isSelected, boolean cellHasFocus) {
+                ChatMessage msg = (ChatMessage) value;
+                boolean mine = msg.getSender().equals(username);
+                // Mise en forme des messages : les miens sont marqus et colors
+                String text = mine ? "[ Moi ] " + msg.getText() : msg.toString();
+                super.getListCellRendererComponent(list, text, index, isSelected, cellHasFocus);
+                setBorder(BorderFactory.createEmptyBorder(0, 10, 0, 10));
+                setToolTipText(TIME_FORMAT.format(Instant.ofEpochMilli(msg.getTimestamp())) + " " + msg);
+                if (!isSelected) {
+                    setForeground(mine ? PRIMARY_COLOR : Color.DARK_GRAY);
+                }
+                return this;
             }
+        });
+        return list;
+    }
+    
+    /**
+     * Charge la page prcdente de l''historique quand l''utilisateur fait
+     * dfiler la liste jusqu''en haut
+     * 
+     * @param scrollBar Barre de dfilement vertical de la liste
+     */
+    private void watchScrollBack(JScrollBar scrollBar) {
+        scrollBar.addAdjustmentListener(new AdjustmentListener() {
+            private int previousValue;
             
-        } catch (Exception ex) {
-            // Grer silencieusement les erreurs de rafrachissement automatique
-            System.err.println("Erreur de rafrachissement: " + ex.getMessage());
+            @Override
+            public void adjustmentValueChanged(AdjustmentEvent e) {
+                // Seule une remonte compte : la liste qui grandit sous une barre
+                // dj en haut (chargement d''un salon) ne demande rien
+                if (e.getValue() == scrollBar.getMinimum() && previousValue > e.getValue()) {
+                    fetcher.loadOlder();
+                }
+                previousValue = e.getValue();
+            }
+        });
+    }
+    
+    /**
+     * Intgre les messages publis par le rcuprateur  l''historique local.
+     * Seules les lignes ajoutes ou retires sont signales  la liste. Appel sur l''EDT.
+     * 
+     * @param reset true si l''historique doit d''abord tre vid
+     * @param older Messages plus anciens,  placer avant l''historique
+     * @param added Nouveaux messages
+     */
+    private void messagesReceived(boolean reset, List<ChatMessage> older, List<ChatMessage> added) {
+        // Garder la position du dfilement
+        JScrollBar scrollBar = ((JScrollPane) messageList.getParent().getParent()).getVerticalScrollBar();
+        boolean shouldScroll = reset
+            || scrollBar.getValue() + scrollBar.getVisibleAmount() >= scrollBar.getMaximum() - 20;
+        
+        if (reset) {
+            messageHistory.clear();
+        }
+        messageHistory.addFirst(older);
+        int removed = messageHistory.addAll(added);
+        
+        // Dfiler vers le bas si ncessaire
+        if (shouldScroll && messageHistory.getSize() > 0) {
+            SwingUtilities.invokeLater(() -> messageList.ensureIndexIsVisible(messageHistory.getSize() - 1));
+        } else if (older.size() != removed) {
+            // Les lignes ajoutes ou retires au-dessus ne doivent pas dplacer celles affiches ;
+            // la barre ne connat sa nouvelle tendue qu''aprs la mise en page
+            int shift = (older.size() - removed) * messageList.getFixedCellHeight();
+            int value = scrollBar.getValue();
+            SwingUtilities.invokeLater(() -> scrollBar.setValue(value + shift));
         }
     }
     
@@ -0,0 +1,388 @@
+package com.example.chat;
+
+import java.lang.reflect.Method;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Générateur de charge sans interface graphique : simule N utilisateurs qui
+ * utilisent le service comme {@link JakartaSwingClient} (chargement du salon,
+ * long-polling ou interrogation périodique, envois de messages), à travers
+ * {@link JakartaClient.ChatService}.
+ * Chaque utilisateur dispose d'un thread d'envoi et d'un thread de lecture,
+ * virtuels si la JVM les propose (Java 21+). Le débit, le taux d'erreur et les
+ * percentiles de latence de chaque opération sont affichés à intervalle régulier,
+ * puis cumulés à la fin ; l'opération « deliver » mesure le délai entre l'envoi
+ * d'un message et sa réception par les autres utilisateurs du salon.
+ * <p>
+ * Options (--nom=valeur) : url, users, rooms, duration (s), ramp (s), send-rate
+ * (messages par minute et par utilisateur), poll-interval (ms, 0 pour le
+ * long-polling), message-size (caractères), report (s).
+ *
+ * @author Client Chat SOAP
+ * @version 1.0
+ */
+public class LoadGenerator {
+
+    private static final int LONG_POLL_TIMEOUT_MS = 25000;
+    private static final long ERROR_PAUSE_MS = 1000;
+    // Taille de la page chargée en rejoignant un salon, comme le client graphique
+    private static final int JOIN_PAGE_SIZE = 200;
+
+    // Les messages portent leur instant d'envoi pour mesurer la distribution
+    private static final String STAMP = "#";
+
+    private final JakartaClient.ChatService service;
+    private final int users;
+    private final int rooms;
+    private final double sendRatePerMinute;
+    private final long pollIntervalMs;
+    private final int messageSize;
+    private volatile boolean running = true;
+
+    private final Operation send = new Operation("send");
+    private final Operation poll = new Operation("poll");
+    private final Operation deliver = new Operation("deliver");
+    private final Operation[] operations = { send, poll, deliver };
+
+    /**
+     * Crée un générateur de charge
+     *
+     * @param service Service partagé par tous les utilisateurs simulés
+     * @param users Nombre d'utilisateurs
+     * @param rooms Nombre de salons entre lesquels les utilisateurs sont répartis
+     * @param sendRatePerMinute Messages envoyés par minute et par utilisateur
+     * @param pollIntervalMs Intervalle d'interrogation (0 pour le long-polling)
+     * @param messageSize Taille des messages, en caractères
+     */
+    public LoadGenerator(JakartaClient.ChatService service, int users, int rooms, double sendRatePerMinute,
+            long pollIntervalMs, int messageSize) {
+        this.service = service;
+        this.users = users;
+        this.rooms = Math.max(1, rooms);
+        this.sendRatePerMinute = sendRatePerMinute;
+        this.pollIntervalMs = pollIntervalMs;
+        this.messageSize = messageSize;
+    }
+
+    /**
+     * Point d'entrée en ligne de commande
+     */
+    public static void main(String[] args) throws Exception {
+        String url = option(args, "url", "http://localhost:8080/chat");
+        int users = Integer.parseInt(option(args, "users", "100"));
+        int rooms = Integer.parseInt(option(args, "rooms", "1"));
+        long durationS = Long.parseLong(option(args, "duration", "60"));
+        long rampS = Long.parseLong(option(args, "ramp", "5"));
+        double sendRate = Double.parseDouble(option(args, "send-rate", "6"));
+        long pollIntervalMs = Long.parseLong(option(args, "poll-interval", "0"));
+        int messageSize = Integer.parseInt(option(args, "message-size", "80"));
+        long reportS = Long.parseLong(option(args, "report", "5"));
+
+        ChatServiceImpl service = new ChatServiceImpl();
+        service.setEndpointUrl(url);
+
+        System.out.printf(Locale.ROOT, "%d utilisateurs, %d salon(s), %.1f msg/min/utilisateur, %s, messages de %d caractères, %d s sur %s%n",
+            users, rooms, sendRate, pollIntervalMs > 0 ? "interrogation toutes les " + pollIntervalMs + " ms" : "long-polling",
+            messageSize, durationS, url);
+        new LoadGenerator(service, users, rooms, sendRate, pollIntervalMs, messageSize)
+            .run(TimeUnit.SECONDS.toMillis(durationS), TimeUnit.SECONDS.toMillis(rampS), TimeUnit.SECONDS.toMillis(reportS));
+        System.exit(0);
+    }
+
+    /**
+     * Lance les utilisateurs, affiche un rapport à chaque intervalle puis le
+     * bilan final
+     *
+     * @param durationMs Durée totale de la simulation
+     * @param rampMs Durée sur laquelle les démarrages des utilisateurs sont étalés
+     * @param reportMs Intervalle entre deux rapports
+     * @throws InterruptedException Si le thread est interrompu
+     */
+    public void run(long durationMs, long rampMs, long reportMs) throws InterruptedException {
+        ExecutorService executor = createExecutor();
+        long start = System.nanoTime();
+        long end = start + TimeUnit.MILLISECONDS.toNanos(durationMs);
+        AtomicInteger started = new AtomicInteger();
+
+        Thread launcher = new Thread(() -> {
+            for (int i = 0; i < users && running; i++) {
+                String user = "load-" + i;
+                String room = "load" + (i % rooms);
+                executor.execute(() -> readLoop(user, room));
+                if (sendRatePerMinute > 0) {
+                    executor.execute(() -> sendLoop(user, room));
+                }
+                started.incrementAndGet();
+                if (rampMs > 0) {
+                    sleep(rampMs / Math.max(1, users));
+                }
+            }
+        }, "load-launcher");
+        launcher.setDaemon(true);
+        launcher.start();
+
+        long nextReport = start;
+        while (System.nanoTime() < end) {
+            nextReport += TimeUnit.MILLISECONDS.toNanos(reportMs);
+            long wait = Math.min(nextReport, end) - System.nanoTime();
+            if (wait > 0) {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            }
+            double elapsedS = (System.nanoTime() - start) / 1e9;
+            System.out.printf(Locale.ROOT, "[%6.1f s] %d utilisateurs actifs%n", elapsedS, started.get());
+            for (Operation operation : operations) {
+                operation.report(operation.rotate(), "           ");
+            }
+        }
+        running = false;
+        executor.shutdownNow();
+
+        System.out.printf(Locale.ROOT, "Bilan sur %.1f s :%n", (System.nanoTime() - start) / 1e9);
+        for (Operation operation : operations) {
+            operation.report(operation.total, "  ");
+            if (operation.lastError != null) {
+                System.out.println("    dernière erreur : " + operation.lastError);
+            }
+        }
+    }
+
+    private void sendLoop(String user, String room) {
+        // Intervalles exponentiels : les envois suivent un processus de Poisson
+        double meanDelayMs = 60000.0 / sendRatePerMinute;
+        sleep((long) (ThreadLocalRandom.current().nextDouble() * meanDelayMs));
+        while (running) {
+            long begin = System.nanoTime();
+            try {
+                service.sendMessage(room, user, message(begin));
+                send.record(System.nanoTime() - begin, false);
+            } catch (RuntimeException e) {
+                if (!running) {
+                    return;  // Appel interrompu par l'arrêt de la simulation
+                }
+                send.failed(System.nanoTime() - begin, e);
+            }
+            sleep((long) (-Math.log(1 - ThreadLocalRandom.current().nextDouble()) * meanDelayMs));
+        }
+    }
+
+    private void readLoop(String user, String room) {
+        long lastSeq = 0;
+        boolean first = true;
+        while (running) {
+            long begin = System.nanoTime();
+            MessageBatch batch;
+            try {
+                // Premier chargement du salon (la dernière page), puis comme le client graphique
+                if (first) {
+                    MessagePage page = service.getRecentMessages(room, JOIN_PAGE_SIZE);
+                    batch = new MessageBatch(page.getLastSeq(), page.getMessages());
+                } else {
+                    batch = pollIntervalMs > 0
+                        ? service.getMessagesSince(room, lastSeq)
+                        : service.waitForMessages(room, lastSeq, LONG_POLL_TIMEOUT_MS);
+                }
+                long received = System.nanoTime();
+                // En long-polling, la durée de l'appel inclut l'attente : seule la
+                // distribution des messages mesure alors la réactivité
+                poll.record(received - begin, false);
+                if (!first) {
+                    recordDeliveries(batch, user, received);
+                }
+                first = false;
+                lastSeq = batch.getLastSeq();
+            } catch (RuntimeException e) {
+                if (!running) {
+                    return;
+                }
+                poll.failed(System.nanoTime() - begin, e);
+                sleep(ERROR_PAUSE_MS);
+                continue;
+            }
+            if (pollIntervalMs > 0) {
+                sleep(pollIntervalMs);
+            }
+        }
+    }
+
+    private void recordDeliveries(MessageBatch batch, String own, long received) {
+        for (ChatMessage message : batch.getMessages()) {
+            if (message.getSender().equals(own)) {
+                continue;
+            }
+            String text = message.getText();
+            int stampEnd = text.startsWith(STAMP) ? text.indexOf(STAMP, 1) : -1;
+            if (stampEnd > 0) {
+                try {
+                    long sent = Long.parseLong(text.substring(1, stampEnd));
+                    deliver.record(received - sent, false);
+                } catch (NumberFormatException e) {
+                    // Message d'une autre source : ignoré
+                }
+            }
+        }
+    }
+
+    private String message(long sentNanos) {
+        StringBuilder text = new StringBuilder(Math.max(messageSize, 24));
+        text.append(STAMP).append(sentNanos).append(STAMP);
+        while (text.length() < messageSize) {
+            text.append((char) ('a' + text.length() % 26));
+        }
+        return text.toString();
+    }
+
+    private static void sleep(long ms) {
+        if (ms <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Un thread virtuel par tâche si la JVM le permet (Java 21+), sinon des
+     * threads classiques
+     */
+    private static ExecutorService createExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            System.err.println("Threads virtuels indisponibles (Java 21+ requis), threads classiques utilisés");
+            AtomicInteger counter = new AtomicInteger();
+            return Executors.newCachedThreadPool(task -> {
+                Thread thread = new Thread(task, "load-user-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    private static String option(String[] args, String name, String defaultValue) {
+        String prefix = "--" + name + "=";
+        for (String arg : args) {
+            if (arg.startsWith(prefix)) {
+                return arg.substring(prefix.length());
+            }
+        }
+        return defaultValue;
+    }
+
+    /**
+     * Mesures d'une opération : une fenêtre remplacée à chaque rapport et un cumul
+     */
+    private static final class Operation {
+        final String name;
+        final Window total = new Window();
+        final AtomicReference<Window> current = new AtomicReference<>(new Window());
+
+        Operation(String name) {
+            this.name = name;
+        }
+
+        volatile String lastError;
+
+        void record(long nanos, boolean error) {
+            current.get().record(nanos, error);
+            total.record(nanos, error);
+        }
+
+        void failed(long nanos, Exception e) {
+            lastError = e.getCause() == null ? e.getMessage() : e.getMessage() + " (" + e.getCause() + ")";
+            record(nanos, true);
+        }
+
+        Window rotate() {
+            return current.getAndSet(new Window());
+        }
+
+        void report(Window window, String indent) {
+            long count = window.count.sum();
+            long errors = window.errors.sum();
+            double seconds = (System.nanoTime() - window.startNanos) / 1e9;
+            System.out.printf(Locale.ROOT,
+                "%s%-8s %8d ok %6d err (%5.2f %%) %9.1f /s   p50 %8.2f ms  p99 %8.2f ms  p99.9 %8.2f ms  max %8.2f ms%n",
+                indent, name, count - errors, errors, count == 0 ? 0.0 : 100.0 * errors / count, count / seconds,
+                window.percentileMs(0.5), window.percentileMs(0.99), window.percentileMs(0.999), window.max.get() / 1e6);
+        }
+    }
+
+    /**
+     * Histogramme de latence sans verrou : un compartiment par microseconde
+     * sous 16 µs, puis 8 par puissance de deux (au plus 12,5 % d'écart)
+     */
+    private static final class Window {
+        private static final int SUB_BITS = 3;
+        private static final int SUB_COUNT = 1 << SUB_BITS;
+        private static final int LINEAR = 2 * SUB_COUNT;
+        private static final int BUCKETS = LINEAR + (Long.SIZE - SUB_BITS - 2) * SUB_COUNT;
+
+        final long startNanos = System.nanoTime();
+        final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        final LongAdder count = new LongAdder();
+        final LongAdder errors = new LongAdder();
+        final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+        void record(long nanos, boolean error) {
+            long value = Math.max(0, nanos);
+            count.increment();
+            if (error) {
+                errors.increment();
+                return;
+            }
+            buckets.incrementAndGet(index(value / 1000));
+            max.accumulate(value);
+        }
+
+        double percentileMs(double q) {
+            long[] counts = new long[BUCKETS];
+            long recorded = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] = buckets.get(i);
+                recorded += counts[i];
+            }
+            if (recorded == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(q * recorded));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    // La borne du compartiment peut dépasser la plus grande valeur mesurée
+                    return Math.min(upperBound(i) / 1000.0, max.get() / 1e6);
+                }
+            }
+            return max.get() / 1e6;
+        }
+
+        static int index(long micros) {
+            if (micros < LINEAR) {
+                return (int) micros;
+            }
+            int exp = 63 - Long.numberOfLeadingZeros(micros);
+            int sub = (int) (micros >>> (exp - SUB_BITS)) & (SUB_COUNT - 1);
+            return LINEAR + (exp - SUB_BITS - 1) * SUB_COUNT + sub;
+        }
+
+        static long upperBound(int index) {
+            if (index < LINEAR) {
+                return index + 1;
+            }
+            int k = index - LINEAR;
+            return (long) (SUB_COUNT + k % SUB_COUNT + 1) << (k / SUB_COUNT + 1);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.chat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lot de messages renvoyé par une récupération incrémentale.
+ * Contient les messages plus récents qu'un numéro de séquence donné
+ * ainsi que le dernier numéro de séquence attribué par le serveur.
+ *
+ * @author Client Chat SOAP
+ * @version 1.0
+ */
+public class MessageBatch {
+    
+    private final long lastSeq;
+    private final List<ChatMessage> messages;
+    private final long nextPollMs;
+    
+    /**
+     * Construit un lot de messages
+     * 
+     * @param lastSeq Dernier numéro de séquence connu du serveur
+     * @param messages Messages reçus
+     */
+    public MessageBatch(long lastSeq, List<ChatMessage> messages) {
+        this(lastSeq, messages, 0);
+    }
+    
+    /**
+     * Construit un lot de messages accompagné d'une indication du serveur
+     * 
+     * @param lastSeq Dernier numéro de séquence connu du serveur
+     * @param messages Messages reçus
+     * @param nextPollMs Délai minimal avant la prochaine interrogation demandé par le serveur (0 si aucun)
+     */
+    public MessageBatch(long lastSeq, List<ChatMessage> messages, long nextPollMs) {
+        this.lastSeq = lastSeq;
+        this.messages = messages != null ? messages : new ArrayList<>();
+        this.nextPollMs = Math.max(0, nextPollMs);
+    }
+    
+    /**
+     * @return Le dernier numéro de séquence attribué par le serveur
+     */
+    public long getLastSeq() {
+        return lastSeq;
+    }
+    
+    /**
+     * @return Les nouveaux messages, du plus ancien au plus récent
+     */
+    public List<ChatMessage> getMessages() {
+        return messages;
+    }
+    
+    /**
+     * @return Le délai minimal avant la prochaine interrogation demandé par le
+     *         serveur, en millisecondes (0 si le serveur n'en indique pas)
+     */
+    public long getNextPollMs() {
+        return nextPollMs;
+    }
+}
@@ -0,0 +1,314 @@
+package com.example.chat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import javax.swing.SwingUtilities;
+
+/**
+ * Récupère les messages d'un salon en arrière-plan, hors de l'EDT.
+ * Un unique thread effectue les appels réseau et intègre les lots reçus
+ * (rafraîchissements et long-polling) à l'historique ; les demandes de
+ * rafraîchissement qui se chevauchent sont fusionnées en un seul appel.
+ * En rejoignant un salon, seule la dernière page de l'historique est chargée ;
+ * les pages précédentes le sont à la demande, tant que l'historique affiché
+ * reste sous sa taille maximale.
+ * Seules les mises à jour du modèle sont transmises à l'EDT, regroupées si
+ * l'EDT n'a pas encore traité les précédentes.
+ *
+ * @author Client Chat SOAP
+ * @version 1.0
+ */
+public class MessageFetcher implements AutoCloseable {
+    
+    /**
+     * Reçoit sur l'EDT les messages à afficher
+     */
+    public interface Listener {
+        /**
+         * @param reset true si l'historique affiché doit d'abord être vidé
+         *              (changement de salon ou de serveur, redémarrage du serveur)
+         * @param older Messages plus anciens à placer avant l'historique affiché, dans l'ordre
+         * @param added Nouveaux messages, dans l'ordre
+         */
+        void messagesReceived(boolean reset, List<ChatMessage> older, List<ChatMessage> added);
+    }
+    
+    private final Listener listener;
+    private final int pageSize;
+    private final int maxMessages;
+    private final ExecutorService worker;
+    private final AtomicBoolean refreshScheduled = new AtomicBoolean();
+    private final AtomicBoolean olderScheduled = new AtomicBoolean();
+    
+    // Salon suivi ; lus et modifiés uniquement par le thread de travail
+    private JakartaClient.ChatService service;
+    private String room;
+    
+    /** Numéro de séquence du plus ancien message affiché ; modifié par le thread de travail */
+    private long oldestSeq;
+    
+    /** true quand le serveur n'a plus de messages plus anciens à fournir */
+    private boolean beginningReached;
+    
+    /**
+     * Dernier numéro de séquence intégré (lu par le thread de long-polling),
+     * -1 tant que la dernière page du salon n'est pas chargée
+     */
+    private volatile long lastSeq = -1;
+    
+    /** Génération du salon suivi ; les lots d'une génération précédente sont ignorés */
+    private volatile int generation;
+    
+    // Mise à jour en attente de l'EDT
+    private final Object pendingLock = new Object();
+    private boolean pendingReset;
+    private List<ChatMessage> pendingOlder = new ArrayList<>();
+    private List<ChatMessage> pendingMessages = new ArrayList<>();
+    private boolean publishScheduled;
+    
+    /**
+     * Crée le récupérateur et son thread de travail
+     *
+     * @param listener Destinataire des mises à jour, appelé sur l'EDT
+     * @param pageSize Nombre de messages demandés par page de l'historique
+     * @param maxMessages Nombre maximal de messages affichés, au-delà duquel les
+     *                    plus anciens sont oubliés (voir {@link MessageListModel})
+     */
+    public MessageFetcher(Listener listener, int pageSize, int maxMessages) {
+        this.listener = listener;
+        this.pageSize = pageSize;
+        this.maxMessages = maxMessages;
+        this.worker = Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, "chat-fetcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+    
+    /**
+     * Suit un nouveau salon (ou le même salon sur un autre serveur) : l'historique
+     * affiché est vidé puis rechargé en arrière-plan
+     *
+     * @param service Service à interroger
+     * @param room Nom du salon
+     * @return La nouvelle génération, à transmettre avec les lots du long-polling
+     */
+    public int show(JakartaClient.ChatService service, String room) {
+        int current = ++generation;
+        // Le nouveau long-polling ne doit pas partir du numéro de l'ancien salon
+        lastSeq = -1;
+        worker.execute(() -> {
+            this.service = service;
+            this.room = room;
+            restart();
+        });
+        return current;
+    }
+    
+    /**
+     * Demande un rafraîchissement. Sans effet si un rafraîchissement est déjà
+     * en attente : les demandes rapprochées ne produisent qu'un appel.
+     */
+    public void refresh() {
+        if (refreshScheduled.compareAndSet(false, true)) {
+            worker.execute(this::fetch);
+        }
+    }
+    
+    /**
+     * Demande la page qui précède le plus ancien message affiché, par exemple
+     * quand l'utilisateur remonte en haut de l'historique. Sans effet si une
+     * demande est déjà en attente, si le début de l'historique est atteint ou
+     * si l'historique affiché a atteint sa taille maximale.
+     */
+    public void loadOlder() {
+        if (olderScheduled.compareAndSet(false, true)) {
+            worker.execute(this::fetchOlder);
+        }
+    }
+    
+    /**
+     * Intègre un lot reçu par long-polling
+     *
+     * @param batchGeneration Génération en cours lors de l'appel qui a produit le lot
+     * @param batch Lot de messages reçu
+     */
+    public void accept(int batchGeneration, MessageBatch batch) {
+        worker.execute(() -> {
+            if (batchGeneration == generation) {
+                merge(batch);
+            }
+        });
+    }
+    
+    /**
+     * Exécute un appel réseau sur le thread de travail et transmet son résultat à l'EDT
+     *
+     * @param call Appel à exécuter
+     * @param onResult Destinataire du résultat, appelé sur l'EDT
+     */
+    public <T> void load(Callable<T> call, Consumer<T> onResult) {
+        worker.execute(() -> {
+            try {
+                T result = call.call();
+                SwingUtilities.invokeLater(() -> onResult.accept(result));
+            } catch (Exception ex) {
+                System.err.println("Erreur de chargement: " + ex.getMessage());
+            }
+        });
+    }
+    
+    /**
+     * @return Le dernier numéro de séquence intégré à l'historique, ou -1 si la
+     *         dernière page du salon n'est pas encore chargée
+     */
+    public long getLastSeq() {
+        return lastSeq;
+    }
+    
+    /**
+     * @return La génération du salon actuellement suivi
+     */
+    public int getGeneration() {
+        return generation;
+    }
+    
+    /**
+     * Arrête le thread de travail
+     */
+    @Override
+    public void close() {
+        worker.shutdownNow();
+    }
+    
+    private void restart() {
+        lastSeq = -1;
+        synchronized (pendingLock) {
+            pendingReset = true;
+            pendingOlder.clear();
+            pendingMessages.clear();
+        }
+        fetch();
+        // Afficher le salon vide même si le chargement a échoué
+        publish(Collections.emptyList());
+    }
+    
+    private void fetch() {
+        refreshScheduled.set(false);
+        if (service == null) {
+            return;
+        }
+        try {
+            if (lastSeq < 0) {
+                // Ne charger que la dernière page ; un échec sera retenté au prochain rafraîchissement
+                MessagePage page = service.getRecentMessages(room, pageSize);
+                oldestSeq = page.getFirstSeq();
+                beginningReached = page.getFirstSeq() <= 1;
+                lastSeq = page.getLastSeq();
+                publish(page.getMessages());
+            } else {
+                // Ne récupérer que les messages plus récents que le dernier reçu
+                merge(service.getMessagesSince(room, lastSeq));
+            }
+        } catch (Exception ex) {
+            // Gérer silencieusement les erreurs de rafraîchissement
+            System.err.println("Erreur de rafraîchissement: " + ex.getMessage());
+        }
+    }
+    
+    private void fetchOlder() {
+        olderScheduled.set(false);
+        long held = lastSeq - oldestSeq + 1;
+        if (service == null || lastSeq < 0 || beginningReached || held >= maxMessages) {
+            return;
+        }
+        try {
+            MessagePage page = service.getMessagesBefore(room, oldestSeq, (int) Math.min(pageSize, maxMessages - held));
+            if (page.getMessages().isEmpty()) {
+                // Début du salon, ou messages plus anciens déjà supprimés par le serveur
+                beginningReached = true;
+                return;
+            }
+            oldestSeq = page.getFirstSeq();
+            beginningReached = oldestSeq <= 1;
+            publishOlder(page.getMessages());
+        } catch (Exception ex) {
+            System.err.println("Erreur de chargement de l'historique: " + ex.getMessage());
+        }
+    }
+    
+    /**
+     * Intègre un lot à l'historique. Les lots peuvent arriver en double
+     * (long-polling et rafraîchissement après envoi) : seuls les messages dont
+     * le numéro de séquence dépasse lastSeq sont ajoutés.
+     */
+    private void merge(MessageBatch batch) {
+        if (lastSeq < 0) {
+            // Lot demandé avant le chargement de la dernière page
+            return;
+        }
+        List<ChatMessage> received = batch.getMessages();
+        long firstSeq = batch.getLastSeq() - received.size() + 1;
+        if (batch.getLastSeq() < lastSeq || firstSeq > lastSeq + 1) {
+            // Le serveur a redémarré, ou des messages ont été perdus depuis le
+            // dernier lot : repartir de la dernière page
+            restart();
+            return;
+        }
+        int alreadyKnown = (int) Math.max(0, Math.min(received.size(), lastSeq - firstSeq + 1));
+        lastSeq = batch.getLastSeq();
+        // Les plus anciens messages au-delà de la taille maximale sont oubliés,
+        // ici comme dans le modèle, et pourront être rechargés
+        long kept = lastSeq - maxMessages + 1;
+        if (kept > oldestSeq) {
+            oldestSeq = kept;
+            beginningReached = false;
+        }
+        publish(received.subList(alreadyKnown, received.size()));
+    }
+    
+    private void publishOlder(List<ChatMessage> older) {
+        synchronized (pendingLock) {
+            // Une page lue après une autre la précède dans l'historique
+            pendingOlder.addAll(0, older);
+            if (publishScheduled) {
+                return;
+            }
+            publishScheduled = true;
+        }
+        SwingUtilities.invokeLater(this::deliver);
+    }
+    
+    private void publish(List<ChatMessage> added) {
+        synchronized (pendingLock) {
+            pendingMessages.addAll(added);
+            if (publishScheduled || (!pendingReset && pendingMessages.isEmpty())) {
+                return;
+            }
+            publishScheduled = true;
+        }
+        SwingUtilities.invokeLater(this::deliver);
+    }
+    
+    private void deliver() {
+        boolean reset;
+        List<ChatMessage> older;
+        List<ChatMessage> added;
+        synchronized (pendingLock) {
+            reset = pendingReset;
+            older = pendingOlder;
+            added = pendingMessages;
+            pendingReset = false;
+            pendingOlder = new ArrayList<>();
+            pendingMessages = new ArrayList<>();
+            publishScheduled = false;
+        }
+        listener.messagesReceived(reset, older, added);
+    }
+}
@@ -0,0 +1,38 @@
+package com.example.chat;
+
+/**
+ * Message à envoyer dans un lot (voir {@link JakartaClient.ChatService#sendMessages}).
+ *
+ * @author Client Chat SOAP
+ * @version 1.0
+ */
+public class MessageInput {
+    
+    private final String user;
+    private final String message;
+    
+    /**
+     * Construit un message à envoyer
+     * 
+     * @param user Nom d'utilisateur de l'expéditeur
+     * @param message Contenu du message
+     */
+    public MessageInput(String user, String message) {
+        this.user = user;
+        this.message = message;
+    }
+    
+    /**
+     * @return Le nom d'utilisateur de l'expéditeur
+     */
+    public String getUser() {
+        return user;
+    }
+    
+    /**
+     * @return Le contenu du message
+     */
+    public String getMessage() {
+        return message;
+    }
+}
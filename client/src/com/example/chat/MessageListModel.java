@@ -0,0 +1,90 @@
+package com.example.chat;
+
+import java.util.ArrayList;
+import java.util.List;
+import javax.swing.AbstractListModel;
+
+/**
+ * Modèle de liste de l'historique des messages affichés.
+ * Les nouveaux messages sont ajoutés à la fin, les pages plus anciennes au
+ * début, et seuls les intervalles ajoutés ou retirés sont signalés à la vue.
+ * Au-delà de la taille maximale, les plus anciens messages sont retirés.
+ * À utiliser uniquement sur l'EDT.
+ *
+ * @author Client Chat SOAP
+ * @version 1.0
+ */
+public class MessageListModel extends AbstractListModel<ChatMessage> {
+    private static final long serialVersionUID = 1L;
+
+    private final ArrayList<ChatMessage> messages = new ArrayList<>();
+    private final int maxSize;
+
+    /**
+     * Crée un historique vide
+     *
+     * @param maxSize Nombre maximal de messages conservés
+     */
+    public MessageListModel(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    @Override
+    public int getSize() {
+        return messages.size();
+    }
+
+    @Override
+    public ChatMessage getElementAt(int index) {
+        return messages.get(index);
+    }
+
+    /**
+     * Ajoute des messages à la fin de l'historique, puis retire les plus
+     * anciens si la taille maximale est dépassée
+     *
+     * @param added Nouveaux messages, dans l'ordre
+     * @return Le nombre de messages retirés au début de l'historique
+     */
+    public int addAll(List<ChatMessage> added) {
+        if (added.isEmpty()) {
+            return 0;
+        }
+        int first = messages.size();
+        messages.addAll(added);
+        fireIntervalAdded(this, first, messages.size() - 1);
+        int excess = messages.size() - maxSize;
+        if (excess <= 0) {
+            return 0;
+        }
+        messages.subList(0, excess).clear();
+        fireIntervalRemoved(this, 0, excess - 1);
+        return excess;
+    }
+
+    /**
+     * Ajoute des messages plus anciens au début de l'historique
+     *
+     * @param older Messages précédant le plus ancien message affiché, dans l'ordre
+     */
+    public void addFirst(List<ChatMessage> older) {
+        if (older.isEmpty()) {
+            return;
+        }
+        messages.addAll(0, older);
+        fireIntervalAdded(this, 0, older.size() - 1);
+    }
+
+    /**
+     * Vide l'historique
+     */
+    public void clear() {
+        int size = messages.size();
+        if (size == 0) {
+            return;
+        }
+        messages.clear();
+        messages.trimToSize();
+        fireIntervalRemoved(this, 0, size - 1);
+    }
+}
@@ -0,0 +1,196 @@
+package com.example.chat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * File d'envoi qui regroupe les messages envoyés à peu d'intervalle en un seul
+ * appel {@link JakartaClient.ChatService#sendMessages}.
+ * Un message attend au plus {@code lingerMs} millisecondes que d'autres le
+ * rejoignent, et un lot ne dépasse jamais {@code maxBatchSize} messages.
+ * Un seul thread vide la file dans l'ordre d'arrivée : l'ordre des messages
+ * de chaque utilisateur est donc conservé.
+ *
+ * @author Client Chat SOAP
+ * @version 1.0
+ */
+public class MessageOutbox implements AutoCloseable {
+    
+    /** Délai de regroupement par défaut (ms) */
+    public static final long DEFAULT_LINGER_MS = 20;
+    
+    /** Taille maximale par défaut d'un lot */
+    public static final int DEFAULT_MAX_BATCH_SIZE = 100;
+    
+    private final JakartaClient.ChatService service;
+    private final long lingerMs;
+    private final int maxBatchSize;
+    private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    private final Thread flusher;
+    /** Marque de fermeture, toujours le dernier élément placé dans la file */
+    private final Pending endOfQueue = new Pending(null, null);
+    /** Protège {@code closed} et l'ajout dans la file, pour que rien ne suive la marque de fermeture */
+    private final Object enqueueLock = new Object();
+    private boolean closed;
+    
+    /**
+     * Crée une file d'envoi avec les paramètres par défaut
+     * 
+     * @param service Service utilisé pour envoyer les lots
+     */
+    public MessageOutbox(JakartaClient.ChatService service) {
+        this(service, DEFAULT_LINGER_MS, DEFAULT_MAX_BATCH_SIZE);
+    }
+    
+    /**
+     * Crée une file d'envoi
+     * 
+     * @param service Service utilisé pour envoyer les lots
+     * @param lingerMs Durée maximale d'attente d'autres messages avant l'envoi (ms)
+     * @param maxBatchSize Nombre maximal de messages par lot
+     */
+    public MessageOutbox(JakartaClient.ChatService service, long lingerMs, int maxBatchSize) {
+        if (maxBatchSize <= 0) {
+            throw new IllegalArgumentException("La taille des lots doit être positive");
+        }
+        this.service = service;
+        this.lingerMs = lingerMs;
+        this.maxBatchSize = maxBatchSize;
+        this.flusher = new Thread(this::flushLoop, "chat-outbox");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+    
+    /**
+     * Ajoute un message à la file d'envoi
+     * 
+     * @param room Nom du salon
+     * @param user Nom d'utilisateur de l'expéditeur
+     * @param message Contenu du message
+     * @return Un futur terminé quand le lot contenant le message a été accepté par le serveur
+     * @throws IllegalArgumentException Si l'utilisateur ou le message est vide
+     * @throws IllegalStateException Si la file a été fermée
+     */
+    public CompletableFuture<Void> send(String room, String user, String message) {
+        if (user == null || user.trim().isEmpty()) {
+            throw new IllegalArgumentException("Le nom d'utilisateur ne peut pas être vide");
+        }
+        if (message == null || message.trim().isEmpty()) {
+            throw new IllegalArgumentException("Le message ne peut pas être vide");
+        }
+        Pending pending = new Pending(room, new MessageInput(user, message));
+        synchronized (enqueueLock) {
+            if (closed) {
+                throw new IllegalStateException("La file d'envoi est fermée");
+            }
+            queue.add(pending);
+        }
+        return pending.result;
+    }
+    
+    /**
+     * Envoie les messages en attente puis arrête le thread d'envoi. Attend au
+     * plus 5 secondes : au-delà, les envois en cours se terminent en arrière-plan.
+     */
+    @Override
+    public void close() {
+        synchronized (enqueueLock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            queue.add(endOfQueue);
+        }
+        try {
+            flusher.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    /**
+     * Boucle du thread d'envoi : attend un premier message, laisse aux suivants
+     * le temps de le rejoindre, puis envoie un lot par série de messages d'un même salon
+     */
+    private void flushLoop() {
+        List<Pending> drained = new ArrayList<>(maxBatchSize);
+        boolean ended = false;
+        while (!ended) {
+            try {
+                Pending first = queue.take();
+                if (first == endOfQueue) {
+                    return;
+                }
+                drained.add(first);
+                // Après la marque de fermeture, la file est vide : poll() ne fait plus attendre
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(lingerMs);
+                while (drained.size() < maxBatchSize) {
+                    Pending next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    if (next == endOfQueue) {
+                        ended = true;
+                        break;
+                    }
+                    drained.add(next);
+                }
+            } catch (InterruptedException e) {
+                // Personne n'interrompt ce thread : envoyer ce qui a déjà été retiré de la file
+            }
+            flush(drained);
+            drained.clear();
+        }
+    }
+    
+    /**
+     * Envoie les messages retirés de la file, en un appel par série consécutive
+     * de messages destinés au même salon
+     * 
+     * @param drained Messages dans leur ordre d'arrivée
+     */
+    private void flush(List<Pending> drained) {
+        int start = 0;
+        while (start < drained.size()) {
+            String room = drained.get(start).room;
+            int end = start + 1;
+            while (end < drained.size() && drained.get(end).room.equals(room)) {
+                end++;
+            }
+            List<Pending> run = drained.subList(start, end);
+            List<MessageInput> inputs = new ArrayList<>(run.size());
+            for (Pending pending : run) {
+                inputs.add(pending.input);
+            }
+            try {
+                service.sendMessages(room, inputs);
+                for (Pending pending : run) {
+                    pending.result.complete(null);
+                }
+            } catch (RuntimeException e) {
+                for (Pending pending : run) {
+                    pending.result.completeExceptionally(e);
+                }
+            }
+            start = end;
+        }
+    }
+    
+    /**
+     * Message en attente d'envoi
+     */
+    private static final class Pending {
+        final String room;
+        final MessageInput input;
+        final CompletableFuture<Void> result = new CompletableFuture<>();
+        
+        Pending(String room, MessageInput input) {
+            this.room = room != null ? room : JakartaClient.ChatService.DEFAULT_ROOM;
+            this.input = input;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.chat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Page de l'historique d'un salon renvoyée par une lecture paginée.
+ * Contient des messages consécutifs, numérotés de firstSeq à lastSeq ;
+ * une page vide a un firstSeq égal à lastSeq + 1.
+ *
+ * @author Client Chat SOAP
+ * @version 1.0
+ */
+public class MessagePage {
+    
+    private final long firstSeq;
+    private final long lastSeq;
+    private final List<ChatMessage> messages;
+    
+    /**
+     * Construit une page de messages
+     * 
+     * @param firstSeq Numéro de séquence du premier message de la page
+     * @param lastSeq Numéro de séquence du dernier message de la page
+     * @param messages Messages reçus
+     */
+    public MessagePage(long firstSeq, long lastSeq, List<ChatMessage> messages) {
+        this.firstSeq = firstSeq;
+        this.lastSeq = lastSeq;
+        this.messages = messages != null ? messages : new ArrayList<>();
+    }
+    
+    /**
+     * @return Le numéro de séquence du premier message de la page, à transmettre
+     *         pour lire la page précédente
+     */
+    public long getFirstSeq() {
+        return firstSeq;
+    }
+    
+    /**
+     * @return Le numéro de séquence du dernier message de la page
+     */
+    public long getLastSeq() {
+        return lastSeq;
+    }
+    
+    /**
+     * @return Les messages de la page, du plus ancien au plus récent
+     */
+    public List<ChatMessage> getMessages() {
+        return messages;
+    }
+}
@@ -0,0 +1,95 @@
+package com.example.chat;
+
+/**
+ * Paramètres du rythme d'interrogation du serveur : intervalle minimal appliqué
+ * après une activité, intervalle maximal atteint par recul exponentiel tant que
+ * rien ne change, facteur de recul et part aléatoire ajoutée à chaque délai.
+ *
+ * @author Client Chat SOAP
+ * @version 1.0
+ */
+public final class PollingPolicy {
+
+    /** Politique par défaut : de 250 ms à 15 s, doublement, gigue de ±20 % */
+    public static final PollingPolicy DEFAULT = new PollingPolicy(250, 15000, 2.0, 0.2);
+
+    private final long minIntervalMs;
+    private final long maxIntervalMs;
+    private final double backoffFactor;
+    private final double jitter;
+
+    /**
+     * Crée une politique d'interrogation
+     *
+     * @param minIntervalMs Intervalle après une activité, en millisecondes
+     * @param maxIntervalMs Intervalle maximal atteint par recul, en millisecondes
+     * @param backoffFactor Facteur appliqué à l'intervalle à chaque interrogation sans nouveauté (au moins 1)
+     * @param jitter Part aléatoire de chaque délai, entre 0 et 1 (0,2 : ±20 %)
+     * @throws IllegalArgumentException Si un paramètre est hors de son domaine
+     */
+    public PollingPolicy(long minIntervalMs, long maxIntervalMs, double backoffFactor, double jitter) {
+        if (minIntervalMs < 0 || maxIntervalMs < minIntervalMs) {
+            throw new IllegalArgumentException("Intervalles invalides : " + minIntervalMs + " à " + maxIntervalMs + " ms");
+        }
+        if (!(backoffFactor >= 1.0)) {
+            throw new IllegalArgumentException("Le facteur de recul doit être au moins 1 : " + backoffFactor);
+        }
+        if (!(jitter >= 0.0 && jitter <= 1.0)) {
+            throw new IllegalArgumentException("La gigue doit être comprise entre 0 et 1 : " + jitter);
+        }
+        this.minIntervalMs = minIntervalMs;
+        this.maxIntervalMs = maxIntervalMs;
+        this.backoffFactor = backoffFactor;
+        this.jitter = jitter;
+    }
+
+    /**
+     * Lit la politique dans les propriétés système chat.poll.min, chat.poll.max,
+     * chat.poll.backoff et chat.poll.jitter ; les valeurs absentes sont celles de
+     * {@link #DEFAULT}
+     *
+     * @return La politique configurée
+     * @throws IllegalArgumentException Si une propriété est invalide
+     */
+    public static PollingPolicy fromSystemProperties() {
+        return new PollingPolicy(
+            Long.getLong("chat.poll.min", DEFAULT.minIntervalMs),
+            Long.getLong("chat.poll.max", DEFAULT.maxIntervalMs),
+            Double.parseDouble(System.getProperty("chat.poll.backoff", String.valueOf(DEFAULT.backoffFactor))),
+            Double.parseDouble(System.getProperty("chat.poll.jitter", String.valueOf(DEFAULT.jitter))));
+    }
+
+    /**
+     * @return L'intervalle appliqué après une activité, en millisecondes
+     */
+    public long getMinIntervalMs() {
+        return minIntervalMs;
+    }
+
+    /**
+     * @return L'intervalle maximal, en millisecondes
+     */
+    public long getMaxIntervalMs() {
+        return maxIntervalMs;
+    }
+
+    /**
+     * @return Le facteur de recul
+     */
+    public double getBackoffFactor() {
+        return backoffFactor;
+    }
+
+    /**
+     * @return La part aléatoire de chaque délai, entre 0 et 1
+     */
+    public double getJitter() {
+        return jitter;
+    }
+
+    @Override
+    public String toString() {
+        return "PollingPolicy[" + minIntervalMs + "-" + maxIntervalMs + " ms, x" + backoffFactor
+            + ", ±" + Math.round(jitter * 100) + "%]";
+    }
+}
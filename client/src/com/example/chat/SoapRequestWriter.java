@@ -0,0 +1,225 @@
+package com.example.chat;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Écrit les enveloppes SOAP des requêtes en XML texte, directement en UTF-8,
+ * dans un tampon réutilisé d'un appel à l'autre.
+ * Les parties constantes de l'enveloppe (début, fin, balises des arguments)
+ * sont encodées une seule fois ; les champs sont échappés et encodés en une
+ * seule passe, sans chaîne intermédiaire. Une instance n'est pas partagée
+ * entre threads.
+ *
+ * @author Client Chat SOAP
+ * @version 1.0
+ */
+public final class SoapRequestWriter extends ByteArrayOutputStream {
+    
+    private static final int INITIAL_CAPACITY = 512;
+    
+    // Au-delà, le tampon n'est pas conservé après un gros lot
+    private static final int MAX_RETAINED_CAPACITY = 64 * 1024;
+    
+    private static final ConcurrentHashMap<String, Template> TEMPLATES = new ConcurrentHashMap<>();
+    
+    private static final int CACHED_ARGS = 8;
+    private static final byte[][] ARG_OPEN = new byte[CACHED_ARGS][];
+    private static final byte[][] ARG_CLOSE = new byte[CACHED_ARGS][];
+    static {
+        for (int i = 0; i < CACHED_ARGS; i++) {
+            ARG_OPEN[i] = ascii("<arg" + i + ">");
+            ARG_CLOSE[i] = ascii("</arg" + i + ">");
+        }
+    }
+    
+    private static final byte[] USER_OPEN = ascii("<user>");
+    private static final byte[] USER_CLOSE = ascii("</user>");
+    private static final byte[] MESSAGE_OPEN = ascii("<message>");
+    private static final byte[] MESSAGE_CLOSE = ascii("</message>");
+    
+    private static final byte[] AMP = ascii("&amp;");
+    private static final byte[] LT = ascii("&lt;");
+    private static final byte[] GT = ascii("&gt;");
+    private static final byte[] QUOT = ascii("&quot;");
+    private static final byte[] APOS = ascii("&apos;");
+    // Un retour chariot littéral serait normalisé par le parseur du serveur
+    private static final byte[] CR = ascii("&#13;");
+    
+    /**
+     * Crée un écrivain avec un tampon initial de petite taille
+     */
+    public SoapRequestWriter() {
+        super(INITIAL_CAPACITY);
+    }
+    
+    /**
+     * Remplace le contenu du tampon par l'enveloppe d'un appel d'opération
+     *
+     * @param operation Nom de l'opération SOAP
+     * @param args Arguments de l'opération, transmis dans l'ordre (arg0, arg1, ...) ;
+     *             une liste est transmise comme un élément répété
+     * @return Cet écrivain, dont le tampon contient la requête
+     */
+    public SoapRequestWriter writeRequest(String operation, Object... args) {
+        reset();
+        Template template = TEMPLATES.computeIfAbsent(operation, Template::new);
+        append(template.prefix);
+        for (int i = 0; i < args.length; i++) {
+            if (args[i] instanceof List) {
+                for (Object value : (List<?>) args[i]) {
+                    writeArg(i, value);
+                }
+            } else {
+                writeArg(i, args[i]);
+            }
+        }
+        append(template.suffix);
+        return this;
+    }
+    
+    /**
+     * Donne accès au tampon sans copie ; seuls les {@link #size()} premiers
+     * octets sont significatifs, et le tampon est réécrit au prochain appel
+     *
+     * @return Le tampon interne
+     */
+    public byte[] buffer() {
+        return buf;
+    }
+    
+    /**
+     * Vide le tampon ; un tampon agrandi par un gros lot est libéré
+     */
+    @Override
+    public void reset() {
+        super.reset();
+        if (buf.length > MAX_RETAINED_CAPACITY) {
+            buf = new byte[INITIAL_CAPACITY];
+        }
+    }
+    
+    private void writeArg(int index, Object value) {
+        append(index < CACHED_ARGS ? ARG_OPEN[index] : ascii("<arg" + index + ">"));
+        if (value instanceof MessageInput) {
+            MessageInput input = (MessageInput) value;
+            append(USER_OPEN);
+            appendEscaped(input.getUser());
+            append(USER_CLOSE);
+            append(MESSAGE_OPEN);
+            appendEscaped(input.getMessage());
+            append(MESSAGE_CLOSE);
+        } else if (value instanceof Long || value instanceof Integer) {
+            appendDecimal(((Number) value).longValue());
+        } else {
+            appendEscaped(value == null ? "" : value.toString());
+        }
+        append(index < CACHED_ARGS ? ARG_CLOSE[index] : ascii("</arg" + index + ">"));
+    }
+    
+    private void append(byte[] bytes) {
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buf, count, bytes.length);
+        count += bytes.length;
+    }
+    
+    /**
+     * Échappe les caractères spéciaux XML et encode le texte en UTF-8 en une passe
+     */
+    private void appendEscaped(String text) {
+        if (text == null) {
+            return;
+        }
+        int length = text.length();
+        // Pire cas : "&quot;" (6 octets) pour un caractère
+        ensureCapacity(length * 6);
+        byte[] out = buf;
+        int pos = count;
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                byte[] entity;
+                switch (c) {
+                    case '&': entity = AMP; break;
+                    case '<': entity = LT; break;
+                    case '>': entity = GT; break;
+                    case '"': entity = QUOT; break;
+                    case '\'': entity = APOS; break;
+                    case '\r': entity = CR; break;
+                    default:
+                        out[pos++] = (byte) c;
+                        continue;
+                }
+                System.arraycopy(entity, 0, out, pos, entity.length);
+                pos += entity.length;
+            } else if (c < 0x800) {
+                out[pos++] = (byte) (0xC0 | (c >> 6));
+                out[pos++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(text.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, text.charAt(++i));
+                out[pos++] = (byte) (0xF0 | (codePoint >> 18));
+                out[pos++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                out[pos++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                out[pos++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                // Demi-caractère isolé : non représentable en UTF-8
+                out[pos++] = (byte) '?';
+            } else {
+                out[pos++] = (byte) (0xE0 | (c >> 12));
+                out[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                out[pos++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        count = pos;
+    }
+    
+    private void appendDecimal(long value) {
+        if (value == Long.MIN_VALUE) {
+            append(ascii(Long.toString(value)));
+            return;
+        }
+        ensureCapacity(20);
+        if (value < 0) {
+            buf[count++] = '-';
+            value = -value;
+        }
+        int start = count;
+        do {
+            buf[count++] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        // Les chiffres ont été écrits à l'envers
+        for (int i = start, j = count - 1; i < j; i++, j--) {
+            byte digit = buf[i];
+            buf[i] = buf[j];
+            buf[j] = digit;
+        }
+    }
+    
+    private void ensureCapacity(int extra) {
+        if (count + extra > buf.length) {
+            buf = Arrays.copyOf(buf, Math.max(buf.length * 2, count + extra));
+        }
+    }
+    
+    private static byte[] ascii(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+    
+    /**
+     * Début et fin d'enveloppe d'une opération, encodés une fois pour toutes
+     */
+    private static final class Template {
+        final byte[] prefix;
+        final byte[] suffix;
+    
+        Template(String operation) {
+            this.prefix = ascii("<soapenv:Envelope xmlns:soapenv=\"http://schemas.xmlsoap.org/soap/envelope/\""
+                + " xmlns:chat=\"http://chat.example.com/\"><soapenv:Body><chat:" + operation + ">");
+            this.suffix = ascii("</chat:" + operation + "></soapenv:Body></soapenv:Envelope>");
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package com.example.chat;
+
+import com.sun.xml.fastinfoset.stax.StAXDocumentParser;
+import java.io.InputStream;
+import java.util.function.Consumer;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Lecteur en flux des réponses SOAP, en XML texte ou en Fast Infoset.
+ * Le document est lu directement depuis le flux de la réponse HTTP et chaque
+ * élément demandé est transmis au gestionnaire dès qu'il est décodé : la mémoire
+ * utilisée ne dépend pas de la taille de la réponse. Les entités XML sont
+ * décodées et les retours à la ligne des messages sont conservés.
+ *
+ * @author Client Chat SOAP
+ * @version 1.0
+ */
+public final class SoapResponseParser {
+
+    private static final XMLInputFactory XML_INPUT = createInputFactory();
+
+    private SoapResponseParser() {
+    }
+
+    /**
+     * Reçoit le contenu texte des éléments d'une réponse, dans l'ordre du document
+     */
+    public interface ElementHandler {
+        /**
+         * @param localName Nom local d'un élément rencontré
+         * @return true si le contenu texte de cet élément doit être transmis
+         */
+        boolean accepts(String localName);
+
+        /**
+         * Reçoit le contenu texte d'un élément accepté
+         *
+         * @param localName Nom local de l'élément
+         * @param text Contenu texte décodé
+         */
+        void element(String localName, String text);
+
+        /**
+         * Signale la fin d'un élément dont le contenu n'a pas été transmis,
+         * par exemple celui qui regroupe les champs d'un message
+         *
+         * @param localName Nom local de l'élément
+         */
+        default void endElement(String localName) {
+        }
+    }
+
+    /**
+     * Crée un gestionnaire qui transmet le contenu des éléments portant un nom donné
+     *
+     * @param elementName Nom local des éléments recherchés
+     * @param consumer Destinataire de chaque contenu
+     * @return Le gestionnaire
+     */
+    public static ElementHandler forElement(String elementName, Consumer<String> consumer) {
+        return new ElementHandler() {
+            @Override
+            public boolean accepts(String localName) {
+                return elementName.equals(localName);
+            }
+
+            @Override
+            public void element(String localName, String text) {
+                consumer.accept(text);
+            }
+        };
+    }
+
+    /**
+     * Crée un gestionnaire qui reconstitue les messages (seq, sender, timestamp,
+     * text) d'une réponse ; chaque message est délimité par son élément return
+     * ou messages
+     *
+     * @param consumer Destinataire de chaque message
+     * @return Le gestionnaire
+     */
+    public static ElementHandler forMessages(Consumer<ChatMessage> consumer) {
+        return new MessageReader(consumer);
+    }
+
+    /**
+     * Lit une réponse SOAP jusqu'à la fin du document
+     *
+     * @param in Flux de la réponse, laissé ouvert
+     * @param fastInfoset true si la réponse est encodée en Fast Infoset
+     * @param handler Destinataire des éléments décodés
+     * @throws XMLStreamException Si la réponse n'est pas un document valide
+     */
+    public static void parse(InputStream in, boolean fastInfoset, ElementHandler handler) throws XMLStreamException {
+        XMLStreamReader reader = fastInfoset ? new StAXDocumentParser(in) : XML_INPUT.createXMLStreamReader(in);
+        try {
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT && handler.accepts(reader.getLocalName())) {
+                    handler.element(reader.getLocalName(), reader.getElementText());
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    handler.endElement(reader.getLocalName());
+                }
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Crée la fabrique de lecteurs XML ; les DTD et entités externes sont
+     * refusées, une réponse SOAP n'en contient jamais
+     */
+    private static XMLInputFactory createInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newFactory();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+        return factory;
+    }
+
+    /**
+     * Reconstitue les messages à partir de leurs champs (seq, sender, timestamp,
+     * text), quel que soit leur ordre : un message est transmis à la fin de
+     * l'élément qui les regroupe, même s'il en manque, et les champs sont alors
+     * remis à zéro pour que rien ne passe d'un message au suivant. Un champ
+     * absent est vide (sender, text) ou vaut 0 (seq, timestamp).
+     */
+    private static final class MessageReader implements ElementHandler {
+        private final Consumer<ChatMessage> consumer;
+        private boolean started;
+        private long seq;
+        private String sender;
+        private long timestamp;
+        private String text;
+
+        MessageReader(Consumer<ChatMessage> consumer) {
+            this.consumer = consumer;
+        }
+
+        @Override
+        public boolean accepts(String localName) {
+            return "seq".equals(localName) || "sender".equals(localName)
+                || "timestamp".equals(localName) || "text".equals(localName);
+        }
+
+        @Override
+        public void element(String localName, String value) {
+            switch (localName) {
+                case "seq":
+                    seq = Long.parseLong(value.trim());
+                    break;
+                case "sender":
+                    sender = value;
+                    break;
+                case "timestamp":
+                    timestamp = Long.parseLong(value.trim());
+                    break;
+                default:
+                    text = value;
+                    break;
+            }
+            started = true;
+        }
+
+        @Override
+        public void endElement(String localName) {
+            if (started && ("return".equals(localName) || "messages".equals(localName))) {
+                consumer.accept(new ChatMessage(seq, sender, timestamp, text));
+                started = false;
+                seq = 0;
+                sender = null;
+                timestamp = 0;
+                text = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package com.example.chat;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Transport HTTP des requêtes SOAP, basé sur {@link HttpClient}.
+ * Un même client HTTP est partagé par tous les appels : les connexions sont
+ * conservées ouvertes (keep-alive) et réutilisées d'un appel à l'autre.
+ * Chaque requête est limitée par un délai de lecture, auquel s'ajoute la durée
+ * d'attente demandée au serveur pour les appels en long-polling.
+ *
+ * @author Client Chat SOAP
+ * @version 1.0
+ */
+public class SoapTransport {
+    
+    /** Délai de connexion par défaut */
+    public static final Duration DEFAULT_CONNECT_TIMEOUT = Duration.ofSeconds(5);
+    
+    /** Délai de lecture par défaut */
+    public static final Duration DEFAULT_READ_TIMEOUT = Duration.ofSeconds(30);
+    
+    private static final String SOAP_ACTION = "\"\"";
+    
+    private final HttpClient client;
+    private final Duration connectTimeout;
+    private final Duration readTimeout;
+    
+    /**
+     * Crée un transport avec les délais par défaut
+     */
+    public SoapTransport() {
+        this(DEFAULT_CONNECT_TIMEOUT, DEFAULT_READ_TIMEOUT);
+    }
+    
+    /**
+     * Crée un transport
+     *
+     * @param connectTimeout Délai maximal d'établissement d'une connexion
+     * @param readTimeout Délai maximal d'attente de la réponse complète
+     */
+    public SoapTransport(Duration connectTimeout, Duration readTimeout) {
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+        this.client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(connectTimeout)
+            .build();
+    }
+    
+    /**
+     * @return Le délai de connexion
+     */
+    public Duration getConnectTimeout() {
+        return connectTimeout;
+    }
+    
+    /**
+     * @return Le délai de lecture
+     */
+    public Duration getReadTimeout() {
+        return readTimeout;
+    }
+    
+    /**
+     * Envoie une requête et attend les en-têtes de la réponse ; le corps est lu
+     * ensuite au fil de sa réception
+     *
+     * @param endpoint URL du service
+     * @param body Tampon contenant le corps de la requête, réutilisable dès le retour
+     * @param length Nombre d'octets significatifs du tampon
+     * @param contentType Type du corps de la requête
+     * @param accept Types de réponse acceptés
+     * @param waitMs Durée d'attente demandée au serveur, ajoutée au délai de lecture
+     * @return La réponse, à fermer après lecture du corps
+     * @throws IOException Si une erreur réseau se produit ou si le délai expire
+     * @throws InterruptedException Si le thread est interrompu pendant l'attente
+     */
+    public Response post(URI endpoint, byte[] body, int length, String contentType, String accept, long waitMs)
+            throws IOException, InterruptedException {
+        return post(endpoint, body, length, contentType, accept, waitMs, null);
+    }
+    
+    /**
+     * Envoie une requête conditionnelle : le serveur répond 304 sans corps si
+     * la version désignée par l'ETag est toujours la version courante
+     *
+     * @param endpoint URL du service
+     * @param body Tampon contenant le corps de la requête, réutilisable dès le retour
+     * @param length Nombre d'octets significatifs du tampon
+     * @param contentType Type du corps de la requête
+     * @param accept Types de réponse acceptés
+     * @param waitMs Durée d'attente demandée au serveur, ajoutée au délai de lecture
+     * @param ifNoneMatch ETag d'une réponse précédente, ou null pour une requête ordinaire
+     * @return La réponse, à fermer après lecture du corps
+     * @throws IOException Si une erreur réseau se produit ou si le délai expire
+     * @throws InterruptedException Si le thread est interrompu pendant l'attente
+     */
+    public Response post(URI endpoint, byte[] body, int length, String contentType, String accept, long waitMs,
+            String ifNoneMatch) throws IOException, InterruptedException {
+        HttpRequest.Builder request = request(endpoint, body, length, contentType, accept, waitMs);
+        if (ifNoneMatch != null) {
+            request.header("If-None-Match", ifNoneMatch);
+        }
+        return toResponse(client.send(request.build(), HttpResponse.BodyHandlers.ofInputStream()));
+    }
+    
+    /**
+     * Envoie une requête sans bloquer le thread appelant
+     *
+     * @param endpoint URL du service
+     * @param body Corps de la requête
+     * @param contentType Type du corps de la requête
+     * @param accept Types de réponse acceptés
+     * @param waitMs Durée d'attente demandée au serveur, ajoutée au délai de lecture
+     * @return Un futur de la réponse, terminé à la réception des en-têtes ;
+     *         la réponse est à fermer après lecture du corps
+     */
+    public CompletableFuture<Response> postAsync(URI endpoint, byte[] body, String contentType, String accept, long waitMs) {
+        return client.sendAsync(request(endpoint, body, body.length, contentType, accept, waitMs).build(),
+                HttpResponse.BodyHandlers.ofInputStream())
+            .thenApply(response -> {
+                try {
+                    return toResponse(response);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+    }
+    
+    private HttpRequest.Builder request(URI endpoint, byte[] body, int length, String contentType, String accept,
+            long waitMs) {
+        return HttpRequest.newBuilder(endpoint)
+            .timeout(readTimeout.plusMillis(Math.max(0, waitMs)))
+            .header("Content-Type", contentType)
+            .header("Accept", accept)
+            .header("Accept-Encoding", "gzip, deflate")
+            .header("SOAPAction", SOAP_ACTION)
+            .POST(HttpRequest.BodyPublishers.ofByteArray(body, 0, length));
+    }
+    
+    /**
+     * Décompresse le corps de la réponse selon l'en-tête Content-Encoding.
+     * Le serveur ne compresse que les réponses volumineuses.
+     */
+    private static Response toResponse(HttpResponse<InputStream> response) throws IOException {
+        InputStream body = response.body();
+        String encoding = response.headers().firstValue("Content-Encoding").orElse("").trim().toLowerCase();
+        try {
+            switch (encoding) {
+                case "gzip":
+                case "x-gzip":
+                    body = new GZIPInputStream(body, 8192);
+                    break;
+                case "deflate":
+                    body = new InflaterInputStream(body, new Inflater(), 8192);
+                    break;
+                default:
+                    break;
+            }
+        } catch (IOException e) {
+            response.body().close();
+            throw e;
+        }
+        return new Response(response.statusCode(),
+            response.headers().firstValue("Content-Type").orElse(""),
+            response.headers().firstValue("ETag").orElse(null), body);
+    }
+    
+    /**
+     * Réponse HTTP reçue du serveur. Son corps est lu au fil de sa réception ;
+     * la fermer rend la connexion au pool.
+     */
+    public static final class Response implements Closeable {
+        private final int status;
+        private final String contentType;
+        private final String etag;
+        private final InputStream body;
+        
+        Response(int status, String contentType, String etag, InputStream body) {
+            this.status = status;
+            this.contentType = contentType;
+            this.etag = etag;
+            this.body = body;
+        }
+        
+        /**
+         * @return Le code de statut HTTP
+         */
+        public int getStatus() {
+            return status;
+        }
+        
+        /**
+         * @return Le type du corps de la réponse (vide s'il est absent)
+         */
+        public String getContentType() {
+            return contentType;
+        }
+        
+        /**
+         * @return La version de la réponse (en-tête ETag), ou null si le serveur n'en donne pas
+         */
+        public String getETag() {
+            return etag;
+        }
+        
+        /**
+         * @return Le flux du corps de la réponse, décompressé
+         */
+        public InputStream getBody() {
+            return body;
+        }
+        
+        /**
+         * Termine la lecture du corps et libère la connexion
+         */
+        @Override
+        public void close() throws IOException {
+            body.close();
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.example.chat;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rythme de l'ordonnanceur entre deux attentes : une attente que le serveur a
+ * tenue est relancée aussitôt, même dans un salon calme, tandis que les échecs
+ * et les réponses vides rendues sans attendre reculent, et que le délai demandé
+ * par le serveur est toujours respecté. Lancer avec -ea ; échoue par une
+ * AssertionError.
+ */
+public class AdaptivePollSchedulerTest {
+
+    private static final long TIMEOUT_MS = 25_000;
+
+    public static void main(String[] args) throws Exception {
+        quietRoomRearmsAtOnce();
+        earlyEmptyAnswersBackOff();
+        failuresBackOff();
+        serverHintIsRespected();
+        System.out.println("AdaptivePollSchedulerTest passed");
+    }
+
+    static void quietRoomRearmsAtOnce() throws Exception {
+        AdaptivePollScheduler scheduler = new AdaptivePollScheduler(new PollingPolicy(250, 15_000, 2.0, 0));
+        for (int i = 0; i < 10; i++) {
+            // Attentes vides arrivées au bout de leur délai
+            scheduler.recordLongPollResult(false, 0, TIMEOUT_MS, TIMEOUT_MS);
+            check(awaitMs(scheduler) < 100, "attente relancée sans délai");
+        }
+        check(scheduler.getCurrentIntervalMs() == 250, "pas de recul " + scheduler.getCurrentIntervalMs());
+        scheduler.recordLongPollResult(true, 0, 40, TIMEOUT_MS);
+        check(awaitMs(scheduler) < 100, "relancée après un message");
+    }
+
+    static void earlyEmptyAnswersBackOff() throws Exception {
+        AdaptivePollScheduler scheduler = new AdaptivePollScheduler(new PollingPolicy(50, 1_000, 2.0, 0));
+        scheduler.recordLongPollResult(false, 0, 5, TIMEOUT_MS);
+        check(scheduler.getCurrentIntervalMs() == 100, "recul " + scheduler.getCurrentIntervalMs());
+        check(awaitMs(scheduler) >= 90, "pause après une réponse rendue sans attendre");
+    }
+
+    static void failuresBackOff() throws Exception {
+        AdaptivePollScheduler scheduler = new AdaptivePollScheduler(new PollingPolicy(50, 1_000, 2.0, 0));
+        scheduler.recordLongPollResult(false, 0, TIMEOUT_MS, TIMEOUT_MS);
+        scheduler.recordFailure();
+        check(scheduler.getCurrentIntervalMs() == 100, "recul " + scheduler.getCurrentIntervalMs());
+        check(awaitMs(scheduler) >= 90, "pause après un échec");
+    }
+
+    static void serverHintIsRespected() throws Exception {
+        AdaptivePollScheduler scheduler = new AdaptivePollScheduler(new PollingPolicy(50, 1_000, 2.0, 0));
+        scheduler.recordLongPollResult(true, 300, 40, TIMEOUT_MS);
+        check(awaitMs(scheduler) >= 290, "délai du serveur respecté");
+    }
+
+    private static long awaitMs(AdaptivePollScheduler scheduler) throws InterruptedException {
+        long start = System.nanoTime();
+        scheduler.awaitNextPoll();
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    private static void check(boolean condition, String what) {
+        if (!condition) {
+            throw new AssertionError(what);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.chat;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fermeture de la file d'envoi pendant un appel en cours : tous les messages
+ * acceptés avant la fermeture sont envoyés, dans l'ordre, et aucun ne l'est
+ * après. Lancer avec -ea ; échoue par une AssertionError.
+ */
+public class MessageOutboxTest {
+
+    public static void main(String[] args) throws Exception {
+        closeWhileSending();
+        sendAfterClose();
+        System.out.println("MessageOutboxTest passed");
+    }
+
+    static void closeWhileSending() throws Exception {
+        List<String> sent = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch firstCallStarted = new CountDownLatch(1);
+        JakartaClient.ChatService service = fakeService((room, inputs) -> {
+            firstCallStarted.countDown();
+            sleep(200);
+            for (MessageInput input : inputs) {
+                sent.add(input.getMessage());
+            }
+        });
+        MessageOutbox outbox = new MessageOutbox(service, 5, 3);
+        List<CompletableFuture<Void>> results = new ArrayList<>();
+        results.add(outbox.send("general", "alice", "m0"));
+        check(firstCallStarted.await(5, TimeUnit.SECONDS), "first batch sent");
+        for (int i = 1; i <= 7; i++) {
+            results.add(outbox.send("general", "alice", "m" + i));
+        }
+        outbox.close();
+        for (CompletableFuture<Void> result : results) {
+            result.get(5, TimeUnit.SECONDS);
+        }
+        check(sent.equals(List.of("m0", "m1", "m2", "m3", "m4", "m5", "m6", "m7")), "all sent in order " + sent);
+    }
+
+    static void sendAfterClose() {
+        MessageOutbox outbox = new MessageOutbox(fakeService((room, inputs) -> { }));
+        outbox.close();
+        outbox.close();
+        try {
+            outbox.send("general", "alice", "late");
+            throw new AssertionError("send accepted after close");
+        } catch (IllegalStateException expected) {
+            // La file refuse les messages une fois fermée
+        }
+    }
+
+    interface BatchSender {
+        void sendMessages(String room, List<MessageInput> inputs);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static JakartaClient.ChatService fakeService(BatchSender sender) {
+        return (JakartaClient.ChatService) Proxy.newProxyInstance(MessageOutboxTest.class.getClassLoader(),
+            new Class<?>[] {JakartaClient.ChatService.class}, (proxy, method, methodArgs) -> {
+                if (method.getName().equals("sendMessages")) {
+                    sender.sendMessages((String) methodArgs[0], (List<MessageInput>) methodArgs[1]);
+                    return null;
+                }
+                throw new UnsupportedOperationException(method.getName());
+            });
+    }
+
+    private static void sleep(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            throw new AssertionError("flusher interrupted", e);
+        }
+    }
+
+    private static void check(boolean condition, String what) {
+        if (!condition) {
+            throw new AssertionError(what);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.example.chat;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Aller-retour des textes par SoapRequestWriter puis SoapResponseParser :
+ * caractères spéciaux XML, retours chariot et sauts de ligne doivent arriver
+ * intacts. Vérifie aussi que les messages d'une réponse sont délimités par leur
+ * élément, même quand un champ manque. Lancer avec -ea ; échoue par une
+ * AssertionError.
+ */
+public class SoapRoundTripTest {
+
+    private static final String[] TEXTS = {
+        "a & b", "x < y > z", "&amp; déjà échappé", "ligne\r\nsuivante", "saut\nseul", "retour\rseul",
+        "\r\n\r\n", "guillemets \" et '", "accents éàü et 😀", "]]> <![CDATA[", ""
+    };
+
+    public static void main(String[] args) throws Exception {
+        requestArguments();
+        batchMessages();
+        responseEntities();
+        messagesWithMissingFields();
+        System.out.println("SoapRoundTripTest passed");
+    }
+
+    static void requestArguments() throws Exception {
+        SoapRequestWriter writer = new SoapRequestWriter();
+        for (String text : TEXTS) {
+            writer.writeRequest("sendRoomMessage", "salon", "alice", text);
+            List<String> values = new ArrayList<>();
+            SoapResponseParser.parse(new ByteArrayInputStream(writer.buffer(), 0, writer.size()), false,
+                SoapResponseParser.forElement("arg2", values::add));
+            check(values.equals(List.of(text)), "argument " + escape(text) + " lu " + escapeAll(values));
+        }
+        writer.writeRequest("sendRoomMessage", "salon", null, "texte");
+        List<String> users = new ArrayList<>();
+        SoapResponseParser.parse(new ByteArrayInputStream(writer.buffer(), 0, writer.size()), false,
+            SoapResponseParser.forElement("arg1", users::add));
+        check(users.equals(List.of("")), "argument null envoyé vide " + users);
+    }
+
+    static void batchMessages() throws Exception {
+        List<MessageInput> inputs = new ArrayList<>();
+        for (String text : TEXTS) {
+            inputs.add(new MessageInput("bob & <co>", text));
+        }
+        SoapRequestWriter writer = new SoapRequestWriter();
+        writer.writeRequest("sendMessages", "salon", inputs);
+        List<String> users = new ArrayList<>();
+        List<String> messages = new ArrayList<>();
+        SoapResponseParser.parse(new ByteArrayInputStream(writer.buffer(), 0, writer.size()), false,
+            new SoapResponseParser.ElementHandler() {
+                @Override
+                public boolean accepts(String localName) {
+                    return "user".equals(localName) || "message".equals(localName);
+                }
+
+                @Override
+                public void element(String localName, String text) {
+                    ("user".equals(localName) ? users : messages).add(text);
+                }
+            });
+        check(messages.equals(List.of(TEXTS)), "lot lu " + escapeAll(messages));
+        check(users.size() == TEXTS.length && users.stream().allMatch("bob & <co>"::equals), "expéditeurs " + users);
+    }
+
+    // Ce qu'envoient les serveurs : entités prédéfinies et références numériques
+    static void responseEntities() throws Exception {
+        List<ChatMessage> messages = parseMessages("<return><sender>a&amp;b</sender><seq>1</seq>"
+            + "<text>x &lt; y&#13;&#10;z&#xD;\nw</text><timestamp>5</timestamp></return>");
+        check(messages.size() == 1, "un message " + messages.size());
+        ChatMessage message = messages.get(0);
+        check("a&b".equals(message.getSender()), "expéditeur " + message.getSender());
+        check("x < y\r\nz\r\nw".equals(message.getText()), "texte " + escape(message.getText()));
+    }
+
+    // Un champ manquant ne doit ni retenir le message ni passer au suivant
+    static void messagesWithMissingFields() throws Exception {
+        List<ChatMessage> messages = parseMessages(
+            "<return><sender>alice</sender><seq>1</seq><text>sans date</text></return>"
+            + "<return><seq>2</seq><text>sans expéditeur</text><timestamp>20</timestamp></return>"
+            + "<return><timestamp>30</timestamp><text>désordre</text><seq>3</seq><sender>carol</sender></return>");
+        check(messages.size() == 3, "trois messages " + messages.size());
+        check(messages.get(0).getSeq() == 1 && messages.get(0).getTimestamp() == 0, "premier " + messages.get(0));
+        check(messages.get(1).getSeq() == 2 && messages.get(1).getSender().isEmpty()
+            && messages.get(1).getTimestamp() == 20, "second sans l'expéditeur du premier " + messages.get(1));
+        check(messages.get(2).getSeq() == 3 && "carol".equals(messages.get(2).getSender())
+            && "désordre".equals(messages.get(2).getText()), "troisième " + messages.get(2));
+
+        List<ChatMessage> batch = new ArrayList<>();
+        String response = "<S:Envelope xmlns:S=\"http://schemas.xmlsoap.org/soap/envelope/\"><S:Body>"
+            + "<ns2:getRoomChatMessagesSinceResponse xmlns:ns2=\"http://chat.example.com/\"><return>"
+            + "<lastSeq>5</lastSeq><messages><sender>a</sender><seq>4</seq><text>t</text></messages>"
+            + "<messages><sender>b</sender><seq>5</seq><text>u</text><timestamp>9</timestamp></messages>"
+            + "</return></ns2:getRoomChatMessagesSinceResponse></S:Body></S:Envelope>";
+        SoapResponseParser.parse(new ByteArrayInputStream(response.getBytes(StandardCharsets.UTF_8)), false,
+            SoapResponseParser.forMessages(batch::add));
+        check(batch.size() == 2 && batch.get(0).getSeq() == 4 && batch.get(1).getSeq() == 5
+            && batch.get(1).getTimestamp() == 9, "lot " + batch);
+    }
+
+    private static List<ChatMessage> parseMessages(String returns) throws Exception {
+        String response = "<S:Envelope xmlns:S=\"http://schemas.xmlsoap.org/soap/envelope/\"><S:Body>"
+            + "<ns2:getRoomChatMessagesResponse xmlns:ns2=\"http://chat.example.com/\">" + returns
+            + "</ns2:getRoomChatMessagesResponse></S:Body></S:Envelope>";
+        List<ChatMessage> messages = new ArrayList<>();
+        SoapResponseParser.parse(new ByteArrayInputStream(response.getBytes(StandardCharsets.UTF_8)), false,
+            SoapResponseParser.forMessages(messages::add));
+        return messages;
+    }
+
+    private static String escapeAll(List<String> texts) {
+        List<String> escaped = new ArrayList<>();
+        for (String text : texts) {
+            escaped.add(escape(text));
+        }
+        return escaped.toString();
+    }
+
+    private static String escape(String text) {
+        return text == null ? null : text.replace("\r", "\\r").replace("\n", "\\n");
+    }
+
+    private static void check(boolean condition, String what) {
+        if (!condition) {
+            throw new AssertionError(what);
+        }
+    }
+}
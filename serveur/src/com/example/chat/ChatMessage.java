@@ -0,0 +1,59 @@
+package com.example.chat;
+
+// A message as clients receive it: its sequence number in the room, who sent
+// it, when the room received it (ms since the epoch) and its text. Stores
+// keep a more compact form and build these on the way out.
+public class ChatMessage {
+
+    private long seq;
+    private String sender;
+    private long timestamp;
+    private String text;
+
+    public ChatMessage() {
+    }
+
+    public ChatMessage(long seq, String sender, long timestamp, String text) {
+        this.seq = seq;
+        this.sender = sender;
+        this.timestamp = timestamp;
+        this.text = text;
+    }
+
+    public long getSeq() {
+        return seq;
+    }
+
+    public void setSeq(long seq) {
+        this.seq = seq;
+    }
+
+    public String getSender() {
+        return sender;
+    }
+
+    public void setSender(String sender) {
+        this.sender = sender;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public void setTimestamp(long timestamp) {
+        this.timestamp = timestamp;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public void setText(String text) {
+        this.text = text;
+    }
+
+    @Override
+    public String toString() {
+        return sender + ": " + text;
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.chat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class ChatMessageBatch {
+
+    private long lastSeq;
+    private List<ChatMessage> messages = new ArrayList<>();
+    // Optional hint: the client should not poll again before this many ms
+    private Long nextPollMs;
+
+    public ChatMessageBatch() {
+    }
+
+    public ChatMessageBatch(long lastSeq, List<ChatMessage> messages) {
+        this.lastSeq = lastSeq;
+        this.messages = messages;
+    }
+
+    public long getLastSeq() {
+        return lastSeq;
+    }
+
+    public void setLastSeq(long lastSeq) {
+        this.lastSeq = lastSeq;
+    }
+
+    public List<ChatMessage> getMessages() {
+        return messages;
+    }
+
+    public void setMessages(List<ChatMessage> messages) {
+        this.messages = messages;
+    }
+
+    public Long getNextPollMs() {
+        return nextPollMs;
+    }
+
+    public void setNextPollMs(Long nextPollMs) {
+        this.nextPollMs = nextPollMs;
+    }
+}
@@ -0,0 +1,196 @@
+package com.example.chat;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import jakarta.xml.ws.WebServiceContext;
+import jakarta.xml.ws.spi.Invoker;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+// Request metrics, served in the Prometheus text format by the /metrics context.
+// MetricsFilter times each exchange end to end and counts the body bytes it
+// sends; the invoker tags the exchange with the operation it dispatched to.
+// Everything on the request path is a LongAdder or an atomic bucket.
+public class ChatMetrics implements HttpHandler {
+
+    // Requests that never reach an operation: WSDL fetches, malformed envelopes
+    static final String OTHER = "other";
+
+    private static final double[] QUANTILES = {0.5, 0.99, 0.999};
+
+    // Set by the invoker and read back by the filter: the RI dispatches on the
+    // thread that runs the HTTP handler
+    private static final ThreadLocal<String> OPERATION = new ThreadLocal<>();
+
+    private final ConcurrentMap<String, OperationStats> operations = new ConcurrentHashMap<>();
+    private final LongAdder activeRequests = new LongAdder();
+    private final List<Gauge> gauges = new CopyOnWriteArrayList<>();
+    private final List<Gauge> counters = new CopyOnWriteArrayList<>();
+
+    public void gauge(String name, String help, LongSupplier value) {
+        gauges.add(new Gauge(name, help, value));
+    }
+
+    public void counter(String name, String help, LongSupplier value) {
+        counters.add(new Gauge(name, help, value));
+    }
+
+    // For filters that answer a request themselves, without reaching the invoker
+    static void tagOperation(String operation) {
+        OPERATION.set(operation);
+    }
+
+    // Calls the service like the RI's default invoker and records which operation ran
+    public Invoker invoker(Object service) {
+        return new Invoker() {
+            @Override
+            public void inject(WebServiceContext context) {
+            }
+
+            @Override
+            public Object invoke(Method method, Object... args) throws IllegalAccessException, InvocationTargetException {
+                OPERATION.set(method.getName());
+                try {
+                    return method.invoke(service, args);
+                } catch (InvocationTargetException e) {
+                    stats(method.getName()).failures.increment();
+                    throw e;
+                }
+            }
+        };
+    }
+
+    // For endpoints that call the service themselves, without the invoker
+    void operationFailed(String operation) {
+        stats(operation).failures.increment();
+    }
+
+    void requestStarted() {
+        activeRequests.increment();
+    }
+
+    // The operation tagged on this thread, if any; clears it
+    static String takeOperation() {
+        String operation = OPERATION.get();
+        OPERATION.remove();
+        return operation;
+    }
+
+    void requestFinished(long startNanos, long responseBytes, String operation) {
+        long elapsed = System.nanoTime() - startNanos;
+        activeRequests.decrement();
+        OperationStats stats = stats(operation == null ? OTHER : operation);
+        stats.latency.record(elapsed);
+        stats.responseBytes.add(responseBytes);
+    }
+
+    private OperationStats stats(String operation) {
+        OperationStats stats = operations.get(operation);
+        return stats != null ? stats : operations.computeIfAbsent(operation, name -> new OperationStats());
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        byte[] body = render().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    public String render() {
+        List<String> names = new ArrayList<>(operations.keySet());
+        Collections.sort(names);
+        Map<String, LatencyHistogram.Snapshot> snapshots = new HashMap<>();
+        for (String name : names) {
+            snapshots.put(name, operations.get(name).latency.snapshot());
+        }
+
+        StringBuilder out = new StringBuilder(4096);
+        header(out, "chat_request_duration_seconds", "summary",
+                "Time to serve a request, from the first filter to the end of the response body");
+        for (String name : names) {
+            LatencyHistogram.Snapshot snapshot = snapshots.get(name);
+            for (double q : QUANTILES) {
+                sample(out, "chat_request_duration_seconds", "operation=\"" + name + "\",quantile=\"" + q + "\"",
+                        format(snapshot.quantileSeconds(q)));
+            }
+            sample(out, "chat_request_duration_seconds_sum", label(name), format(snapshot.sumSeconds()));
+            sample(out, "chat_request_duration_seconds_count", label(name), Long.toString(snapshot.count()));
+        }
+        header(out, "chat_response_bytes_total", "counter", "Response body bytes written, after compression");
+        for (String name : names) {
+            sample(out, "chat_response_bytes_total", label(name), Long.toString(operations.get(name).responseBytes.sum()));
+        }
+        header(out, "chat_request_failures_total", "counter", "Operations that ended with an exception (SOAP fault)");
+        for (String name : names) {
+            sample(out, "chat_request_failures_total", label(name), Long.toString(operations.get(name).failures.sum()));
+        }
+        header(out, "chat_active_requests", "gauge", "Requests currently being served, long polls included");
+        sample(out, "chat_active_requests", null, Long.toString(activeRequests.sum()));
+        for (Gauge gauge : gauges) {
+            header(out, gauge.name, "gauge", gauge.help);
+            sample(out, gauge.name, null, Long.toString(gauge.value.getAsLong()));
+        }
+        for (Gauge counter : counters) {
+            header(out, counter.name, "counter", counter.help);
+            sample(out, counter.name, null, Long.toString(counter.value.getAsLong()));
+        }
+        return out.toString();
+    }
+
+    private static void header(StringBuilder out, String name, String type, String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void sample(StringBuilder out, String name, String labels, String value) {
+        out.append(name);
+        if (labels != null) {
+            out.append('{').append(labels).append('}');
+        }
+        out.append(' ').append(value).append('\n');
+    }
+
+    // Operation names are Java method names, so they never need escaping
+    private static String label(String operation) {
+        return "operation=\"" + operation + "\"";
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.6f", value);
+    }
+
+    private static final class OperationStats {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final LongAdder responseBytes = new LongAdder();
+        final LongAdder failures = new LongAdder();
+    }
+
+    private static final class Gauge {
+        final String name;
+        final String help;
+        final LongSupplier value;
+
+        Gauge(String name, String help, LongSupplier value) {
+            this.name = name;
+            this.help = help;
+            this.value = value;
+        }
+    }
+}
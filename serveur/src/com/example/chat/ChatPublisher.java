@@ -1,10 +1,182 @@
 package com.example.chat;
 
+import com.sun.net.httpserver.HttpContext;
+import com.sun.net.httpserver.HttpServer;
+import com.sun.xml.ws.api.fastinfoset.FastInfosetFeature;
 import jakarta.xml.ws.Endpoint;
+import jakarta.xml.ws.spi.Provider;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
+// Options are read from --name=value arguments first, then from chat.<name>
+// system properties: host, port, path, executor (default|pool|virtual),
+// threads (pool size), wait.max (long polls the JAX-WS endpoint holds at
+// once, 0 for no cap; half the pool by default with executor=pool), backlog,
+// fastinfoset (true|false), compression (true|false), compression.threshold
+// (bytes), compression.level (1-9),
+// nodelay (true|false), poll.hint (ms, 0 for none), metrics (true|false),
+// metrics.path, conditional (true|false), cache (true|false), cache.budget
+// (bytes), endpoint (jaxws|raw), retention.messages, retention.age (ms) and
+// retention.bytes (per room, 0 for no limit), retention.interval (ms),
+// archive.dir (where evicted and overwritten messages are kept, none by
+// default), and the store and journal options read by RoomRegistry:
+// store.capacity, rooms.max, journal.dir, journal.fsync (always|group|os),
+// journal.interval.ms and journal.segment.mb.
 public class ChatPublisher {
-    public static void main(String[] args) {
-        Endpoint.publish("http://localhost:8080/chat", new ChatServiceImpl());
-        System.out.println("Chat SOAP service is running on http://localhost:8080/chat?wsdl");
+
+    public static void main(String[] args) throws IOException {
+        String host = option(args, "host", "localhost");
+        int port = Integer.parseInt(option(args, "port", "8080"));
+        String path = option(args, "path", "/chat");
+        String mode = option(args, "executor", "default");
+        int threads = Integer.parseInt(option(args, "threads", "200"));
+        int backlog = Integer.parseInt(option(args, "backlog", "1024"));
+
+        // The JDK server leaves Nagle on by default, which holds small SOAP
+        // replies back for a delayed ACK (~40 ms per keep-alive round trip).
+        // Must be set before the first HttpServer is created.
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", option(args, "nodelay", "true"));
+        }
+
+        HttpServer server = HttpServer.create(new InetSocketAddress(host, port), backlog);
+        ExecutorService executor = createExecutor(mode, threads);
+        server.setExecutor(executor);
+        // The raw handler serves the same WSDL and envelopes without JAX-WS
+        boolean raw = "raw".equals(option(args, "endpoint", "jaxws"));
+
+        // Fast Infoset is negotiated per request: clients that send
+        // Accept: application/fastinfoset get binary responses, others plain XML
+        boolean fastInfoset = Boolean.parseBoolean(option(args, "fastinfoset", "true"));
+        RoomRegistry rooms = RoomRegistry.fromOptions((name, defaultValue) -> option(args, name, defaultValue));
+        // The RI runs each call to the end on its executor thread, long polls
+        // included; with a bounded pool, half of it is kept for everything else.
+        // The raw handler parks long polls without a thread and needs no cap.
+        int maxWaits = Integer.parseInt(option(args, "wait.max", !raw && "pool".equals(mode)
+                ? String.valueOf(Math.max(1, threads / 2)) : "0"));
+        ChatServiceImpl service = new ChatServiceImpl(rooms, Long.parseLong(option(args, "poll.hint", "0")), maxWaits);
+        boolean metricsEnabled = Boolean.parseBoolean(option(args, "metrics", "true"));
+        ChatMetrics metrics = new ChatMetrics();
+        RetentionPolicy retention = new RetentionPolicy(Long.parseLong(option(args, "retention.messages", "0")),
+                Long.parseLong(option(args, "retention.age", "0")), Long.parseLong(option(args, "retention.bytes", "0")));
+        String archiveDir = option(args, "archive.dir", "");
+        MessageCompactor compactor = null;
+        // Also run without a retention policy to archive what the rings overwrite
+        // and to drop journal segments that memory no longer needs
+        if (retention.isEnabled() || !archiveDir.isEmpty() || !option(args, "journal.dir", "").isEmpty()) {
+            compactor = new MessageCompactor(rooms, retention,
+                    archiveDir.isEmpty() ? null : new MessageArchive(Paths.get(archiveDir)));
+            compactor.start(Long.parseLong(option(args, "retention.interval", "1000")));
+        }
+        Endpoint endpoint = null;
+        HttpContext context;
+        if (raw) {
+            context = server.createContext(path,
+                    new RawChatHandler(service, fastInfoset, metricsEnabled ? metrics : null, executor));
+        } else {
+            endpoint = metricsEnabled
+                    ? Provider.provider().createEndpoint(null, ChatServiceImpl.class, metrics.invoker(service),
+                            new FastInfosetFeature(fastInfoset))
+                    : Endpoint.create(service, new FastInfosetFeature(fastInfoset));
+            context = server.createContext(path);
+        }
+        String metricsPath = option(args, "metrics.path", "/metrics");
+        if (metricsEnabled) {
+            // First filter, so timings and byte counts include compression
+            context.getFilters().add(new MetricsFilter(metrics));
+            metrics.gauge("chat_rooms", "Rooms currently open", rooms::size);
+            metrics.gauge("chat_stored_messages", "Messages held in memory across all rooms", rooms::storedMessages);
+            metrics.gauge("chat_stored_bytes", "Estimated heap taken by the messages held", rooms::retainedBytes);
+            if (compactor != null) {
+                metrics.counter("chat_evicted_messages_total", "Messages dropped by the retention policy or overwritten",
+                        compactor::evicted);
+                metrics.counter("chat_archived_messages_total", "Evicted and overwritten messages written to the archive",
+                        compactor::archived);
+            }
+            server.createContext(metricsPath, metrics);
+        }
+        if (Boolean.parseBoolean(option(args, "conditional", "true"))) {
+            ConditionalPollFilter conditional = new ConditionalPollFilter(rooms);
+            context.getFilters().add(conditional);
+            if (metricsEnabled) {
+                metrics.counter("chat_not_modified_total", "History polls answered 304 Not Modified",
+                        conditional::notModified);
+            }
+        }
+        if (Boolean.parseBoolean(option(args, "cache", "true"))) {
+            // Before compression, so cached responses are stored already compressed
+            ResponseCacheFilter cache = new ResponseCacheFilter(rooms,
+                    Long.parseLong(option(args, "cache.budget", String.valueOf(ResponseCacheFilter.DEFAULT_BUDGET_BYTES))));
+            context.getFilters().add(cache);
+            if (metricsEnabled) {
+                metrics.counter("chat_response_cache_hits_total", "getMessages responses replayed from the cache", cache::hits);
+                metrics.counter("chat_response_cache_misses_total", "getMessages responses built by the service", cache::misses);
+                metrics.gauge("chat_response_cache_bytes", "Bytes held by the getMessages response cache", cache::cachedBytes);
+            }
+        }
+        if (Boolean.parseBoolean(option(args, "compression", "true"))) {
+            context.getFilters().add(new CompressionFilter(
+                    Integer.parseInt(option(args, "compression.threshold", String.valueOf(CompressionFilter.DEFAULT_THRESHOLD))),
+                    Integer.parseInt(option(args, "compression.level", "1"))));
+        }
+        if (endpoint != null) {
+            endpoint.publish(context);
+        }
+        server.start();
+
+        System.out.println("Chat SOAP service is running on http://" + host + ":" + port + path
+                + "?wsdl (executor: " + mode + ", endpoint: " + (raw ? "raw" : "jaxws") + ")");
+        if (compactor != null) {
+            System.out.println("Retention: " + retention + ", archive: " + (archiveDir.isEmpty() ? "none" : archiveDir));
+        }
+        if (metricsEnabled) {
+            System.out.println("Metrics are served on http://" + host + ":" + port + metricsPath);
+        }
+    }
+
+    static String option(String[] args, String name, String defaultValue) {
+        String prefix = "--" + name + "=";
+        for (String arg : args) {
+            if (arg.startsWith(prefix)) {
+                return arg.substring(prefix.length());
+            }
+        }
+        return System.getProperty("chat." + name, defaultValue);
+    }
+
+    static ExecutorService createExecutor(String mode, int threads) {
+        switch (mode) {
+            case "default":
+                // Same executor the JAX-WS RI installs when publishing by URL
+                return Executors.newCachedThreadPool(namedThreads("chat-http"));
+            case "pool":
+                return Executors.newFixedThreadPool(threads, namedThreads("chat-http"));
+            case "virtual":
+                try {
+                    Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+                    return (ExecutorService) factory.invoke(null);
+                } catch (ReflectiveOperationException e) {
+                    System.err.println("Virtual threads need Java 21+, using the default executor instead");
+                    return createExecutor("default", threads);
+                }
+            default:
+                throw new IllegalArgumentException("Unknown executor mode: " + mode
+                        + " (expected default, pool or virtual)");
+        }
+    }
+
+    private static ThreadFactory namedThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
     }
 }
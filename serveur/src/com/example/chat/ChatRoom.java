@@ -0,0 +1,104 @@
+package com.example.chat;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+// One room: its own store and search index plus the waiters long polls park
+// on, so traffic in one room never touches another room's state
+public class ChatRoom {
+
+    private final String name;
+    private final MessageStore store;
+    private final MessageIndex index = new MessageIndex();
+
+    // Signalled after every append. (A one-party Phaser advanced by concurrent
+    // posters throws when an arrival lands while the previous advance is still
+    // in progress.)
+    private final Waiters newMessages = new Waiters();
+
+    // Last sequence number covered by the latest snapshot() on this thread, for
+    // ResponseCacheFilter: requests are served on the thread that runs the filters
+    private static final ThreadLocal<Long> SNAPSHOT_END = new ThreadLocal<>();
+
+    public ChatRoom(String name, MessageStore store) {
+        this.name = name;
+        this.store = store;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public MessageStore getStore() {
+        return store;
+    }
+
+    public long post(String sender, String text) {
+        long seq = store.append(sender, text, System.currentTimeMillis());
+        signalNewMessages();
+        return seq;
+    }
+
+    public long postAll(List<MessageInput> messages) {
+        long seq = store.appendAll(messages, System.currentTimeMillis());
+        signalNewMessages();
+        return seq;
+    }
+
+    public List<ChatMessage> snapshot() {
+        ChatMessageBatch batch = store.since(0);
+        SNAPSHOT_END.set(batch.getLastSeq());
+        return batch.getMessages();
+    }
+
+    // The contiguous end of this thread's latest snapshot, or -1 if it took none;
+    // clears it
+    static long takeSnapshotEnd() {
+        Long end = SNAPSHOT_END.get();
+        SNAPSHOT_END.remove();
+        return end == null ? -1 : end;
+    }
+
+    public ChatMessageBatch since(long lastSeq) {
+        return store.since(lastSeq);
+    }
+
+    public ChatMessagePage before(long seq, int limit) {
+        return store.before(seq, limit);
+    }
+
+    public List<ChatMessage> search(String query, int limit) {
+        return index.search(query, limit, store);
+    }
+
+    // Completes with the messages after sinceSeq once there are some, or with
+    // an empty batch after timeoutMs; no thread is held meanwhile, and the
+    // result is completed on executor unless it is ready at once
+    public CompletableFuture<ChatMessageBatch> waitFor(long sinceSeq, long timeoutMs, Executor executor) {
+        return waitUntil(sinceSeq, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs), executor);
+    }
+
+    private CompletableFuture<ChatMessageBatch> waitUntil(long sinceSeq, long deadline, Executor executor) {
+        CompletableFuture<Void> waiter = newMessages.register();
+        ChatMessageBatch batch = store.since(sinceSeq);
+        long remaining = deadline - System.nanoTime();
+        if (!batch.getMessages().isEmpty() || batch.getLastSeq() < sinceSeq || remaining <= 0) {
+            newMessages.cancel(waiter);
+            return CompletableFuture.completedFuture(batch);
+        }
+        // Woken by any append, which may still be behind an unpublished one: check again
+        return newMessages.park(waiter, remaining, executor)
+                .thenCompose(ignored -> waitUntil(sinceSeq, deadline, executor));
+    }
+
+    // Long polls currently parked on this room
+    int waiting() {
+        return newMessages.size();
+    }
+
+    private void signalNewMessages() {
+        newMessages.signalAll();
+    }
+}
@@ -4,6 +4,9 @@ import jakarta.jws.WebMethod;
 import jakarta.jws.WebService;
 import java.util.List;
 
+// The history operations return messages as "sender: text" strings, as they
+// always have. Their ChatMessages counterparts return the same messages as
+// records (seq, sender, timestamp, text) for clients that need them.
 @WebService
 public interface ChatService {
     @WebMethod
@@ -11,4 +14,64 @@ public interface ChatService {
 
     @WebMethod
     List<String> getMessages();
+
+    @WebMethod
+    MessageBatch getMessagesSince(long lastSeq);
+
+    @WebMethod
+    MessageBatch waitForMessages(long sinceSeq, int timeoutMs);
+
+    @WebMethod
+    MessagePage getRecentMessages(int limit);
+
+    @WebMethod
+    MessagePage getMessagesBefore(long seq, int limit);
+
+    @WebMethod
+    void sendRoomMessage(String room, String user, String message);
+
+    @WebMethod
+    void sendMessages(String room, List<MessageInput> messages);
+
+    @WebMethod
+    List<String> getRoomMessages(String room);
+
+    @WebMethod
+    MessageBatch getRoomMessagesSince(String room, long lastSeq);
+
+    @WebMethod
+    MessageBatch waitForRoomMessages(String room, long sinceSeq, int timeoutMs);
+
+    @WebMethod
+    MessagePage getRoomRecentMessages(String room, int limit);
+
+    @WebMethod
+    MessagePage getRoomMessagesBefore(String room, long seq, int limit);
+
+    @WebMethod
+    List<String> listRooms();
+
+    @WebMethod
+    List<String> searchMessages(String query, int limit);
+
+    @WebMethod
+    List<String> searchRoomMessages(String room, String query, int limit);
+
+    @WebMethod
+    List<ChatMessage> getRoomChatMessages(String room);
+
+    @WebMethod
+    ChatMessageBatch getRoomChatMessagesSince(String room, long lastSeq);
+
+    @WebMethod
+    ChatMessageBatch waitForRoomChatMessages(String room, long sinceSeq, int timeoutMs);
+
+    @WebMethod
+    ChatMessagePage getRoomRecentChatMessages(String room, int limit);
+
+    @WebMethod
+    ChatMessagePage getRoomChatMessagesBefore(String room, long seq, int limit);
+
+    @WebMethod
+    List<ChatMessage> searchRoomChatMessages(String room, String query, int limit);
 }
@@ -2,21 +2,243 @@ package com.example.chat;
 
 import jakarta.jws.WebService;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 @WebService(endpointInterface = "com.example.chat.ChatService")
 public class ChatServiceImpl implements ChatService {
 
-    private static final List<String> messages = Collections.synchronizedList(new ArrayList<>());
+    static final int MAX_WAIT_MS = 60_000;
+    static final int MAX_SEARCH_RESULTS = 1000;
+    static final int MAX_PAGE_SIZE = 1000;
+    // Sent back instead of waiting when every blocking wait slot is taken
+    static final long BUSY_RETRY_MS = 1000;
+
+    private final RoomRegistry rooms;
+
+    // Sent back with every batch when > 0, so operators can slow polling clients down
+    private final Long pollHintMs;
+    // Blocking waits hold the caller's thread (the JAX-WS endpoint cannot park
+    // them), so they are capped below a bounded pool's size to leave threads
+    // for sends. Null for no cap
+    private final Semaphore blockingWaits;
+
+    public ChatServiceImpl() {
+        this(RoomRegistry.fromSystemProperties(), Long.getLong("chat.poll.hint", 0));
+    }
+
+    public ChatServiceImpl(RoomRegistry rooms) {
+        this(rooms, 0);
+    }
+
+    public ChatServiceImpl(RoomRegistry rooms, long pollHintMs) {
+        this(rooms, pollHintMs, 0);
+    }
+
+    // maxBlockingWaits <= 0 for no cap
+    public ChatServiceImpl(RoomRegistry rooms, long pollHintMs, int maxBlockingWaits) {
+        this.rooms = rooms;
+        this.pollHintMs = pollHintMs > 0 ? pollHintMs : null;
+        this.blockingWaits = maxBlockingWaits > 0 ? new Semaphore(maxBlockingWaits) : null;
+    }
 
     @Override
     public void sendMessage(String user, String message) {
-        messages.add(user + ": " + message);
+        sendRoomMessage(RoomRegistry.DEFAULT_ROOM, user, message);
     }
 
     @Override
     public List<String> getMessages() {
-        return new ArrayList<>(messages);
+        return getRoomMessages(RoomRegistry.DEFAULT_ROOM);
+    }
+
+    @Override
+    public MessageBatch getMessagesSince(long lastSeq) {
+        return getRoomMessagesSince(RoomRegistry.DEFAULT_ROOM, lastSeq);
+    }
+
+    @Override
+    public MessageBatch waitForMessages(long sinceSeq, int timeoutMs) {
+        return waitForRoomMessages(RoomRegistry.DEFAULT_ROOM, sinceSeq, timeoutMs);
+    }
+
+    @Override
+    public MessagePage getRecentMessages(int limit) {
+        return getRoomRecentMessages(RoomRegistry.DEFAULT_ROOM, limit);
+    }
+
+    @Override
+    public MessagePage getMessagesBefore(long seq, int limit) {
+        return getRoomMessagesBefore(RoomRegistry.DEFAULT_ROOM, seq, limit);
+    }
+
+    @Override
+    public void sendRoomMessage(String room, String user, String message) {
+        rooms.room(room).post(orEmpty(user), orEmpty(message));
+    }
+
+    @Override
+    public void sendMessages(String room, List<MessageInput> messages) {
+        if (messages == null || messages.isEmpty()) {
+            return;
+        }
+        ChatRoom chatRoom = rooms.room(room);
+        // Checked before anything is journaled
+        int max = chatRoom.getStore().maxBatchSize();
+        if (messages.size() > max) {
+            throw new IllegalArgumentException("Batch of " + messages.size() + " messages exceeds the limit of "
+                    + max + " for room " + chatRoom.getName());
+        }
+        List<MessageInput> inputs = new ArrayList<>(messages.size());
+        for (MessageInput input : messages) {
+            inputs.add(new MessageInput(orEmpty(input.getUser()), orEmpty(input.getMessage())));
+        }
+        chatRoom.postAll(inputs);
+    }
+
+    // An element left out of the request arrives as null
+    private static String orEmpty(String value) {
+        return value == null ? "" : value;
+    }
+
+    @Override
+    public List<String> getRoomMessages(String room) {
+        return format(getRoomChatMessages(room));
+    }
+
+    @Override
+    public MessageBatch getRoomMessagesSince(String room, long lastSeq) {
+        return format(getRoomChatMessagesSince(room, lastSeq));
+    }
+
+    @Override
+    public MessageBatch waitForRoomMessages(String room, long sinceSeq, int timeoutMs) {
+        return format(waitForRoomChatMessages(room, sinceSeq, timeoutMs));
+    }
+
+    @Override
+    public MessagePage getRoomRecentMessages(String room, int limit) {
+        return format(getRoomRecentChatMessages(room, limit));
+    }
+
+    @Override
+    public MessagePage getRoomMessagesBefore(String room, long seq, int limit) {
+        return format(getRoomChatMessagesBefore(room, seq, limit));
+    }
+
+    @Override
+    public List<String> listRooms() {
+        return rooms.names();
+    }
+
+    @Override
+    public List<String> searchMessages(String query, int limit) {
+        return searchRoomMessages(RoomRegistry.DEFAULT_ROOM, query, limit);
+    }
+
+    @Override
+    public List<String> searchRoomMessages(String room, String query, int limit) {
+        return format(searchRoomChatMessages(room, query, limit));
+    }
+
+    @Override
+    public List<ChatMessage> getRoomChatMessages(String room) {
+        ChatRoom chatRoom = rooms.find(room);
+        return chatRoom == null ? new ArrayList<>() : chatRoom.snapshot();
+    }
+
+    @Override
+    public ChatMessageBatch getRoomChatMessagesSince(String room, long lastSeq) {
+        ChatRoom chatRoom = rooms.find(room);
+        return withHint(chatRoom == null ? new ChatMessageBatch(0, new ArrayList<>()) : chatRoom.since(lastSeq));
+    }
+
+    @Override
+    public ChatMessageBatch waitForRoomChatMessages(String room, long sinceSeq, int timeoutMs) {
+        if (blockingWaits != null && !blockingWaits.tryAcquire()) {
+            // Answer at once and have the client come back later rather than
+            // take the last threads sends need
+            ChatMessageBatch batch = getRoomChatMessagesSince(room, sinceSeq);
+            batch.setNextPollMs(Math.max(BUSY_RETRY_MS, pollHintMs == null ? 0 : pollHintMs));
+            return batch;
+        }
+        try {
+            return waitForRoomChatMessages(room, sinceSeq, timeoutMs, ForkJoinPool.commonPool()).join();
+        } finally {
+            if (blockingWaits != null) {
+                blockingWaits.release();
+            }
+        }
+    }
+
+    // The waiting operations without holding a thread, for RawChatHandler: the
+    // result is completed on executor once there are messages or the wait ends
+    public CompletableFuture<ChatMessageBatch> waitForRoomChatMessages(String room, long sinceSeq, int timeoutMs,
+            Executor executor) {
+        // Waiting does not create the room: until a message does, the waiter
+        // waits for that instead
+        long waitMs = Math.max(0, Math.min(timeoutMs, MAX_WAIT_MS));
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(waitMs);
+        return rooms.awaitRoom(room, waitMs, executor).thenCompose(chatRoom -> {
+            if (chatRoom == null) {
+                return CompletableFuture.completedFuture(new ChatMessageBatch(0, new ArrayList<>()));
+            }
+            long remainingMs = Math.max(0, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()));
+            return chatRoom.waitFor(sinceSeq, remainingMs, executor);
+        }).thenApply(this::withHint);
+    }
+
+    public CompletableFuture<MessageBatch> waitForRoomMessages(String room, long sinceSeq, int timeoutMs,
+            Executor executor) {
+        return waitForRoomChatMessages(room, sinceSeq, timeoutMs, executor).thenApply(ChatServiceImpl::format);
+    }
+
+    @Override
+    public ChatMessagePage getRoomRecentChatMessages(String room, int limit) {
+        return getRoomChatMessagesBefore(room, Long.MAX_VALUE, limit);
+    }
+
+    // Oldest first; a limit <= 0 or above MAX_PAGE_SIZE is capped to it
+    @Override
+    public ChatMessagePage getRoomChatMessagesBefore(String room, long seq, int limit) {
+        ChatRoom chatRoom = rooms.find(room);
+        int max = limit <= 0 ? MAX_PAGE_SIZE : Math.min(limit, MAX_PAGE_SIZE);
+        return chatRoom == null ? new ChatMessagePage(1, 0, new ArrayList<>()) : chatRoom.before(seq, max);
+    }
+
+    // Newest matches first; a limit <= 0 or above MAX_SEARCH_RESULTS is capped to it
+    @Override
+    public List<ChatMessage> searchRoomChatMessages(String room, String query, int limit) {
+        ChatRoom chatRoom = rooms.find(room);
+        int max = limit <= 0 ? MAX_SEARCH_RESULTS : Math.min(limit, MAX_SEARCH_RESULTS);
+        return chatRoom == null ? new ArrayList<>() : chatRoom.search(query, max);
+    }
+
+    private ChatMessageBatch withHint(ChatMessageBatch batch) {
+        batch.setNextPollMs(pollHintMs);
+        return batch;
+    }
+
+    // The string operations send each message as "sender: text"
+    private static List<String> format(List<ChatMessage> messages) {
+        List<String> formatted = new ArrayList<>(messages.size());
+        for (ChatMessage message : messages) {
+            formatted.add(message.getSender() + ": " + message.getText());
+        }
+        return formatted;
+    }
+
+    private static MessageBatch format(ChatMessageBatch batch) {
+        MessageBatch formatted = new MessageBatch(batch.getLastSeq(), format(batch.getMessages()));
+        formatted.setNextPollMs(batch.getNextPollMs());
+        return formatted;
+    }
+
+    private static MessagePage format(ChatMessagePage page) {
+        return new MessagePage(page.getFirstSeq(), page.getLastSeq(), format(page.getMessages()));
     }
 }
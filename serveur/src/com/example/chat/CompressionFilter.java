@@ -0,0 +1,259 @@
+package com.example.chat;
+
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpContext;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpPrincipal;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+// Compresses response bodies with gzip or deflate when the request's
+// Accept-Encoding allows it. Bodies are buffered up to the threshold before the
+// status line goes out, so small responses are sent as-is with their exact length.
+public class CompressionFilter extends Filter {
+
+    public static final int DEFAULT_THRESHOLD = 1024;
+
+    private final int threshold;
+    private final int level;
+
+    public CompressionFilter(int threshold, int level) {
+        this.threshold = threshold;
+        this.level = level;
+    }
+
+    @Override
+    public String description() {
+        return "gzip/deflate response compression above " + threshold + " bytes";
+    }
+
+    @Override
+    public void doFilter(HttpExchange exchange, Chain chain) throws IOException {
+        String encoding = negotiate(exchange.getRequestHeaders().getFirst("Accept-Encoding"));
+        if (encoding == null) {
+            chain.doFilter(exchange);
+            return;
+        }
+        CompressingExchange compressing = new CompressingExchange(exchange, encoding);
+        DeferredResponse.reset();
+        try {
+            chain.doFilter(compressing);
+        } finally {
+            DeferredResponse.afterResponse(compressing::close);
+        }
+    }
+
+    // Picks gzip over deflate; a coding listed with q=0 is refused
+    static String negotiate(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return null;
+        }
+        boolean deflate = false;
+        for (String part : acceptEncoding.split(",")) {
+            String[] tokens = part.trim().split(";");
+            String coding = tokens[0].trim().toLowerCase();
+            boolean refused = tokens.length > 1 && tokens[1].trim().replace(" ", "").matches("q=0(\\.0*)?");
+            if (refused) {
+                continue;
+            }
+            if (coding.equals("gzip") || coding.equals("x-gzip")) {
+                return "gzip";
+            }
+            deflate |= coding.equals("deflate");
+        }
+        return deflate ? "deflate" : null;
+    }
+
+    private final class CompressingExchange extends HttpExchange {
+
+        private final HttpExchange delegate;
+        private final String encoding;
+        private int status;
+        private OutputStream body;
+        private boolean closed;
+
+        CompressingExchange(HttpExchange delegate, String encoding) {
+            this.delegate = delegate;
+            this.encoding = encoding;
+        }
+
+        @Override
+        public void sendResponseHeaders(int rCode, long responseLength) throws IOException {
+            delegate.getResponseHeaders().add("Vary", "Accept-Encoding");
+            if (responseLength == -1 || (responseLength > 0 && responseLength < threshold)) {
+                // No body, or a known body too small to be worth compressing
+                delegate.sendResponseHeaders(rCode, responseLength);
+                body = delegate.getResponseBody();
+                return;
+            }
+            status = rCode;
+            body = new ThresholdOutputStream();
+        }
+
+        @Override
+        public OutputStream getResponseBody() {
+            return body != null ? body : delegate.getResponseBody();
+        }
+
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                if (body != null) {
+                    body.close();
+                }
+            } catch (IOException e) {
+                // The client went away; nothing left to deliver
+            } finally {
+                delegate.close();
+            }
+        }
+
+        @Override
+        public Headers getRequestHeaders() {
+            return delegate.getRequestHeaders();
+        }
+
+        @Override
+        public Headers getResponseHeaders() {
+            return delegate.getResponseHeaders();
+        }
+
+        @Override
+        public URI getRequestURI() {
+            return delegate.getRequestURI();
+        }
+
+        @Override
+        public String getRequestMethod() {
+            return delegate.getRequestMethod();
+        }
+
+        @Override
+        public HttpContext getHttpContext() {
+            return delegate.getHttpContext();
+        }
+
+        @Override
+        public InputStream getRequestBody() {
+            return delegate.getRequestBody();
+        }
+
+        @Override
+        public InetSocketAddress getRemoteAddress() {
+            return delegate.getRemoteAddress();
+        }
+
+        @Override
+        public int getResponseCode() {
+            return body instanceof ThresholdOutputStream ? status : delegate.getResponseCode();
+        }
+
+        @Override
+        public InetSocketAddress getLocalAddress() {
+            return delegate.getLocalAddress();
+        }
+
+        @Override
+        public String getProtocol() {
+            return delegate.getProtocol();
+        }
+
+        @Override
+        public Object getAttribute(String name) {
+            return delegate.getAttribute(name);
+        }
+
+        @Override
+        public void setAttribute(String name, Object value) {
+            delegate.setAttribute(name, value);
+        }
+
+        @Override
+        public void setStreams(InputStream i, OutputStream o) {
+            delegate.setStreams(i, o);
+        }
+
+        @Override
+        public HttpPrincipal getPrincipal() {
+            return delegate.getPrincipal();
+        }
+
+        // Holds the body back until it reaches the threshold, then switches to a
+        // compressed chunked response; closing below the threshold sends it raw
+        private final class ThresholdOutputStream extends OutputStream {
+
+            private ByteArrayOutputStream buffer = new ByteArrayOutputStream(threshold);
+            private OutputStream compressed;
+
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[] { (byte) b }, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] bytes, int offset, int length) throws IOException {
+                if (compressed != null) {
+                    compressed.write(bytes, offset, length);
+                    return;
+                }
+                buffer.write(bytes, offset, length);
+                if (buffer.size() >= threshold) {
+                    startCompressing();
+                }
+            }
+
+            @Override
+            public void flush() throws IOException {
+                if (compressed != null) {
+                    compressed.flush();
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+                if (compressed != null) {
+                    compressed.close();
+                    return;
+                }
+                if (buffer == null) {
+                    return;
+                }
+                byte[] bytes = buffer.toByteArray();
+                buffer = null;
+                delegate.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+                try (OutputStream out = delegate.getResponseBody()) {
+                    out.write(bytes);
+                }
+            }
+
+            private void startCompressing() throws IOException {
+                Headers headers = delegate.getResponseHeaders();
+                headers.remove("Content-Length");
+                headers.set("Content-Encoding", encoding);
+                delegate.sendResponseHeaders(status, 0);
+                OutputStream out = delegate.getResponseBody();
+                compressed = encoding.equals("gzip")
+                        ? new GZIPOutputStream(out, 8192) {
+                            {
+                                def.setLevel(level);
+                            }
+                        }
+                        : new DeflaterOutputStream(out, new Deflater(level), 8192);
+                buffer.writeTo(compressed);
+                buffer = null;
+            }
+        }
+    }
+}
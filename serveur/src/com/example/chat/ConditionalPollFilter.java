@@ -0,0 +1,64 @@
+package com.example.chat;
+
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpExchange;
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+// Tags the Since polls' responses (see PollRequest) with an ETag made of
+// the room's last sequence number, and answers a poll that sends the current
+// tag back in If-None-Match with an empty 304 instead of an empty batch. The
+// tag carries an id drawn at startup so that a restarted server, whose
+// sequences start over, never matches an old tag. The poll's own lastSeq must
+// also be the current sequence: a batch read while a send is still being
+// stored can stop short of the tagged version, and the client would otherwise
+// never fetch the missing message.
+public class ConditionalPollFilter extends Filter {
+
+    private final RoomRegistry rooms;
+    private final String instance = Long.toString(ThreadLocalRandom.current().nextLong() >>> 1, 36);
+    private final LongAdder notModified = new LongAdder();
+
+    public ConditionalPollFilter(RoomRegistry rooms) {
+        this.rooms = rooms;
+    }
+
+    @Override
+    public String description() {
+        return "conditional history polls";
+    }
+
+    public long notModified() {
+        return notModified.sum();
+    }
+
+    @Override
+    public void doFilter(HttpExchange exchange, Chain chain) throws IOException {
+        PollRequest poll = PollRequest.of(exchange);
+        ChatRoom room = poll == null || poll.isFullHistory() ? null : find(poll.room);
+        if (room == null) {
+            chain.doFilter(exchange);
+            return;
+        }
+        long version = room.getStore().lastSequence();
+        String tag = "\"" + instance + "-" + version + "\"";
+        exchange.getResponseHeaders().set("ETag", tag);
+        if (poll.lastSeq == version && tag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+            notModified.increment();
+            ChatMetrics.tagOperation(poll.operation);
+            exchange.sendResponseHeaders(304, -1);
+            exchange.close();
+            return;
+        }
+        chain.doFilter(exchange);
+    }
+
+    private ChatRoom find(String name) {
+        try {
+            return rooms.find(name);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
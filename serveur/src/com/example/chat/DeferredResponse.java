@@ -0,0 +1,38 @@
+package com.example.chat;
+
+import java.util.concurrent.CompletableFuture;
+
+// A response the handler sends after handle() has returned, from another
+// thread (parked long polls). Filters run on the thread that runs the handler,
+// so the handler defers on it; a filter with work to do once the response is
+// sent resets before chain.doFilter and hands that work to afterResponse.
+final class DeferredResponse {
+
+    private static final ThreadLocal<CompletableFuture<Void>> CURRENT = new ThreadLocal<>();
+
+    private DeferredResponse() {
+    }
+
+    // Called by the handler before it returns without closing the exchange;
+    // complete the result once the response is sent
+    static CompletableFuture<Void> defer() {
+        CompletableFuture<Void> sent = new CompletableFuture<>();
+        CURRENT.set(sent);
+        return sent;
+    }
+
+    static void reset() {
+        CURRENT.remove();
+    }
+
+    // Runs action now, or once the response deferred on this thread since the
+    // last reset() is sent
+    static void afterResponse(Runnable action) {
+        CompletableFuture<Void> sent = CURRENT.get();
+        if (sent == null) {
+            action.run();
+        } else {
+            sent.whenComplete((ignored, failure) -> action.run());
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package com.example.chat;
+
+public enum FsyncPolicy {
+    // force() after every record before sendMessage returns
+    ALWAYS,
+    // a background thread forces dirty segments every interval
+    GROUP,
+    // never forced explicitly; the OS writes the mapped pages back
+    OS;
+
+    public static FsyncPolicy parse(String value) {
+        return valueOf(value.trim().toUpperCase());
+    }
+}
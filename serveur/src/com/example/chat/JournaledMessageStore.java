@@ -0,0 +1,103 @@
+package com.example.chat;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+
+// Writes every appended message through to a MessageJournal
+public class JournaledMessageStore implements MessageStore {
+
+    private final MessageStore delegate;
+    private final MessageJournal journal;
+
+    public JournaledMessageStore(MessageStore delegate, MessageJournal journal) {
+        this.delegate = delegate;
+        this.journal = journal;
+    }
+
+    @Override
+    public long append(String sender, String text, long timestamp) {
+        long seq = delegate.append(sender, text, timestamp);
+        journal.append(seq, sender, text, timestamp);
+        return seq;
+    }
+
+    @Override
+    public long appendAll(List<MessageInput> messages, long timestamp) {
+        long last = delegate.appendAll(messages, timestamp);
+        journal.appendAll(last - messages.size() + 1, messages, timestamp);
+        return last;
+    }
+
+    @Override
+    public void restore(ChatMessage message) {
+        delegate.restore(message);
+    }
+
+    @Override
+    public void restoreEvicted(long throughSeq) {
+        delegate.restoreEvicted(throughSeq);
+    }
+
+    @Override
+    public long lastSequence() {
+        return delegate.lastSequence();
+    }
+
+    @Override
+    public ChatMessage get(long seq) {
+        return delegate.get(seq);
+    }
+
+    @Override
+    public List<ChatMessage> snapshot() {
+        return delegate.snapshot();
+    }
+
+    @Override
+    public ChatMessageBatch since(long lastSeq) {
+        return delegate.since(lastSeq);
+    }
+
+    @Override
+    public ChatMessagePage before(long seq, int limit) {
+        return delegate.before(seq, limit);
+    }
+
+    @Override
+    public int size() {
+        return delegate.size();
+    }
+
+    @Override
+    public int capacity() {
+        return delegate.capacity();
+    }
+
+    @Override
+    public long retainedBytes() {
+        return delegate.retainedBytes();
+    }
+
+    @Override
+    public List<ChatMessage> evict(RetentionPolicy policy, long nowMillis) {
+        return delegate.evict(policy, nowMillis);
+    }
+
+    @Override
+    public long overwrittenLost() {
+        return delegate.overwrittenLost();
+    }
+
+    // The journal drops whole segments below throughSeq, and no longer replays
+    // the messages it still holds up to there
+    @Override
+    public void discard(long throughSeq) {
+        delegate.discard(throughSeq);
+        try {
+            journal.discard(throughSeq);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not discard journal segments", e);
+        }
+    }
+}
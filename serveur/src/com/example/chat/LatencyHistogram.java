@@ -0,0 +1,93 @@
+package com.example.chat;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// Log-linear latency histogram in microseconds: one bucket per microsecond
+// below 16 us, then 8 buckets per power of two, so a quantile read back is at
+// most 12.5% above the true value. Recording is one atomic increment plus a
+// LongAdder add; no locks, no allocation.
+public class LatencyHistogram {
+
+    private static final int SUB_BITS = 3;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final int LINEAR = 2 * SUB_COUNT;
+    private static final int BUCKETS = LINEAR + (Long.SIZE - SUB_BITS - 2) * SUB_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder sumNanos = new LongAdder();
+
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(index(value / 1000));
+        sumNanos.add(value);
+    }
+
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts.get(i);
+            total += copy[i];
+        }
+        return new Snapshot(copy, total, sumNanos.sum());
+    }
+
+    static int index(long micros) {
+        if (micros < LINEAR) {
+            return (int) micros;
+        }
+        int exp = 63 - Long.numberOfLeadingZeros(micros);
+        int sub = (int) (micros >>> (exp - SUB_BITS)) & (SUB_COUNT - 1);
+        return LINEAR + (exp - SUB_BITS - 1) * SUB_COUNT + sub;
+    }
+
+    // Exclusive upper bound of a bucket, in microseconds
+    static long upperBound(int index) {
+        if (index < LINEAR) {
+            return index + 1;
+        }
+        int k = index - LINEAR;
+        int shift = k / SUB_COUNT + 1;
+        return (long) (SUB_COUNT + k % SUB_COUNT + 1) << shift;
+    }
+
+    // Counts are read bucket by bucket while recording goes on, so a snapshot
+    // taken under load may be off by the requests in flight
+    public static final class Snapshot {
+
+        private final long[] counts;
+        private final long count;
+        private final long sumNanos;
+
+        Snapshot(long[] counts, long count, long sumNanos) {
+            this.counts = counts;
+            this.count = count;
+            this.sumNanos = sumNanos;
+        }
+
+        public long count() {
+            return count;
+        }
+
+        public double sumSeconds() {
+            return sumNanos / 1e9;
+        }
+
+        // Upper bound of the bucket holding the q-th value, in seconds (0 when empty)
+        public double quantileSeconds(double q) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(q * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return upperBound(i) / 1e6;
+                }
+            }
+            return upperBound(counts.length - 1) / 1e6;
+        }
+    }
+}
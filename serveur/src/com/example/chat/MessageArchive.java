@@ -0,0 +1,78 @@
+package com.example.chat;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+// Gzipped text files of evicted messages, one per room and compaction pass:
+// <dir>/<room>/<first seq>-<last seq>.log.gz, one "seq<TAB>time<TAB>sender<TAB>text"
+// line per message with backslashes, tabs and line breaks escaped, so zcat and
+// grep are enough to search it. Files are written under a temporary name and
+// renamed once complete.
+public class MessageArchive {
+
+    private static final String SUFFIX = ".log.gz";
+
+    private final Path directory;
+
+    public MessageArchive(Path directory) {
+        this.directory = directory;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public Path write(String room, List<ChatMessage> messages) throws IOException {
+        Path roomDir = directory.resolve(room);
+        Files.createDirectories(roomDir);
+        String name = String.format("%012d-%012d", messages.get(0).getSeq(), messages.get(messages.size() - 1).getSeq());
+        Path file = roomDir.resolve(name + SUFFIX);
+        Path partial = roomDir.resolve(name + SUFFIX + ".tmp");
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(
+                new GZIPOutputStream(Files.newOutputStream(partial), 8192), StandardCharsets.UTF_8))) {
+            for (ChatMessage message : messages) {
+                out.write(Long.toString(message.getSeq()));
+                out.write('\t');
+                out.write(Instant.ofEpochMilli(message.getTimestamp()).toString());
+                out.write('\t');
+                escape(message.getSender(), out);
+                out.write('\t');
+                escape(message.getText(), out);
+                out.write('\n');
+            }
+        }
+        Files.move(partial, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return file;
+    }
+
+    private static void escape(String text, Writer out) throws IOException {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '\\':
+                    out.write("\\\\");
+                    break;
+                case '\t':
+                    out.write("\\t");
+                    break;
+                case '\n':
+                    out.write("\\n");
+                    break;
+                case '\r':
+                    out.write("\\r");
+                    break;
+                default:
+                    out.write(c);
+            }
+        }
+    }
+}
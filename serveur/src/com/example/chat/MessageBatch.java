@@ -0,0 +1,44 @@
+package com.example.chat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class MessageBatch {
+
+    private long lastSeq;
+    private List<String> messages = new ArrayList<>();
+    // Optional hint: the client should not poll again before this many ms
+    private Long nextPollMs;
+
+    public MessageBatch() {
+    }
+
+    public MessageBatch(long lastSeq, List<String> messages) {
+        this.lastSeq = lastSeq;
+        this.messages = messages;
+    }
+
+    public long getLastSeq() {
+        return lastSeq;
+    }
+
+    public void setLastSeq(long lastSeq) {
+        this.lastSeq = lastSeq;
+    }
+
+    public List<String> getMessages() {
+        return messages;
+    }
+
+    public void setMessages(List<String> messages) {
+        this.messages = messages;
+    }
+
+    public Long getNextPollMs() {
+        return nextPollMs;
+    }
+
+    public void setNextPollMs(Long nextPollMs) {
+        this.nextPollMs = nextPollMs;
+    }
+}
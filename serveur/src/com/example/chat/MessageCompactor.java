@@ -0,0 +1,101 @@
+package com.example.chat;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Applies the retention policy to every room from one background thread, and
+// hands what it evicts, along with what the rings overwrote (see
+// RoomRegistry), to the archive when there is one. Then lets the journals drop
+// what memory no longer holds. A failed archive write is logged and the pass
+// goes on: the messages are already out of memory, and holding them back would
+// defeat the limits, but the journal is left as it is until a pass archives.
+public class MessageCompactor {
+
+    private final RoomRegistry rooms;
+    private final RetentionPolicy policy;
+    private final MessageArchive archive;
+    private final ScheduledExecutorService scheduler;
+    private final LongAdder evicted = new LongAdder();
+    private final LongAdder archived = new LongAdder();
+    private long reportedLost;
+
+    public MessageCompactor(RoomRegistry rooms, RetentionPolicy policy, MessageArchive archiveOrNull) {
+        this.rooms = rooms;
+        this.policy = policy;
+        this.archive = archiveOrNull;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "chat-compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public void start(long intervalMs) {
+        scheduler.scheduleWithFixedDelay(this::compactSafely, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    public long evicted() {
+        return evicted.sum();
+    }
+
+    public long archived() {
+        return archived.sum();
+    }
+
+    // One pass over all rooms; returns the number of messages evicted
+    public long compact() {
+        long total = 0;
+        long now = System.currentTimeMillis();
+        long lost = 0;
+        for (ChatRoom room : rooms.rooms()) {
+            MessageStore store = room.getStore();
+            // Out of memory before this pass; anything overwritten up to there
+            // and not yet handed over is still queued in the store
+            long floor = store.lastSequence() - store.size();
+            List<ChatMessage> dropped = store.evict(policy, now);
+            lost += store.overwrittenLost();
+            boolean kept = true;
+            if (!dropped.isEmpty()) {
+                total += dropped.size();
+                evicted.add(dropped.size());
+                if (archive != null) {
+                    try {
+                        archive.write(room.getName(), dropped);
+                        archived.add(dropped.size());
+                    } catch (IOException e) {
+                        kept = false;
+                        System.err.println("Could not archive " + dropped.size() + " messages of room "
+                                + room.getName() + " to " + archive.getDirectory() + ": " + e);
+                    }
+                }
+            }
+            if (kept) {
+                try {
+                    store.discard(floor);
+                } catch (UncheckedIOException e) {
+                    System.err.println("Could not compact the journal of room " + room.getName() + ": " + e);
+                }
+            }
+        }
+        if (lost > reportedLost) {
+            System.err.println((lost - reportedLost) + " overwritten messages could not be archived: the compactor"
+                    + " runs too rarely for the traffic");
+            reportedLost = lost;
+        }
+        return total;
+    }
+
+    private void compactSafely() {
+        try {
+            compact();
+        } catch (RuntimeException e) {
+            // An exception would cancel the schedule
+            System.err.println("Compaction failed: " + e);
+        }
+    }
+}
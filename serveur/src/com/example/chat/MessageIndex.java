@@ -0,0 +1,423 @@
+package com.example.chat;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.regex.Pattern;
+
+// Inverted index of one room: every term maps to the ascending sequence numbers
+// of the messages containing it. Postings are split into blocks of BLOCK_SIZE
+// whose first number is kept aside and the rest stored as variable-length
+// deltas, so a common term costs about a byte per message and a query can jump
+// to the block holding a given number. Queries walk the postings from the
+// newest message back and stop once they have enough results, without reading
+// the store except to fetch those results. The index reads the store itself
+// when it is searched, so sending a message costs nothing here.
+//
+// Terms are runs of letters and digits, lower-cased and stripped of accents,
+// taken from the sender's name and the text. A query is a list of terms that
+// must all appear; a term ending with '*' matches every term it prefixes.
+public class MessageIndex {
+
+    // Prefix queries ignore terms beyond this many, in alphabetical order
+    static final int MAX_PREFIX_TERMS = 1024;
+    static final int MAX_TERM_LENGTH = 64;
+
+    private static final int BLOCK_SIZE = 128;
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+
+    private final Map<String, Postings> terms = new ConcurrentHashMap<>();
+    // The same terms in order, for prefix queries; only touched when a term
+    // first appears or disappears
+    private final NavigableSet<String> dictionary = new ConcurrentSkipListSet<>();
+
+    // Only one thread at a time reads new messages from the store and applies
+    // them, so postings stay sorted; senders never wait for it
+    private final Object lock = new Object();
+    private volatile long indexedThrough;
+    private long prunedThrough;
+
+    // Indexes what the store published since the last call, in one contiguous
+    // run: a message not published yet stops it until the next call, and
+    // messages the ring overwrote in the meantime are skipped. Once a
+    // capacity's worth of history has left the store, drops its postings.
+    public void catchUp(MessageStore store) {
+        if (store.lastSequence() <= indexedThrough) {
+            return;
+        }
+        synchronized (lock) {
+            ChatMessageBatch batch = store.since(indexedThrough);
+            for (ChatMessage message : batch.getMessages()) {
+                apply(message.getSeq(), terms(message.getSender(), message.getText()));
+            }
+            indexedThrough = Math.max(indexedThrough, batch.getLastSeq());
+            long floor = store.lastSequence() - store.size();
+            if (floor - prunedThrough >= store.capacity()) {
+                prune(floor);
+                prunedThrough = floor;
+            }
+        }
+    }
+
+    // Drops postings blocks that only refer to messages up to floor, and terms
+    // left with none. Results are resolved through the store anyway, so this
+    // only reclaims memory. Called by catchUp() so that no term gets a posting
+    // while it is being removed.
+    private void prune(long floor) {
+        terms.entrySet().removeIf(entry -> {
+            boolean empty = entry.getValue().prune(floor);
+            if (empty) {
+                dictionary.remove(entry.getKey());
+            }
+            return empty;
+        });
+    }
+
+    // Distinct terms with postings left
+    int termCount() {
+        return terms.size();
+    }
+
+    // Newest matching messages first, at most limit of them
+    public List<ChatMessage> search(String query, int limit, MessageStore store) {
+        catchUp(store);
+        List<Cursor> cursors = new ArrayList<>();
+        for (String[] word : queryTerms(query)) {
+            Cursor cursor = word[1] == null ? exact(word[0]) : prefix(word[0]);
+            if (cursor == null) {
+                return new ArrayList<>();
+            }
+            cursors.add(cursor);
+        }
+        List<ChatMessage> results = new ArrayList<>();
+        if (cursors.isEmpty() || limit <= 0) {
+            return results;
+        }
+        // Leading with the rarest term makes the others mostly seek
+        cursors.sort(Comparator.comparingLong(Cursor::size));
+        Cursor[] all = cursors.toArray(new Cursor[0]);
+        long target = Long.MAX_VALUE;
+        while (results.size() < limit) {
+            long seq = nextMatch(all, target);
+            if (seq < 0) {
+                break;
+            }
+            // Evicted or overwritten since it was indexed: not part of the history any more
+            ChatMessage message = store.get(seq);
+            if (message != null) {
+                results.add(message);
+            }
+            target = seq - 1;
+        }
+        return results;
+    }
+
+    private void apply(long seq, String[] words) {
+        for (String word : words) {
+            Postings postings = terms.get(word);
+            if (postings == null) {
+                postings = new Postings();
+                terms.put(word, postings);
+                dictionary.add(word);
+            }
+            postings.add(seq);
+        }
+    }
+
+    private Cursor exact(String word) {
+        Postings postings = terms.get(word);
+        return postings == null ? null : postings.cursor();
+    }
+
+    private Cursor prefix(String word) {
+        List<Cursor> matches = new ArrayList<>();
+        for (String term : dictionary.subSet(word, true, word + Character.MAX_VALUE, false)) {
+            Postings postings = terms.get(term);
+            if (postings != null) {
+                matches.add(postings.cursor());
+            }
+            if (matches.size() == MAX_PREFIX_TERMS) {
+                break;
+            }
+        }
+        if (matches.isEmpty()) {
+            return null;
+        }
+        return matches.size() == 1 ? matches.get(0) : new UnionCursor(matches);
+    }
+
+    // Largest sequence number <= target present in every cursor, or -1
+    private static long nextMatch(Cursor[] cursors, long target) {
+        int agreed = 0;
+        for (int i = 0; agreed < cursors.length; i = (i + 1) % cursors.length) {
+            Cursor cursor = cursors[i];
+            cursor.seek(target);
+            long seq = cursor.current();
+            if (seq < 0) {
+                return -1;
+            }
+            if (seq == target) {
+                agreed++;
+            } else {
+                target = seq;
+                agreed = 1;
+            }
+        }
+        return target;
+    }
+
+    // Distinct terms of a message
+    static String[] terms(String sender, String text) {
+        Set<String> words = new LinkedHashSet<>();
+        scan(sender, (word, prefix) -> words.add(word));
+        scan(text, (word, prefix) -> words.add(word));
+        return words.toArray(new String[0]);
+    }
+
+    // Terms of a query as {term, null} or {prefix, "*"}
+    static List<String[]> queryTerms(String query) {
+        if (query == null) {
+            return Collections.emptyList();
+        }
+        List<String[]> words = new ArrayList<>();
+        scan(query, (word, prefix) -> words.add(new String[] {word, prefix ? "*" : null}));
+        return words;
+    }
+
+    private static void scan(String text, TermSink sink) {
+        int length = text.length();
+        int i = 0;
+        while (i < length) {
+            int start = i;
+            boolean ascii = true;
+            while (i < length) {
+                int c = text.codePointAt(i);
+                if (!Character.isLetterOrDigit(c) && Character.getType(c) != Character.NON_SPACING_MARK) {
+                    break;
+                }
+                ascii &= c < 0x80;
+                i += Character.charCount(c);
+            }
+            if (i > start) {
+                String word = text.substring(start, i).toLowerCase(Locale.ROOT);
+                if (!ascii) {
+                    word = MARKS.matcher(Normalizer.normalize(word, Normalizer.Form.NFD)).replaceAll("");
+                }
+                if (!word.isEmpty() && word.length() <= MAX_TERM_LENGTH) {
+                    sink.term(word, i < length && text.charAt(i) == '*');
+                }
+            } else {
+                i += Character.charCount(text.codePointAt(i));
+            }
+        }
+    }
+
+    private interface TermSink {
+        void term(String word, boolean prefix);
+    }
+
+    // Walks sequence numbers from the newest down; current() is -1 once exhausted
+    private interface Cursor {
+        long current();
+
+        // Moves to the largest number <= target; never moves forward
+        void seek(long target);
+
+        long size();
+    }
+
+    // Appended under the index lock; cursors read a snapshot of the arrays,
+    // which are only ever written past the snapshot's length or replaced
+    private static final class Postings {
+        private byte[] deltas = new byte[4];
+        private int length;
+        private long[] blockFirst = new long[1];
+        private int[] blockOffset = new int[1];
+        private int blocks;
+        private int inLastBlock;
+        private long last;
+        private long size;
+
+        synchronized void add(long seq) {
+            if (blocks == 0 || inLastBlock == BLOCK_SIZE) {
+                if (blocks == blockFirst.length) {
+                    blockFirst = Arrays.copyOf(blockFirst, blocks * 2);
+                    blockOffset = Arrays.copyOf(blockOffset, blocks * 2);
+                }
+                blockFirst[blocks] = seq;
+                blockOffset[blocks] = length;
+                blocks++;
+                inLastBlock = 1;
+            } else {
+                writeVarLong(seq - last);
+                inLastBlock++;
+            }
+            last = seq;
+            size++;
+        }
+
+        // True when nothing is left
+        synchronized boolean prune(long floor) {
+            if (last <= floor) {
+                return true;
+            }
+            int drop = 0;
+            while (drop + 1 < blocks && blockFirst[drop + 1] <= floor + 1) {
+                drop++;
+            }
+            if (drop > 0) {
+                int from = blockOffset[drop];
+                deltas = Arrays.copyOfRange(deltas, from, Math.max(from + 4, length));
+                length -= from;
+                blocks -= drop;
+                blockFirst = Arrays.copyOfRange(blockFirst, drop, drop + blocks);
+                blockOffset = Arrays.copyOfRange(blockOffset, drop, drop + blocks);
+                for (int b = 0; b < blocks; b++) {
+                    blockOffset[b] -= from;
+                }
+                size -= (long) drop * BLOCK_SIZE;
+            }
+            return false;
+        }
+
+        synchronized Cursor cursor() {
+            return new PostingsCursor(deltas, length, blockFirst, blockOffset, blocks, size);
+        }
+
+        private void writeVarLong(long value) {
+            if (length + 10 > deltas.length) {
+                deltas = Arrays.copyOf(deltas, Math.max(deltas.length * 2, length + 10));
+            }
+            while ((value & ~0x7FL) != 0) {
+                deltas[length++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            deltas[length++] = (byte) value;
+        }
+    }
+
+    private static final class PostingsCursor implements Cursor {
+        private final byte[] deltas;
+        private final int length;
+        private final long[] blockFirst;
+        private final int[] blockOffset;
+        private final int blocks;
+        private final long size;
+        private final long[] decoded = new long[BLOCK_SIZE];
+        private int block;
+        private int count;
+        private int position;
+
+        PostingsCursor(byte[] deltas, int length, long[] blockFirst, int[] blockOffset, int blocks, long size) {
+            this.deltas = deltas;
+            this.length = length;
+            this.blockFirst = blockFirst;
+            this.blockOffset = blockOffset;
+            this.blocks = blocks;
+            this.size = size;
+            load(blocks - 1);
+        }
+
+        @Override
+        public long current() {
+            return block < 0 ? -1 : decoded[position];
+        }
+
+        @Override
+        public void seek(long target) {
+            if (block < 0 || decoded[position] <= target) {
+                return;
+            }
+            if (target < blockFirst[block]) {
+                // Last block starting at or before target, or none
+                int found = Arrays.binarySearch(blockFirst, 0, block, target);
+                load(found >= 0 ? found : -found - 2);
+                if (block < 0) {
+                    return;
+                }
+            }
+            while (decoded[position] > target) {
+                position--;
+            }
+        }
+
+        @Override
+        public long size() {
+            return size;
+        }
+
+        private void load(int index) {
+            block = index;
+            if (index < 0) {
+                return;
+            }
+            int end = index + 1 < blocks ? blockOffset[index + 1] : length;
+            long seq = blockFirst[index];
+            decoded[0] = seq;
+            count = 1;
+            int pos = blockOffset[index];
+            while (pos < end) {
+                long delta = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = deltas[pos++];
+                    delta |= (long) (b & 0x7F) << shift;
+                    shift += 7;
+                } while (b < 0);
+                seq += delta;
+                decoded[count++] = seq;
+            }
+            position = count - 1;
+        }
+    }
+
+    // Prefix match: the union of the matching terms' cursors, duplicates merged
+    private static final class UnionCursor implements Cursor {
+        private final PriorityQueue<Cursor> queue =
+                new PriorityQueue<>(Comparator.comparingLong(Cursor::current).reversed());
+        private final long size;
+
+        UnionCursor(List<Cursor> cursors) {
+            long total = 0;
+            for (Cursor cursor : cursors) {
+                total += cursor.size();
+                queue.add(cursor);
+            }
+            size = total;
+        }
+
+        @Override
+        public long current() {
+            Cursor top = queue.peek();
+            return top == null ? -1 : top.current();
+        }
+
+        @Override
+        public void seek(long target) {
+            while (!queue.isEmpty() && queue.peek().current() > target) {
+                Cursor top = queue.poll();
+                top.seek(target);
+                if (top.current() >= 0) {
+                    queue.add(top);
+                }
+            }
+        }
+
+        @Override
+        public long size() {
+            return size;
+        }
+    }
+}
@@ -0,0 +1,392 @@
+package com.example.chat;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32C;
+
+// Append-only journal split into fixed-size memory-mapped segment files.
+// Record layout: [int length][int crc32c(seq + payload)][long seq][payload],
+// the payload being [byte 0][long timestamp][int sender length][sender][text]
+// with both strings in UTF-8. The length is written last, so a record torn by
+// a crash reads as length 0 or fails its checksum, and recovery stops there.
+// Journals written before messages had a sender and a timestamp hold the text
+// "sender: text" as the whole payload (never starting with a 0 byte, which XML
+// cannot carry); those messages are split on recovery and dated from startup.
+// discard() records in a small file the sequence number up to which messages
+// are no longer wanted, so they are not replayed, and deletes the segments
+// that hold nothing above it.
+public class MessageJournal implements Closeable {
+
+    public static final long DEFAULT_SEGMENT_SIZE = 64L * 1024 * 1024;
+
+    private static final int HEADER_SIZE = 16;
+    private static final byte FORMAT = 0;
+    // Format byte, timestamp and sender length
+    private static final int PAYLOAD_HEADER_SIZE = 13;
+    private static final String LEGACY_SEPARATOR = ": ";
+    private static final String SUFFIX = ".journal";
+    private static final String DISCARDED_FILE = "discarded.seq";
+
+    private final Path directory;
+    private final int segmentSize;
+    private final FsyncPolicy fsyncPolicy;
+    private final ScheduledExecutorService committer;
+
+    private MappedByteBuffer segment;
+    private int segmentIndex;
+    private int position;
+    private boolean dirty;
+    // Highest sequence number written to the current segment
+    private long segmentMaxSeq;
+    // Full segments (file and highest sequence number only), oldest first,
+    // until discard() deletes them
+    private final Deque<Segment> closedSegments = new ArrayDeque<>();
+    private long discardedThrough;
+
+    public MessageJournal(Path directory, long segmentSize, FsyncPolicy fsyncPolicy, long groupCommitMs)
+            throws IOException {
+        if (segmentSize <= HEADER_SIZE || segmentSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid segment size: " + segmentSize);
+        }
+        this.directory = directory;
+        this.segmentSize = (int) segmentSize;
+        this.fsyncPolicy = fsyncPolicy;
+        Files.createDirectories(directory);
+
+        if (fsyncPolicy == FsyncPolicy.GROUP) {
+            committer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "chat-journal-commit");
+                thread.setDaemon(true);
+                return thread;
+            });
+            committer.scheduleWithFixedDelay(this::commit, groupCommitMs, groupCommitMs, TimeUnit.MILLISECONDS);
+        } else {
+            committer = null;
+        }
+    }
+
+    // Replays the journal into the store and positions the writer after the last
+    // valid record. Every record's checksum is verified, but only the newest
+    // store.capacity() messages are decoded since older ones would be overwritten.
+    // Once discard() has recorded a floor, everything above it is replayed
+    // instead, so that a store keeping overwritten messages hands the ones never
+    // archived to the compactor again.
+    public synchronized long recover(MessageStore store) throws IOException {
+        List<Path> files = segmentFiles();
+        List<Segment> segments = new ArrayList<>(files.size());
+        long maxSeq = 0;
+        for (Path file : files) {
+            Segment scanned = scan(file);
+            segments.add(scanned);
+            maxSeq = Math.max(maxSeq, scanned.maxSeq);
+        }
+
+        discardedThrough = readDiscarded();
+        if (discardedThrough > 0) {
+            store.restoreEvicted(discardedThrough);
+        }
+        long threshold = discardedThrough > 0 ? discardedThrough : maxSeq - store.capacity();
+        long restored = 0;
+        long now = System.currentTimeMillis();
+        for (Segment scanned : segments) {
+            if (scanned.maxSeq <= threshold) {
+                continue;
+            }
+            ByteBuffer buffer = scanned.buffer;
+            int pos = 0;
+            while (pos < scanned.validLimit) {
+                int length = buffer.getInt(pos);
+                long seq = buffer.getLong(pos + 8);
+                if (seq > threshold) {
+                    store.restore(decode(buffer, pos + HEADER_SIZE, length, seq, now));
+                    restored++;
+                }
+                pos += HEADER_SIZE + length;
+            }
+        }
+
+        if (segments.isEmpty()) {
+            openSegment(0);
+        } else {
+            Segment last = segments.get(segments.size() - 1);
+            for (Segment scanned : segments.subList(0, segments.size() - 1)) {
+                closedSegments.add(new Segment(scanned.file, null, 0, scanned.maxSeq));
+            }
+            segmentIndex = indexOf(last.file);
+            segment = map(last.file, FileChannel.MapMode.READ_WRITE);
+            position = last.validLimit;
+            segmentMaxSeq = last.maxSeq;
+            // Wipe whatever a torn write left behind the last valid record
+            if (!isZero(segment, position)) {
+                segment.put(position, new byte[segmentSize - position]);
+                segment.force();
+            }
+        }
+        return restored;
+    }
+
+    public synchronized void append(long seq, String sender, String text, long timestamp) {
+        int start = write(seq, sender, text, timestamp);
+        if (fsyncPolicy == FsyncPolicy.ALWAYS) {
+            segment.force(start, position - start);
+        } else {
+            dirty = true;
+        }
+    }
+
+    // Writes consecutive records starting at firstSeq, forced once for the whole batch
+    public synchronized void appendAll(long firstSeq, List<MessageInput> messages, long timestamp) {
+        int start = position;
+        MappedByteBuffer first = segment;
+        for (int i = 0; i < messages.size(); i++) {
+            MessageInput input = messages.get(i);
+            int recordStart = write(firstSeq + i, input.getUser(), input.getMessage(), timestamp);
+            if (segment != first) {
+                first = segment;
+                start = recordStart;
+            }
+        }
+        if (fsyncPolicy == FsyncPolicy.ALWAYS) {
+            segment.force(start, position - start);
+        } else {
+            dirty = true;
+        }
+    }
+
+    // Stops replaying messages up to throughSeq and deletes the segments that
+    // hold nothing newer. The current segment is kept whatever it holds.
+    public void discard(long throughSeq) throws IOException {
+        List<Path> deletable = new ArrayList<>();
+        synchronized (this) {
+            if (throughSeq <= discardedThrough) {
+                return;
+            }
+            discardedThrough = throughSeq;
+            while (!closedSegments.isEmpty() && closedSegments.peekFirst().maxSeq <= throughSeq) {
+                deletable.add(closedSegments.pollFirst().file);
+            }
+        }
+        // The floor first: a crash in between must not replay what precedes it
+        Path partial = directory.resolve(DISCARDED_FILE + ".tmp");
+        Files.write(partial, Long.toString(throughSeq).getBytes(StandardCharsets.US_ASCII));
+        Files.move(partial, directory.resolve(DISCARDED_FILE), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        for (Path file : deletable) {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private long readDiscarded() throws IOException {
+        Path file = directory.resolve(DISCARDED_FILE);
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(new String(Files.readAllBytes(file), StandardCharsets.US_ASCII).trim());
+        } catch (NumberFormatException e) {
+            System.err.println("Journal " + file + " is unreadable, replaying every message");
+            return 0;
+        }
+    }
+
+    // Writes one record and returns its offset in the current segment
+    private int write(long seq, String sender, String text, long timestamp) {
+        byte[] senderBytes = sender.getBytes(StandardCharsets.UTF_8);
+        byte[] textBytes = text.getBytes(StandardCharsets.UTF_8);
+        long payloadLength = (long) PAYLOAD_HEADER_SIZE + senderBytes.length + textBytes.length;
+        if (HEADER_SIZE + payloadLength > segmentSize) {
+            throw new IllegalArgumentException("Message too large for a journal segment: " + payloadLength);
+        }
+        int recordSize = HEADER_SIZE + (int) payloadLength;
+        try {
+            if (segment == null || position + recordSize > segmentSize) {
+                roll();
+            }
+            int start = position;
+            int payload = start + HEADER_SIZE;
+            segment.putLong(start + 8, seq);
+            segment.put(payload, FORMAT);
+            segment.putLong(payload + 1, timestamp);
+            segment.putInt(payload + 9, senderBytes.length);
+            segment.put(payload + PAYLOAD_HEADER_SIZE, senderBytes);
+            segment.put(payload + PAYLOAD_HEADER_SIZE + senderBytes.length, textBytes);
+            CRC32C crc = new CRC32C();
+            crc.update(segment.slice(start + 8, 8 + (int) payloadLength));
+            segment.putInt(start + 4, (int) crc.getValue());
+            segment.putInt(start, (int) payloadLength);
+            position += recordSize;
+            segmentMaxSeq = Math.max(segmentMaxSeq, seq);
+            return start;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write to the message journal in " + directory, e);
+        }
+    }
+
+    private void commit() {
+        MappedByteBuffer toForce;
+        synchronized (this) {
+            if (!dirty) {
+                return;
+            }
+            dirty = false;
+            toForce = segment;
+        }
+        toForce.force();
+    }
+
+    @Override
+    public void close() {
+        if (committer != null) {
+            committer.shutdown();
+        }
+        synchronized (this) {
+            if (segment != null && fsyncPolicy != FsyncPolicy.OS) {
+                segment.force();
+            }
+        }
+    }
+
+    private void roll() throws IOException {
+        if (segment != null) {
+            segment.force();
+            dirty = false;
+            closedSegments.add(new Segment(segmentFile(segmentIndex), null, 0, segmentMaxSeq));
+            openSegment(segmentIndex + 1);
+        } else {
+            openSegment(0);
+        }
+    }
+
+    private void openSegment(int index) throws IOException {
+        Path file = segmentFile(index);
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.setLength(segmentSize);
+        }
+        segment = map(file, FileChannel.MapMode.READ_WRITE);
+        segmentIndex = index;
+        position = 0;
+        segmentMaxSeq = 0;
+    }
+
+    private Path segmentFile(int index) {
+        return directory.resolve(String.format("%08d%s", index, SUFFIX));
+    }
+
+    private Segment scan(Path file) throws IOException {
+        MappedByteBuffer buffer = map(file, FileChannel.MapMode.READ_ONLY);
+        int limit = buffer.capacity();
+        CRC32C crc = new CRC32C();
+        long maxSeq = 0;
+        int pos = 0;
+        while (pos + HEADER_SIZE <= limit) {
+            int length = buffer.getInt(pos);
+            if (length <= 0 || length > limit - pos - HEADER_SIZE) {
+                break;
+            }
+            crc.reset();
+            crc.update(buffer.slice(pos + 8, 8 + length));
+            if ((int) crc.getValue() != buffer.getInt(pos + 4)) {
+                System.err.println("Journal " + file + ": checksum mismatch at offset " + pos
+                        + ", ignoring the rest of the segment");
+                break;
+            }
+            maxSeq = Math.max(maxSeq, buffer.getLong(pos + 8));
+            pos += HEADER_SIZE + length;
+        }
+        return new Segment(file, buffer, pos, maxSeq);
+    }
+
+    private MappedByteBuffer map(Path file, FileChannel.MapMode mode) throws IOException {
+        try (FileChannel channel = mode == FileChannel.MapMode.READ_ONLY
+                ? FileChannel.open(file)
+                : FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(mode, 0, mode == FileChannel.MapMode.READ_ONLY ? channel.size() : segmentSize);
+        }
+    }
+
+    private List<Path> segmentFiles() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            for (Path file : stream) {
+                files.add(file);
+            }
+        }
+        files.sort(null);
+        return files;
+    }
+
+    private static ChatMessage decode(ByteBuffer buffer, int payload, int length, long seq, long now) {
+        if (length >= PAYLOAD_HEADER_SIZE && buffer.get(payload) == FORMAT) {
+            long timestamp = buffer.getLong(payload + 1);
+            int senderLength = buffer.getInt(payload + 9);
+            String sender = utf8(buffer, payload + PAYLOAD_HEADER_SIZE, senderLength);
+            String text = utf8(buffer, payload + PAYLOAD_HEADER_SIZE + senderLength,
+                    length - PAYLOAD_HEADER_SIZE - senderLength);
+            return new ChatMessage(seq, sender, timestamp, text);
+        }
+        String legacy = utf8(buffer, payload, length);
+        int separator = legacy.indexOf(LEGACY_SEPARATOR);
+        return separator < 0
+                ? new ChatMessage(seq, "", now, legacy)
+                : new ChatMessage(seq, legacy.substring(0, separator), now,
+                        legacy.substring(separator + LEGACY_SEPARATOR.length()));
+    }
+
+    private static String utf8(ByteBuffer buffer, int from, int length) {
+        byte[] bytes = new byte[length];
+        buffer.get(from, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static boolean isZero(ByteBuffer buffer, int from) {
+        int pos = from;
+        for (; pos + 8 <= buffer.capacity(); pos += 8) {
+            if (buffer.getLong(pos) != 0) {
+                return false;
+            }
+        }
+        for (; pos < buffer.capacity(); pos++) {
+            if (buffer.get(pos) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int indexOf(Path file) {
+        String name = file.getFileName().toString();
+        return Integer.parseInt(name.substring(0, name.length() - SUFFIX.length()));
+    }
+
+    private static final class Segment {
+        final Path file;
+        final ByteBuffer buffer;
+        final int validLimit;
+        final long maxSeq;
+
+        Segment(Path file, ByteBuffer buffer, int validLimit, long maxSeq) {
+            this.file = file;
+            this.buffer = buffer;
+            this.validLimit = validLimit;
+            this.maxSeq = maxSeq;
+        }
+    }
+}
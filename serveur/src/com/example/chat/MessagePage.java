@@ -0,0 +1,46 @@
+package com.example.chat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// A contiguous slice of a room's history: the messages numbered firstSeq to
+// lastSeq, oldest first. An empty page has firstSeq = lastSeq + 1.
+public class MessagePage {
+
+    private long firstSeq;
+    private long lastSeq;
+    private List<String> messages = new ArrayList<>();
+
+    public MessagePage() {
+    }
+
+    public MessagePage(long firstSeq, long lastSeq, List<String> messages) {
+        this.firstSeq = firstSeq;
+        this.lastSeq = lastSeq;
+        this.messages = messages;
+    }
+
+    public long getFirstSeq() {
+        return firstSeq;
+    }
+
+    public void setFirstSeq(long firstSeq) {
+        this.firstSeq = firstSeq;
+    }
+
+    public long getLastSeq() {
+        return lastSeq;
+    }
+
+    public void setLastSeq(long lastSeq) {
+        this.lastSeq = lastSeq;
+    }
+
+    public List<String> getMessages() {
+        return messages;
+    }
+
+    public void setMessages(List<String> messages) {
+        this.messages = messages;
+    }
+}
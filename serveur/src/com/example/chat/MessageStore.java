@@ -0,0 +1,66 @@
+package com.example.chat;
+
+import java.util.List;
+
+public interface MessageStore {
+
+    // Appends a message received at timestamp (ms since the epoch) and returns
+    // the sequence number assigned to it. Neither sender nor text may be null.
+    long append(String sender, String text, long timestamp);
+
+    // Appends all messages under consecutive sequence numbers, visible to readers
+    // all at once; returns the sequence number of the last one. Batches larger
+    // than maxBatchSize() are rejected with an IllegalArgumentException.
+    long appendAll(List<MessageInput> messages, long timestamp);
+
+    // Puts back a message with a known sequence number, e.g. while replaying a
+    // journal at startup; records may arrive out of order
+    void restore(ChatMessage message);
+
+    // Marks every sequence number up to throughSeq as used and evicted, for the
+    // messages a journal no longer replays; called before restoring newer ones
+    void restoreEvicted(long throughSeq);
+
+    long lastSequence();
+
+    // The message stored under seq, or null if it is not held (any more)
+    ChatMessage get(long seq);
+
+    List<ChatMessage> snapshot();
+
+    ChatMessageBatch since(long lastSeq);
+
+    // Up to limit (>= 1) of the newest messages numbered below seq; pass
+    // Long.MAX_VALUE for the latest ones
+    ChatMessagePage before(long seq, int limit);
+
+    // Messages held in memory; evicted ones no longer count
+    int size();
+
+    int capacity();
+
+    // Well below the capacity, so that a batch never laps over its own slots,
+    // or over those of appends racing with it
+    default int maxBatchSize() {
+        return Math.max(1, capacity() / 2);
+    }
+
+    // Estimated heap taken by the messages held, see RetentionPolicy
+    long retainedBytes();
+
+    // Drops messages from the oldest end for as long as the policy asks for it,
+    // without blocking appends or readers, and returns them oldest first, after
+    // the messages overwritten by appends since the previous call if the store
+    // keeps those. Meant to be called from a single compactor thread.
+    List<ChatMessage> evict(RetentionPolicy policy, long nowMillis);
+
+    // Overwritten messages that could not be kept for evict(), since startup
+    default long overwrittenLost() {
+        return 0;
+    }
+
+    // Lets durable layers forget messages up to throughSeq, which are no longer
+    // held in memory and have been archived if there is an archive
+    default void discard(long throughSeq) {
+    }
+}
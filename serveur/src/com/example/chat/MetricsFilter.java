@@ -0,0 +1,60 @@
+package com.example.chat;
+
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpExchange;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+// Outermost filter of the service context: times each exchange and counts the
+// body bytes that reach the connection, i.e. after compression
+public class MetricsFilter extends Filter {
+
+    private final ChatMetrics metrics;
+
+    public MetricsFilter(ChatMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public String description() {
+        return "request metrics";
+    }
+
+    @Override
+    public void doFilter(HttpExchange exchange, Chain chain) throws IOException {
+        long start = System.nanoTime();
+        metrics.requestStarted();
+        CountingOutputStream body = new CountingOutputStream(exchange.getResponseBody());
+        exchange.setStreams(null, body);
+        DeferredResponse.reset();
+        try {
+            chain.doFilter(exchange);
+        } finally {
+            // A parked long poll is timed until its response is sent
+            String operation = ChatMetrics.takeOperation();
+            DeferredResponse.afterResponse(() -> metrics.requestFinished(start, body.count, operation));
+        }
+    }
+
+    private static final class CountingOutputStream extends FilterOutputStream {
+
+        long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
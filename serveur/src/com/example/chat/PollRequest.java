@@ -0,0 +1,153 @@
+package com.example.chat;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.xml.fastinfoset.stax.StAXDocumentParser;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+// A call that reads a room's history (getMessages, getRoomMessages,
+// getRoomChatMessages and their Since variants), recognised from the request body by the filters that answer
+// such calls without the service. The body is read into memory and handed back
+// to the chain; the result is kept for the exchange being filtered on this
+// thread so later filters do not parse it again. Not an exchange attribute:
+// the JDK server stores those on the context, shared by every exchange.
+final class PollRequest {
+
+    // Requests are read into memory to find the operation; bigger ones are never polls
+    private static final int MAX_REQUEST_BYTES = 4096;
+    private static final byte[] GET_MESSAGES = "getMessages".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] GET_ROOM_MESSAGES = "getRoomMessages".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] GET_ROOM_CHAT_MESSAGES = "getRoomChatMessages".getBytes(StandardCharsets.US_ASCII);
+
+    private static final ThreadLocal<Parsed> LAST = new ThreadLocal<>();
+
+    private static final XMLInputFactory XML_INPUT = createInputFactory();
+
+    final String operation;
+    final String room;
+    // Sequence the client already holds, -1 for the full history calls
+    final long lastSeq;
+
+    private PollRequest(String operation, String room, long lastSeq) {
+        this.operation = operation;
+        this.room = room;
+        this.lastSeq = lastSeq;
+    }
+
+    // True for getMessages, getRoomMessages and getRoomChatMessages, whose
+    // response is the whole history
+    boolean isFullHistory() {
+        return !operation.endsWith("Since");
+    }
+
+    // Null unless the exchange is a history call
+    static PollRequest of(HttpExchange exchange) throws IOException {
+        Parsed last = LAST.get();
+        if (last != null && last.exchange == exchange) {
+            return last.request;
+        }
+        PollRequest request = read(exchange);
+        LAST.set(new Parsed(exchange, request));
+        return request;
+    }
+
+    private static PollRequest read(HttpExchange exchange) throws IOException {
+        String length = exchange.getRequestHeaders().getFirst("Content-Length");
+        if (!"POST".equals(exchange.getRequestMethod()) || exchange.getRequestHeaders().containsKey("Content-Encoding")
+                || length == null || Long.parseLong(length.trim()) > MAX_REQUEST_BYTES) {
+            return null;
+        }
+        byte[] body = exchange.getRequestBody().readAllBytes();
+        exchange.setStreams(new ByteArrayInputStream(body), null);
+        if (indexOf(body, GET_MESSAGES) < 0 && indexOf(body, GET_ROOM_MESSAGES) < 0
+                && indexOf(body, GET_ROOM_CHAT_MESSAGES) < 0) {
+            return null;
+        }
+        String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+        boolean fastInfoset = contentType != null && contentType.contains("fastinfoset");
+        try {
+            XMLStreamReader reader = fastInfoset
+                    ? new StAXDocumentParser(new ByteArrayInputStream(body))
+                    : XML_INPUT.createXMLStreamReader(new ByteArrayInputStream(body));
+            try {
+                return parse(reader);
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException | NumberFormatException e) {
+            // Let the service report the malformed request
+            return null;
+        }
+    }
+
+    private static PollRequest parse(XMLStreamReader reader) throws XMLStreamException {
+        String operation = null;
+        String room = RoomRegistry.DEFAULT_ROOM;
+        long lastSeq = -1;
+        while (reader.hasNext()) {
+            if (reader.next() != XMLStreamConstants.START_ELEMENT) {
+                continue;
+            }
+            String name = reader.getLocalName();
+            if (operation == null) {
+                switch (name) {
+                    case "getMessages":
+                    case "getRoomMessages":
+                    case "getMessagesSince":
+                    case "getRoomMessagesSince":
+                    case "getRoomChatMessages":
+                    case "getRoomChatMessagesSince":
+                        operation = name;
+                        break;
+                    case "Envelope":
+                    case "Header":
+                    case "Body":
+                        break;
+                    default:
+                        return null;
+                }
+            } else if (operation.startsWith("getRoom") && name.equals("arg0")) {
+                String text = reader.getElementText();
+                room = text.isEmpty() ? RoomRegistry.DEFAULT_ROOM : text;
+            } else if (operation.endsWith("Since") && name.equals(operation.startsWith("getRoom") ? "arg1" : "arg0")) {
+                lastSeq = Long.parseLong(reader.getElementText().trim());
+            }
+        }
+        return operation == null ? null : new PollRequest(operation, room, lastSeq);
+    }
+
+    private static final class Parsed {
+        final HttpExchange exchange;
+        final PollRequest request;
+
+        Parsed(HttpExchange exchange, PollRequest request) {
+            this.exchange = exchange;
+            this.request = request;
+        }
+    }
+
+    private static int indexOf(byte[] data, byte[] pattern) {
+        outer:
+        for (int i = 0; i <= data.length - pattern.length; i++) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (data[i + j] != pattern[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    private static XMLInputFactory createInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newFactory();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+        return factory;
+    }
+}
@@ -0,0 +1,596 @@
+package com.example.chat;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.xml.fastinfoset.stax.StAXDocumentParser;
+import com.sun.xml.fastinfoset.stax.StAXDocumentSerializer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+
+// ChatService over SOAP 1.1 without the RI: the envelope is read with StAX
+// (or the Fast Infoset StAX parser) straight into the operation's arguments,
+// and the response is written with StAX into a pooled buffer, then sent
+// with its exact length. Elements, namespaces, faults and the WSDL (see wsdl/)
+// are those of the JAX-WS endpoint, so both serve the same clients. Operations
+// are delegated to the regular service. The waiting operations are parked
+// without a thread and answered from the room's signal or their timeout, so
+// long polls never hold the server's executor.
+public class RawChatHandler implements HttpHandler {
+
+    static final String NAMESPACE = "http://chat.example.com/";
+    private static final String SOAP_NAMESPACE = "http://schemas.xmlsoap.org/soap/envelope/";
+    private static final String FAST_INFOSET_TYPE = "application/fastinfoset";
+    private static final String XML_TYPE = "text/xml; charset=utf-8";
+
+    // A buffer grown by a large history is dropped rather than kept in the pool
+    private static final int MAX_RETAINED_BYTES = 256 * 1024;
+    // Codecs idle between requests; a burst beyond this allocates and drops
+    private static final int MAX_POOLED_CODECS = 64;
+
+    private static final XMLInputFactory XML_INPUT = createInputFactory();
+    private static final XMLOutputFactory XML_OUTPUT = XMLOutputFactory.newFactory();
+    private static final Set<String> OPERATIONS = new HashSet<>(Arrays.asList("sendMessage", "getMessages",
+            "getMessagesSince", "waitForMessages", "getRecentMessages", "getMessagesBefore", "sendRoomMessage",
+            "sendMessages", "getRoomMessages", "getRoomMessagesSince", "waitForRoomMessages", "getRoomRecentMessages",
+            "getRoomMessagesBefore", "listRooms", "searchMessages", "searchRoomMessages", "getRoomChatMessages",
+            "getRoomChatMessagesSince", "waitForRoomChatMessages", "getRoomRecentChatMessages",
+            "getRoomChatMessagesBefore", "searchRoomChatMessages"));
+
+    private final ChatServiceImpl service;
+    // Pooled rather than per thread: virtual threads run each request on a
+    // fresh thread, so a thread-local codec would never be reused
+    private final BlockingQueue<Codec> codecs = new ArrayBlockingQueue<>(MAX_POOLED_CODECS);
+    private final boolean fastInfoset;
+    // Null when metrics are disabled
+    private final ChatMetrics metrics;
+    // Where parked long polls are answered: the server's own executor
+    private final Executor executor;
+    private final String wsdl;
+    private final String xsd;
+
+    public RawChatHandler(ChatServiceImpl service, boolean fastInfoset, ChatMetrics metrics, Executor executor)
+            throws IOException {
+        this.service = service;
+        this.fastInfoset = fastInfoset;
+        this.metrics = metrics;
+        this.executor = executor;
+        this.wsdl = resource("wsdl/ChatService.wsdl");
+        this.xsd = resource("wsdl/ChatService.xsd");
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        boolean parked = false;
+        try {
+            if ("GET".equals(exchange.getRequestMethod())) {
+                sendMetadata(exchange);
+            } else if ("POST".equals(exchange.getRequestMethod())) {
+                parked = call(exchange);
+            } else {
+                exchange.getResponseHeaders().set("Allow", "GET, POST");
+                exchange.sendResponseHeaders(405, -1);
+            }
+        } finally {
+            if (!parked) {
+                exchange.close();
+            }
+        }
+    }
+
+    // True when the call was parked and its response is sent later
+    private boolean call(HttpExchange exchange) throws IOException {
+        String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+        boolean binaryRequest = contentType != null && contentType.startsWith(FAST_INFOSET_TYPE);
+        if (contentType == null || (binaryRequest ? !fastInfoset : !contentType.startsWith("text/xml"))) {
+            // Same answer as the RI, which makes clients fall back to plain XML
+            exchange.sendResponseHeaders(415, -1);
+            return false;
+        }
+        String accept = exchange.getRequestHeaders().getFirst("Accept");
+        boolean binaryResponse = fastInfoset && (binaryRequest || (accept != null && accept.contains(FAST_INFOSET_TYPE)));
+
+        Codec codec = codecs.poll();
+        if (codec == null) {
+            codec = new Codec();
+        }
+        boolean parked = false;
+        try {
+            parked = call(exchange, codec, binaryRequest, binaryResponse);
+        } finally {
+            if (!parked) {
+                release(codec);
+            }
+        }
+        return parked;
+    }
+
+    private boolean call(HttpExchange exchange, Codec codec, boolean binaryRequest, boolean binaryResponse)
+            throws IOException {
+        Request request;
+        try (InputStream body = exchange.getRequestBody()) {
+            request = read(codec.reader(body, binaryRequest));
+        } catch (XMLStreamException | IllegalArgumentException e) {
+            sendFault(exchange, codec, binaryResponse, "Client", 400, e);
+            return false;
+        }
+        if (!OPERATIONS.contains(request.operation)) {
+            sendFault(exchange, codec, binaryResponse, "Client", 400, new IllegalArgumentException(
+                    "Cannot find dispatch method for {" + NAMESPACE + "}" + request.operation));
+            return false;
+        }
+        ChatMetrics.tagOperation(request.operation);
+        CompletableFuture<Body> waiting;
+        try {
+            waiting = park(request);
+        } catch (RuntimeException e) {
+            fail(exchange, codec, binaryResponse, request, e);
+            return false;
+        }
+        if (waiting == null) {
+            respond(exchange, codec, binaryResponse, request, writer -> invoke(request, writer));
+            return false;
+        }
+        // The filters finish their work once this response is sent
+        CompletableFuture<Void> sent = DeferredResponse.defer();
+        waiting.whenComplete((body, failure) -> {
+            try {
+                if (failure == null) {
+                    respond(exchange, codec, binaryResponse, request, body);
+                } else {
+                    Throwable cause = failure instanceof CompletionException && failure.getCause() != null
+                            ? failure.getCause() : failure;
+                    fail(exchange, codec, binaryResponse, request, cause instanceof RuntimeException
+                            ? (RuntimeException) cause : new IllegalStateException(cause));
+                }
+            } catch (IOException e) {
+                // The client went away; nothing left to deliver
+            } finally {
+                release(codec);
+                exchange.close();
+                sent.complete(null);
+            }
+        });
+        return true;
+    }
+
+    private void release(Codec codec) {
+        codec.buffer.clear();
+        codecs.offer(codec);
+    }
+
+    private void respond(HttpExchange exchange, Codec codec, boolean binary, Request request, Body body)
+            throws IOException {
+        try {
+            XMLStreamWriter writer = codec.writer(binary);
+            writer.writeStartElement("ns2", request.operation + "Response", NAMESPACE);
+            writer.writeNamespace("ns2", NAMESPACE);
+            body.write(writer);
+            writer.writeEndElement();
+            codec.endEnvelope(writer);
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        } catch (RuntimeException e) {
+            fail(exchange, codec, binary, request, e);
+            return;
+        }
+        send(exchange, 200, binary, codec.buffer);
+    }
+
+    private void fail(HttpExchange exchange, Codec codec, boolean binary, Request request, RuntimeException e)
+            throws IOException {
+        if (metrics != null) {
+            metrics.operationFailed(request.operation);
+        }
+        // A malformed argument (NumberFormatException included) or one the
+        // service rejects is the caller's fault; anything else is ours
+        if (e instanceof IllegalArgumentException) {
+            sendFault(exchange, codec, binary, "Client", 400, e);
+        } else {
+            sendFault(exchange, codec, binary, "Server", 500, e);
+        }
+    }
+
+    // The waiting operations, parked until they can answer; null for the others
+    private CompletableFuture<Body> park(Request request) {
+        switch (request.operation) {
+            case "waitForMessages":
+                return service.waitForRoomMessages(RoomRegistry.DEFAULT_ROOM, request.longArg(0), request.intArg(1),
+                        executor).thenApply(result -> writer -> batch(writer, result));
+            case "waitForRoomMessages":
+                return service.waitForRoomMessages(request.args[0], request.longArg(1), request.intArg(2), executor)
+                        .thenApply(result -> writer -> batch(writer, result));
+            case "waitForRoomChatMessages":
+                return service.waitForRoomChatMessages(request.args[0], request.longArg(1), request.intArg(2),
+                        executor).thenApply(result -> writer -> batch(writer, result));
+            default:
+                return null;
+        }
+    }
+
+    private void invoke(Request request, XMLStreamWriter writer) throws XMLStreamException {
+        switch (request.operation) {
+            case "sendMessage":
+                service.sendMessage(request.args[0], request.args[1]);
+                break;
+            case "getMessages":
+                strings(writer, service.getMessages());
+                break;
+            case "getMessagesSince":
+                batch(writer, service.getMessagesSince(request.longArg(0)));
+                break;
+            case "getRecentMessages":
+                page(writer, service.getRecentMessages(request.intArg(0)));
+                break;
+            case "getMessagesBefore":
+                page(writer, service.getMessagesBefore(request.longArg(0), request.intArg(1)));
+                break;
+            case "sendRoomMessage":
+                service.sendRoomMessage(request.args[0], request.args[1], request.args[2]);
+                break;
+            case "sendMessages":
+                service.sendMessages(request.args[0], request.inputs);
+                break;
+            case "getRoomMessages":
+                strings(writer, service.getRoomMessages(request.args[0]));
+                break;
+            case "getRoomMessagesSince":
+                batch(writer, service.getRoomMessagesSince(request.args[0], request.longArg(1)));
+                break;
+            case "getRoomRecentMessages":
+                page(writer, service.getRoomRecentMessages(request.args[0], request.intArg(1)));
+                break;
+            case "getRoomMessagesBefore":
+                page(writer, service.getRoomMessagesBefore(request.args[0], request.longArg(1), request.intArg(2)));
+                break;
+            case "listRooms":
+                strings(writer, service.listRooms());
+                break;
+            case "searchMessages":
+                strings(writer, service.searchMessages(request.args[0], request.intArg(1)));
+                break;
+            case "searchRoomMessages":
+                strings(writer, service.searchRoomMessages(request.args[0], request.args[1], request.intArg(2)));
+                break;
+            case "getRoomChatMessages":
+                messages(writer, "return", service.getRoomChatMessages(request.args[0]));
+                break;
+            case "getRoomChatMessagesSince":
+                batch(writer, service.getRoomChatMessagesSince(request.args[0], request.longArg(1)));
+                break;
+            case "getRoomRecentChatMessages":
+                page(writer, service.getRoomRecentChatMessages(request.args[0], request.intArg(1)));
+                break;
+            case "getRoomChatMessagesBefore":
+                page(writer, service.getRoomChatMessagesBefore(request.args[0], request.longArg(1), request.intArg(2)));
+                break;
+            case "searchRoomChatMessages":
+                messages(writer, "return",
+                        service.searchRoomChatMessages(request.args[0], request.args[1], request.intArg(2)));
+                break;
+            default:
+                throw new IllegalStateException(request.operation);
+        }
+    }
+
+    private static void strings(XMLStreamWriter writer, List<String> values) throws XMLStreamException {
+        for (String value : values) {
+            text(writer, "return", value);
+        }
+    }
+
+    private static void batch(XMLStreamWriter writer, MessageBatch batch) throws XMLStreamException {
+        writer.writeStartElement("return");
+        text(writer, "lastSeq", Long.toString(batch.getLastSeq()));
+        for (String message : batch.getMessages()) {
+            text(writer, "messages", message);
+        }
+        if (batch.getNextPollMs() != null) {
+            text(writer, "nextPollMs", batch.getNextPollMs().toString());
+        }
+        writer.writeEndElement();
+    }
+
+    private static void page(XMLStreamWriter writer, MessagePage page) throws XMLStreamException {
+        writer.writeStartElement("return");
+        text(writer, "firstSeq", Long.toString(page.getFirstSeq()));
+        text(writer, "lastSeq", Long.toString(page.getLastSeq()));
+        for (String message : page.getMessages()) {
+            text(writer, "messages", message);
+        }
+        writer.writeEndElement();
+    }
+
+    private static void batch(XMLStreamWriter writer, ChatMessageBatch batch) throws XMLStreamException {
+        writer.writeStartElement("return");
+        text(writer, "lastSeq", Long.toString(batch.getLastSeq()));
+        messages(writer, "messages", batch.getMessages());
+        if (batch.getNextPollMs() != null) {
+            text(writer, "nextPollMs", batch.getNextPollMs().toString());
+        }
+        writer.writeEndElement();
+    }
+
+    private static void page(XMLStreamWriter writer, ChatMessagePage page) throws XMLStreamException {
+        writer.writeStartElement("return");
+        text(writer, "firstSeq", Long.toString(page.getFirstSeq()));
+        text(writer, "lastSeq", Long.toString(page.getLastSeq()));
+        messages(writer, "messages", page.getMessages());
+        writer.writeEndElement();
+    }
+
+    private static void messages(XMLStreamWriter writer, String name, List<ChatMessage> messages)
+            throws XMLStreamException {
+        for (ChatMessage message : messages) {
+            // In the order of the schema the RI derives from ChatMessage
+            writer.writeStartElement(name);
+            text(writer, "sender", message.getSender());
+            text(writer, "seq", Long.toString(message.getSeq()));
+            text(writer, "text", message.getText());
+            text(writer, "timestamp", Long.toString(message.getTimestamp()));
+            writer.writeEndElement();
+        }
+    }
+
+    private static void text(XMLStreamWriter writer, String name, String value) throws XMLStreamException {
+        writer.writeStartElement(name);
+        writer.writeCharacters(value);
+        writer.writeEndElement();
+    }
+
+    // Envelope, optional Header, Body, then the operation wrapper and its
+    // children: arg0..arg2 as text, and the user/message pairs of sendMessages.
+    // Absent arguments stay null, as with JAXB.
+    private static Request read(XMLStreamReader reader) throws XMLStreamException {
+        try {
+            expect(reader, "Envelope");
+            reader.nextTag();
+            if (reader.getLocalName().equals("Header")) {
+                skip(reader);
+                reader.nextTag();
+            }
+            expect(reader, "Body");
+            if (reader.nextTag() != XMLStreamConstants.START_ELEMENT) {
+                throw new XMLStreamException("Empty SOAP body");
+            }
+            Request request = new Request(reader.getLocalName());
+            while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+                String name = reader.getLocalName();
+                int arg = name.length() == 4 && name.startsWith("arg") ? name.charAt(3) - '0' : -1;
+                if (arg == 1 && request.operation.equals("sendMessages")) {
+                    request.inputs.add(readInput(reader));
+                } else if (arg >= 0 && arg < request.args.length) {
+                    request.args[arg] = reader.getElementText();
+                } else {
+                    skip(reader);
+                }
+            }
+            return request;
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static MessageInput readInput(XMLStreamReader reader) throws XMLStreamException {
+        MessageInput input = new MessageInput();
+        while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            String name = reader.getLocalName();
+            if (name.equals("user")) {
+                input.setUser(reader.getElementText());
+            } else if (name.equals("message")) {
+                input.setMessage(reader.getElementText());
+            } else {
+                skip(reader);
+            }
+        }
+        return input;
+    }
+
+    private static void expect(XMLStreamReader reader, String name) throws XMLStreamException {
+        if (reader.getEventType() != XMLStreamConstants.START_ELEMENT) {
+            reader.nextTag();
+        }
+        if (!name.equals(reader.getLocalName()) || !SOAP_NAMESPACE.equals(reader.getNamespaceURI())) {
+            throw new XMLStreamException("Expected SOAP 1.1 " + name + ", found " + reader.getName());
+        }
+    }
+
+    private static void skip(XMLStreamReader reader) throws XMLStreamException {
+        for (int depth = 1; depth > 0; ) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+
+    private void sendFault(HttpExchange exchange, Codec codec, boolean binary, String code, int status,
+            Exception cause) throws IOException {
+        String message = cause.getMessage() != null ? cause.getMessage() : cause.toString();
+        try {
+            XMLStreamWriter writer = codec.writer(binary);
+            writer.writeStartElement("S", "Fault", SOAP_NAMESPACE);
+            text(writer, "faultcode", "S:" + code);
+            text(writer, "faultstring", message);
+            writer.writeEndElement();
+            codec.endEnvelope(writer);
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+        send(exchange, status, binary, codec.buffer);
+    }
+
+    private static void send(HttpExchange exchange, int status, boolean binary, Buffer body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", binary ? FAST_INFOSET_TYPE : XML_TYPE);
+        exchange.sendResponseHeaders(status, body.size());
+        try (OutputStream out = exchange.getResponseBody()) {
+            body.writeTo(out);
+        }
+    }
+
+    // ?wsdl and ?xsd=1, with the address the client used, like the RI
+    private void sendMetadata(HttpExchange exchange) throws IOException {
+        String query = exchange.getRequestURI().getRawQuery();
+        String document;
+        if ("wsdl".equalsIgnoreCase(query)) {
+            String address = "http://" + exchange.getRequestHeaders().getFirst("Host") + exchange.getHttpContext().getPath();
+            document = wsdl.replace("REPLACE_WITH_ACTUAL_URL", address)
+                    .replace("schemaLocation=\"ChatService.xsd\"", "schemaLocation=\"" + address + "?xsd=1\"");
+        } else if ("xsd=1".equals(query)) {
+            document = xsd;
+        } else {
+            exchange.sendResponseHeaders(404, -1);
+            return;
+        }
+        byte[] body = document.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", XML_TYPE);
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static String resource(String name) throws IOException {
+        try (InputStream in = RawChatHandler.class.getResourceAsStream(name)) {
+            if (in == null) {
+                throw new IOException("Missing " + name + " next to " + RawChatHandler.class.getName());
+            }
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static XMLInputFactory createInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newFactory();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+        return factory;
+    }
+
+    // A response body, written once the operation's result is known
+    private interface Body {
+        void write(XMLStreamWriter writer) throws XMLStreamException;
+    }
+
+    private static final class Request {
+        final String operation;
+        final String[] args = new String[3];
+        final List<MessageInput> inputs = new ArrayList<>();
+
+        Request(String operation) {
+            this.operation = operation;
+        }
+
+        long longArg(int index) {
+            return args[index] == null ? 0 : Long.parseLong(args[index].trim());
+        }
+
+        int intArg(int index) {
+            return args[index] == null ? 0 : Integer.parseInt(args[index].trim());
+        }
+    }
+
+    // A pooled parser, serializer and buffer, reused from one call to the next
+    private static final class Codec {
+        final Buffer buffer = new Buffer();
+        final StAXDocumentParser fastInfosetReader = new StAXDocumentParser();
+        final StAXDocumentSerializer fastInfosetWriter = new StAXDocumentSerializer();
+
+        XMLStreamReader reader(InputStream in, boolean binary) throws XMLStreamException {
+            if (!binary) {
+                return XML_INPUT.createXMLStreamReader(in);
+            }
+            fastInfosetReader.setInputStream(in);
+            return fastInfosetReader;
+        }
+
+        // Opens the envelope and the body
+        XMLStreamWriter writer(boolean binary) throws XMLStreamException {
+            buffer.clear();
+            XMLStreamWriter writer;
+            if (binary) {
+                fastInfosetWriter.reset();
+                fastInfosetWriter.setOutputStream(buffer);
+                writer = fastInfosetWriter;
+            } else {
+                writer = XML_OUTPUT.createXMLStreamWriter(buffer, "UTF-8");
+            }
+            writer.writeStartDocument("UTF-8", "1.0");
+            writer.writeStartElement("S", "Envelope", SOAP_NAMESPACE);
+            writer.writeNamespace("S", SOAP_NAMESPACE);
+            writer.writeStartElement("S", "Body", SOAP_NAMESPACE);
+            return writer;
+        }
+
+        void endEnvelope(XMLStreamWriter writer) throws XMLStreamException {
+            // Each element is closed explicitly: the Fast Infoset writer's
+            // writeEndDocument does not end an empty element properly
+            writer.writeEndElement();
+            writer.writeEndElement();
+            writer.writeEndDocument();
+            writer.flush();
+        }
+    }
+
+    // Unsynchronized: the XML writer hands the body over a byte at a time
+    private static final class Buffer extends ByteArrayOutputStream {
+
+        Buffer() {
+            super(4096);
+        }
+
+        @Override
+        public void write(int b) {
+            if (count == buf.length) {
+                grow(count + 1);
+            }
+            buf[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            if (count + len > buf.length) {
+                grow(count + len);
+            }
+            System.arraycopy(b, off, buf, count, len);
+            count += len;
+        }
+
+        @Override
+        public void writeTo(OutputStream out) throws IOException {
+            out.write(buf, 0, count);
+        }
+
+        void clear() {
+            count = 0;
+            if (buf.length > MAX_RETAINED_BYTES) {
+                buf = new byte[4096];
+            }
+        }
+
+        private void grow(int minCapacity) {
+            byte[] larger = new byte[Math.max(minCapacity, buf.length * 2)];
+            System.arraycopy(buf, 0, larger, 0, count);
+            buf = larger;
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package com.example.chat;
+
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// Caches the bytes sent for the full history calls (see PollRequest), keyed by
+// operation, room and the request headers that shape the response (Accept,
+// Accept-Encoding and the request's own encoding). An entry records the last sequence number the
+// response actually contains (see ChatRoom.snapshot: a sequence can be claimed
+// before its message is published, so the store's counter may run ahead of
+// it) and the room's message count, and is only served while the store still
+// ends at that number and holds that many, so that both sends and evictions
+// retire it: the first poll after a send misses and records the new history,
+// identical polls until the next send replay the bytes without going through
+// JAXB or compression. Sits between MetricsFilter and CompressionFilter so it
+// stores what actually went on the wire.
+public class ResponseCacheFilter extends Filter {
+
+    public static final long DEFAULT_BUDGET_BYTES = 64L << 20;
+
+    private final RoomRegistry rooms;
+    private final long budgetBytes;
+    private final ConcurrentMap<Key, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong cachedBytes = new AtomicLong();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public ResponseCacheFilter(RoomRegistry rooms, long budgetBytes) {
+        this.rooms = rooms;
+        this.budgetBytes = budgetBytes;
+    }
+
+    @Override
+    public String description() {
+        return "getMessages response cache";
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    public long cachedBytes() {
+        return cachedBytes.get();
+    }
+
+    @Override
+    public void doFilter(HttpExchange exchange, Chain chain) throws IOException {
+        PollRequest poll = PollRequest.of(exchange);
+        ChatRoom room = poll == null || !poll.isFullHistory() ? null : find(poll.room);
+        if (room == null) {
+            // Unknown or invalid rooms are left to the service, which answers or faults
+            chain.doFilter(exchange);
+            return;
+        }
+        Headers request = exchange.getRequestHeaders();
+        Key key = new Key(poll.operation, poll.room, request.getFirst("Content-Type"),
+                request.getFirst("Accept"), request.getFirst("Accept-Encoding"));
+
+        MessageStore store = room.getStore();
+        long version = store.lastSequence();
+        int held = store.size();
+        Entry entry = entries.get(key);
+        if (entry != null && entry.version == version && entry.held == held) {
+            hits.increment();
+            ChatMetrics.tagOperation(poll.operation);
+            entry.send(exchange);
+            return;
+        }
+
+        misses.increment();
+        RecordingOutputStream recording = new RecordingOutputStream(exchange.getResponseBody(), budgetBytes / 8);
+        exchange.setStreams(null, recording);
+        ChatRoom.takeSnapshotEnd();
+        chain.doFilter(exchange);
+        long end = ChatRoom.takeSnapshotEnd();
+        // Unless the response ends where the store does, a message claimed before
+        // it was built is missing from it; an eviction meanwhile changes the count
+        if (exchange.getResponseCode() == 200 && recording.copy != null
+                && end >= 0 && store.lastSequence() == end && store.size() == held) {
+            store(key, new Entry(end, held, exchange.getResponseHeaders(), recording.copy.toByteArray()));
+        }
+    }
+
+    private ChatRoom find(String name) {
+        try {
+            return rooms.find(name);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private void store(Key key, Entry entry) {
+        Entry previous = entries.put(key, entry);
+        long total = cachedBytes.addAndGet(entry.body.length - (previous == null ? 0 : previous.body.length));
+        if (total > budgetBytes) {
+            // Rare with a few rooms; simply start over rather than track recency
+            entries.clear();
+            cachedBytes.set(0);
+        }
+    }
+
+    private static final class Key {
+        final String operation;
+        final String room;
+        final String contentType;
+        final String accept;
+        final String acceptEncoding;
+
+        Key(String operation, String room, String contentType, String accept, String acceptEncoding) {
+            this.operation = operation;
+            this.room = room;
+            this.contentType = contentType;
+            this.accept = accept;
+            this.acceptEncoding = acceptEncoding;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return operation.equals(other.operation) && room.equals(other.room)
+                    && Objects.equals(contentType, other.contentType) && Objects.equals(accept, other.accept)
+                    && Objects.equals(acceptEncoding, other.acceptEncoding);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(operation, room, contentType, accept, acceptEncoding);
+        }
+    }
+
+    private static final class Entry {
+        private static final List<String> REPLAYED_HEADERS = Arrays.asList("Content-Type", "Content-Encoding", "Vary");
+
+        final long version;
+        final int held;
+        final String[][] headers;
+        final byte[] body;
+
+        Entry(long version, int held, Headers responseHeaders, byte[] body) {
+            this.version = version;
+            this.held = held;
+            this.body = body;
+            this.headers = REPLAYED_HEADERS.stream()
+                    .filter(name -> responseHeaders.getFirst(name) != null)
+                    .map(name -> new String[] {name, responseHeaders.getFirst(name)})
+                    .toArray(String[][]::new);
+        }
+
+        void send(HttpExchange exchange) throws IOException {
+            Headers response = exchange.getResponseHeaders();
+            for (String[] header : headers) {
+                response.set(header[0], header[1]);
+            }
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+
+    // Passes the response through and keeps a copy, unless it grows past the limit
+    private static final class RecordingOutputStream extends FilterOutputStream {
+
+        private final long limit;
+        ByteArrayOutputStream copy = new ByteArrayOutputStream();
+
+        RecordingOutputStream(OutputStream out, long limit) {
+            super(out);
+            this.limit = limit;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            if (copy != null) {
+                copy.write(b);
+                checkLimit();
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            if (copy != null) {
+                copy.write(b, off, len);
+                checkLimit();
+            }
+        }
+
+        private void checkLimit() {
+            if (copy.size() > limit) {
+                copy = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.chat;
+
+// How much history each room keeps in memory, on top of its ring capacity. A
+// limit of 0 is no limit. Bytes are estimated from message lengths, not
+// measured, so they bound the heap taken by messages only roughly.
+public final class RetentionPolicy {
+
+    public static final RetentionPolicy NONE = new RetentionPolicy(0, 0, 0);
+
+    private final long maxMessages;
+    private final long maxAgeMs;
+    private final long maxBytes;
+
+    public RetentionPolicy(long maxMessages, long maxAgeMs, long maxBytes) {
+        if (maxMessages < 0 || maxAgeMs < 0 || maxBytes < 0) {
+            throw new IllegalArgumentException("Retention limits must not be negative");
+        }
+        this.maxMessages = maxMessages;
+        this.maxAgeMs = maxAgeMs;
+        this.maxBytes = maxBytes;
+    }
+
+    public long getMaxMessages() {
+        return maxMessages;
+    }
+
+    public long getMaxAgeMs() {
+        return maxAgeMs;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public boolean isEnabled() {
+        return maxMessages > 0 || maxAgeMs > 0 || maxBytes > 0;
+    }
+
+    // Whether the oldest message must go, given what the room holds including it
+    boolean exceeded(long messages, long bytes, long oldestAgeMs) {
+        return (maxMessages > 0 && messages > maxMessages)
+                || (maxBytes > 0 && bytes > maxBytes)
+                || (maxAgeMs > 0 && oldestAgeMs > maxAgeMs);
+    }
+
+    // Rough heap footprint of a stored message: the slot entry and its text array
+    static long estimateBytes(int textBytes) {
+        return 56 + textBytes;
+    }
+
+    @Override
+    public String toString() {
+        return "messages=" + (maxMessages == 0 ? "unlimited" : maxMessages)
+                + ", age=" + (maxAgeMs == 0 ? "unlimited" : maxAgeMs + " ms")
+                + ", bytes=" + (maxBytes == 0 ? "unlimited" : maxBytes);
+    }
+}
@@ -0,0 +1,334 @@
+package com.example.chat;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// Fixed-capacity history: writers claim a sequence number from a single atomic
+// counter and publish into slot (seq % capacity); readers take no locks and stop
+// at the first slot whose writer has not published yet, so every batch they
+// return is a contiguous run of sequence numbers. Eviction swaps the oldest
+// entries for tombstones and then raises a floor below which readers no longer
+// look; neither writers nor readers wait for it. When the history is archived,
+// messages overwritten by a lap of the ring, or lapped before their writer
+// published them, are queued for the next evict(), up to one capacity's worth
+// between two calls.
+public class RingBufferMessageStore implements MessageStore {
+
+    public static final int DEFAULT_CAPACITY = 10_000;
+    // Beyond this many distinct senders, new names are stored as they come
+    static final int MAX_SHARED_SENDERS = 100_000;
+
+    // Sender names shared by every ring, so that a message only holds a
+    // reference to its sender's
+    private static final ConcurrentMap<String, String> SENDERS = new ConcurrentHashMap<>();
+
+    private final int capacity;
+    private final AtomicReferenceArray<Entry> slots;
+    private final AtomicLong sequence = new AtomicLong();
+    // Highest sequence number dropped by evict(); only the compactor moves it
+    private final AtomicLong evictedThrough = new AtomicLong();
+    private final LongAdder retainedBytes = new LongAdder();
+    // Null unless overwritten messages are kept for the archive
+    private final Queue<Entry> overwritten;
+    private final AtomicInteger overwrittenQueued = new AtomicInteger();
+    private final LongAdder overwrittenLost = new LongAdder();
+
+    public RingBufferMessageStore() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public RingBufferMessageStore(int capacity) {
+        this(capacity, false);
+    }
+
+    public RingBufferMessageStore(int capacity, boolean keepOverwritten) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        this.slots = new AtomicReferenceArray<>(capacity);
+        this.overwritten = keepOverwritten ? new ConcurrentLinkedQueue<>() : null;
+    }
+
+    @Override
+    public long append(String sender, String text, long timestamp) {
+        long seq = sequence.incrementAndGet();
+        publish(new Entry(seq, timestamp, sender, text));
+        return seq;
+    }
+
+    @Override
+    public long appendAll(List<MessageInput> messages, long timestamp) {
+        int count = messages.size();
+        if (count > maxBatchSize()) {
+            throw new IllegalArgumentException("Batch of " + count + " messages exceeds the limit of "
+                    + maxBatchSize() + " for a store of " + capacity);
+        }
+        long last = sequence.addAndGet(count);
+        long first = last - count + 1;
+        // Publish back to front: readers stop at the first unpublished slot, so
+        // they see none of the batch until its first message lands, and by then
+        // the rest is already in place
+        for (int i = count - 1; i >= 0; i--) {
+            MessageInput input = messages.get(i);
+            publish(new Entry(first + i, timestamp, input.getUser(), input.getMessage()));
+        }
+        return last;
+    }
+
+    @Override
+    public void restore(ChatMessage message) {
+        long seq = message.getSeq();
+        long last = sequence.get();
+        // Sequence numbers skipped by the journal become tombstones so readers
+        // do not mistake them for messages that are still being published
+        for (long missing = Math.max(last + 1, seq - capacity + 1); missing < seq; missing++) {
+            publish(new Entry(missing, message.getTimestamp()));
+        }
+        publish(new Entry(seq, message.getTimestamp(), message.getSender(), message.getText()));
+        if (seq > last) {
+            sequence.set(seq);
+        }
+    }
+
+    @Override
+    public void restoreEvicted(long throughSeq) {
+        if (throughSeq > sequence.get()) {
+            sequence.set(throughSeq);
+        }
+        if (throughSeq > evictedThrough.get()) {
+            evictedThrough.set(throughSeq);
+        }
+    }
+
+    @Override
+    public long lastSequence() {
+        return sequence.get();
+    }
+
+    @Override
+    public ChatMessage get(long seq) {
+        if (seq <= evictedThrough.get()) {
+            return null;
+        }
+        Entry entry = slots.get(index(seq));
+        return entry != null && entry.seq == seq && entry.text != null ? entry.toMessage() : null;
+    }
+
+    @Override
+    public List<ChatMessage> snapshot() {
+        return since(0).getMessages();
+    }
+
+    @Override
+    public ChatMessageBatch since(long lastSeq) {
+        long last = sequence.get();
+        long from = Math.max(Math.max(lastSeq, evictedThrough.get()), last - capacity) + 1;
+        if (from > last) {
+            return new ChatMessageBatch(last, new ArrayList<>());
+        }
+        List<ChatMessage> result = new ArrayList<>((int) (last - from + 1));
+        long seq = from;
+        for (; seq <= last; seq++) {
+            Entry entry = slots.get(index(seq));
+            if (entry == null || entry.seq < seq) {
+                break;
+            }
+            if (entry.seq == seq && entry.text != null) {
+                result.add(entry.toMessage());
+            }
+            // entry.seq > seq: overwritten by a newer message while we were reading
+        }
+        return new ChatMessageBatch(seq - 1, result);
+    }
+
+    @Override
+    public ChatMessagePage before(long seq, int limit) {
+        long last = sequence.get();
+        long to = Math.min(seq - 1, last);
+        long from = Math.max(Math.max(evictedThrough.get(), last - capacity) + 1, to - limit + 1);
+        List<ChatMessage> result = new ArrayList<>((int) Math.max(0, to - from + 1));
+        long first = from;
+        long next = from;
+        for (; next <= to; next++) {
+            Entry entry = slots.get(index(next));
+            if (entry == null || entry.seq < next) {
+                // Numbered but not published yet
+                break;
+            }
+            if (entry.seq > next || entry.text == null) {
+                // Overwritten or evicted while we were reading, and everything
+                // older with it: the page starts after it
+                result.clear();
+                first = next + 1;
+            } else {
+                result.add(entry.toMessage());
+            }
+        }
+        return new ChatMessagePage(first, next - 1, result);
+    }
+
+    @Override
+    public int size() {
+        long last = sequence.get();
+        return (int) (last - Math.max(evictedThrough.get(), Math.max(0, last - capacity)));
+    }
+
+    @Override
+    public int capacity() {
+        return capacity;
+    }
+
+    @Override
+    public long retainedBytes() {
+        return retainedBytes.sum();
+    }
+
+    @Override
+    public long overwrittenLost() {
+        return overwrittenLost.sum();
+    }
+
+    @Override
+    public List<ChatMessage> evict(RetentionPolicy policy, long nowMillis) {
+        List<ChatMessage> evicted = new ArrayList<>();
+        if (overwritten != null) {
+            for (Entry entry = overwritten.poll(); entry != null; entry = overwritten.poll()) {
+                overwrittenQueued.decrementAndGet();
+                evicted.add(entry.toMessage());
+            }
+            // Concurrent writers queue them in roughly, not exactly, that order
+            evicted.sort(Comparator.comparingLong(ChatMessage::getSeq));
+        }
+        long last = sequence.get();
+        long floor = Math.max(evictedThrough.get(), last - capacity);
+        while (floor < last) {
+            long seq = floor + 1;
+            Entry entry = slots.get(index(seq));
+            // Not published yet, or overwritten by a newer lap of the ring: the
+            // next pass starts over from the current sequence
+            if (entry == null || entry.seq != seq
+                    || !policy.exceeded(last - floor, retainedBytes.sum(), nowMillis - entry.timestamp)) {
+                break;
+            }
+            // Losing the race to an append means the ring already dropped the message
+            if (entry.text != null && slots.compareAndSet(index(seq), entry, new Entry(seq, entry.timestamp))) {
+                retainedBytes.add(-entry.bytes());
+                evicted.add(entry.toMessage());
+            }
+            floor = seq;
+        }
+        if (floor > evictedThrough.get()) {
+            evictedThrough.set(floor);
+        }
+        return evicted;
+    }
+
+    // Stores the entry in its slot unless the slot already holds a newer one,
+    // and accounts for the entry it replaces. A writer descheduled between
+    // claiming its sequence and publishing may find that others lapped the
+    // ring meanwhile: its message is then dropped, as the lap would have
+    // dropped it, rather than put back over a newer one.
+    private void publish(Entry entry) {
+        int index = index(entry.seq);
+        while (true) {
+            Entry previous = slots.get(index);
+            if (previous != null && !entry.replaces(previous)) {
+                if (overwritten != null && entry.text != null && previous.seq > entry.seq) {
+                    keepOverwritten(entry);
+                }
+                return;
+            }
+            if (slots.compareAndSet(index, previous, entry)) {
+                retainedBytes.add(entry.bytes() - (previous == null ? 0 : previous.bytes()));
+                if (overwritten != null && previous != null && previous.text != null && previous.seq < entry.seq) {
+                    keepOverwritten(previous);
+                }
+                return;
+            }
+        }
+    }
+
+    private void keepOverwritten(Entry entry) {
+        if (overwrittenQueued.incrementAndGet() > capacity) {
+            // The compactor is not keeping up; counted so that it can say so
+            overwrittenQueued.decrementAndGet();
+            overwrittenLost.increment();
+        } else {
+            overwritten.add(entry);
+        }
+    }
+
+    private int index(long seq) {
+        return (int) (seq % capacity);
+    }
+
+    private static String share(String sender) {
+        String shared = SENDERS.get(sender);
+        if (shared == null && SENDERS.size() < MAX_SHARED_SENDERS) {
+            shared = SENDERS.putIfAbsent(sender, sender);
+        }
+        return shared != null ? shared : sender;
+    }
+
+    // The text is kept as bare bytes rather than a String: Latin-1 when every
+    // character fits, as String itself would, UTF-8 otherwise. A tombstone has
+    // no text.
+    private static final class Entry {
+        final long seq;
+        final long timestamp;
+        final String sender;
+        final byte[] text;
+        final boolean latin1;
+
+        Entry(long seq, long timestamp, String sender, String text) {
+            this.seq = seq;
+            this.timestamp = timestamp;
+            this.sender = share(sender);
+            this.latin1 = isLatin1(text);
+            this.text = text.getBytes(latin1 ? StandardCharsets.ISO_8859_1 : StandardCharsets.UTF_8);
+        }
+
+        // Tombstone
+        Entry(long seq, long timestamp) {
+            this.seq = seq;
+            this.timestamp = timestamp;
+            this.sender = null;
+            this.text = null;
+            this.latin1 = false;
+        }
+
+        ChatMessage toMessage() {
+            return new ChatMessage(seq, sender, timestamp,
+                    new String(text, latin1 ? StandardCharsets.ISO_8859_1 : StandardCharsets.UTF_8));
+        }
+
+        // Older messages, and the tombstone of this one when it is restored
+        boolean replaces(Entry previous) {
+            return previous.seq < seq || (previous.seq == seq && previous.text == null && text != null);
+        }
+
+        long bytes() {
+            return text == null ? 0 : RetentionPolicy.estimateBytes(text.length);
+        }
+
+        private static boolean isLatin1(String text) {
+            for (int i = 0; i < text.length(); i++) {
+                if (text.charAt(i) > 0xFF) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package com.example.chat;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BinaryOperator;
+import java.util.regex.Pattern;
+
+// Rooms are created by the first message sent to them, up to maxRooms; reads
+// and waits never create one. Each room gets its own store and, when
+// journal.dir is set, its own journal: the default room journals to the
+// directory itself (the single-room layout) and any other room to a
+// sub-directory named after it. Room names cannot contain '.', so they never
+// collide with the journal's own files.
+public class RoomRegistry {
+
+    public static final String DEFAULT_ROOM = "general";
+    public static final int DEFAULT_MAX_ROOMS = 1000;
+
+    private static final Pattern ROOM_NAME = Pattern.compile("[A-Za-z0-9_-]{1,64}");
+
+    private final ConcurrentMap<String, ChatRoom> rooms = new ConcurrentHashMap<>();
+    private final int capacity;
+    private final Path journalDir;
+    private final long segmentSize;
+    private final FsyncPolicy fsyncPolicy;
+    private final long groupCommitMs;
+    private final boolean keepOverwritten;
+    private final int maxRooms;
+    private final AtomicInteger roomCount = new AtomicInteger();
+    private final List<MessageJournal> journals = new CopyOnWriteArrayList<>();
+    // Signalled whenever a room is created, for awaitRoom()
+    private final Waiters roomCreated = new Waiters();
+
+    public RoomRegistry(int capacity, Path journalDir) {
+        this(capacity, journalDir, MessageJournal.DEFAULT_SEGMENT_SIZE, FsyncPolicy.GROUP, 10);
+    }
+
+    public RoomRegistry(int capacity, Path journalDir, long segmentSize, FsyncPolicy fsyncPolicy, long groupCommitMs) {
+        this(capacity, journalDir, segmentSize, fsyncPolicy, groupCommitMs, false);
+    }
+
+    // keepOverwritten makes the rings queue what they overwrite for the
+    // compactor to archive
+    public RoomRegistry(int capacity, Path journalDir, long segmentSize, FsyncPolicy fsyncPolicy, long groupCommitMs,
+            boolean keepOverwritten) {
+        this(capacity, journalDir, segmentSize, fsyncPolicy, groupCommitMs, keepOverwritten, DEFAULT_MAX_ROOMS);
+    }
+
+    public RoomRegistry(int capacity, Path journalDir, long segmentSize, FsyncPolicy fsyncPolicy, long groupCommitMs,
+            boolean keepOverwritten, int maxRooms) {
+        if (maxRooms <= 0) {
+            throw new IllegalArgumentException("maxRooms must be positive: " + maxRooms);
+        }
+        this.capacity = capacity;
+        this.journalDir = journalDir;
+        this.segmentSize = segmentSize;
+        this.fsyncPolicy = fsyncPolicy;
+        this.groupCommitMs = groupCommitMs;
+        this.keepOverwritten = keepOverwritten;
+        this.maxRooms = maxRooms;
+        if (journalDir != null) {
+            Runtime.getRuntime().addShutdownHook(new Thread(this::closeJournals, "chat-journal-close"));
+        }
+    }
+
+    // store.capacity sizes each room's ring; setting journal.dir adds a durable
+    // journal per room (journal.fsync=always|group|os, journal.interval.ms,
+    // journal.segment.mb) that is replayed at startup, archive.dir keeps
+    // overwritten messages for the archive and rooms.max caps the number of
+    // rooms. option(name, default) looks each one up, see ChatPublisher.option.
+    public static RoomRegistry fromOptions(BinaryOperator<String> option) {
+        String journalDir = option.apply("journal.dir", "");
+        RoomRegistry registry = new RoomRegistry(
+                Integer.parseInt(option.apply("store.capacity", String.valueOf(RingBufferMessageStore.DEFAULT_CAPACITY))),
+                journalDir.isEmpty() ? null : Paths.get(journalDir),
+                Long.parseLong(option.apply("journal.segment.mb", String.valueOf(MessageJournal.DEFAULT_SEGMENT_SIZE >> 20))) << 20,
+                FsyncPolicy.parse(option.apply("journal.fsync", "group")),
+                Long.parseLong(option.apply("journal.interval.ms", "10")),
+                !option.apply("archive.dir", "").isEmpty(),
+                Integer.parseInt(option.apply("rooms.max", String.valueOf(DEFAULT_MAX_ROOMS))));
+        registry.recoverRooms();
+        return registry;
+    }
+
+    // The same options from chat.<name> system properties
+    public static RoomRegistry fromSystemProperties() {
+        return fromOptions((name, defaultValue) -> System.getProperty("chat." + name, defaultValue));
+    }
+
+    // The room, created if needed; only for sends. Fails once maxRooms exist.
+    public ChatRoom room(String name) {
+        String roomName = normalize(name);
+        ChatRoom room = rooms.get(roomName);
+        if (room == null) {
+            room = rooms.computeIfAbsent(roomName, key -> createRoom(key, true));
+            // Once the room is visible, so that woken waiters find it
+            roomCreated.signalAll();
+        }
+        return room;
+    }
+
+    // Looks a room up without creating it
+    public ChatRoom find(String name) {
+        return rooms.get(normalize(name));
+    }
+
+    // Completes with the room once a message creates it, or with null after
+    // timeoutMs, without holding a thread meanwhile
+    public CompletableFuture<ChatRoom> awaitRoom(String name, long timeoutMs, Executor executor) {
+        return awaitRoomUntil(normalize(name), System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs), executor);
+    }
+
+    private CompletableFuture<ChatRoom> awaitRoomUntil(String roomName, long deadline, Executor executor) {
+        CompletableFuture<Void> waiter = roomCreated.register();
+        ChatRoom room = rooms.get(roomName);
+        long remaining = deadline - System.nanoTime();
+        if (room != null || remaining <= 0) {
+            roomCreated.cancel(waiter);
+            return CompletableFuture.completedFuture(room);
+        }
+        return roomCreated.park(waiter, remaining, executor)
+                .thenCompose(ignored -> awaitRoomUntil(roomName, deadline, executor));
+    }
+
+    public List<String> names() {
+        List<String> names = new ArrayList<>(rooms.keySet());
+        Collections.sort(names);
+        return names;
+    }
+
+    public int size() {
+        return rooms.size();
+    }
+
+    public List<ChatRoom> rooms() {
+        return new ArrayList<>(rooms.values());
+    }
+
+    // Messages currently held in memory across all rooms
+    public long storedMessages() {
+        long total = 0;
+        for (ChatRoom room : rooms.values()) {
+            total += room.getStore().size();
+        }
+        return total;
+    }
+
+    // Estimated heap taken by those messages
+    public long retainedBytes() {
+        long total = 0;
+        for (ChatRoom room : rooms.values()) {
+            total += room.getStore().retainedBytes();
+        }
+        return total;
+    }
+
+    private void closeJournals() {
+        for (MessageJournal journal : journals) {
+            journal.close();
+        }
+    }
+
+    private static String normalize(String name) {
+        if (name == null || name.isEmpty()) {
+            return DEFAULT_ROOM;
+        }
+        if (!ROOM_NAME.matcher(name).matches()) {
+            throw new IllegalArgumentException("Invalid room name: " + name
+                    + " (1-64 letters, digits, '_' or '-')");
+        }
+        return name;
+    }
+
+    private void recoverRooms() {
+        recoverRoom(DEFAULT_ROOM);
+        if (journalDir == null || !Files.isDirectory(journalDir)) {
+            return;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(journalDir, Files::isDirectory)) {
+            for (Path dir : stream) {
+                String name = dir.getFileName().toString();
+                if (ROOM_NAME.matcher(name).matches()) {
+                    recoverRoom(name);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not list rooms in " + journalDir, e);
+        }
+    }
+
+    // Rooms already on disk are reopened whatever maxRooms says
+    private void recoverRoom(String name) {
+        rooms.computeIfAbsent(name, key -> createRoom(key, false));
+    }
+
+    private ChatRoom createRoom(String name, boolean capped) {
+        if (roomCount.incrementAndGet() > maxRooms && capped) {
+            roomCount.decrementAndGet();
+            throw new IllegalArgumentException("Cannot create room " + name + ": the server already has "
+                    + maxRooms + " rooms");
+        }
+        try {
+            return openRoom(name);
+        } catch (RuntimeException e) {
+            roomCount.decrementAndGet();
+            throw e;
+        }
+    }
+
+    private ChatRoom openRoom(String name) {
+        RingBufferMessageStore store = new RingBufferMessageStore(capacity, keepOverwritten);
+        if (journalDir == null) {
+            return new ChatRoom(name, store);
+        }
+        Path dir = DEFAULT_ROOM.equals(name) ? journalDir : journalDir.resolve(name);
+        try {
+            MessageJournal journal = new MessageJournal(dir, segmentSize, fsyncPolicy, groupCommitMs);
+            long start = System.nanoTime();
+            long restored = journal.recover(store);
+            if (restored > 0) {
+                System.out.println("Recovered " + restored + " messages for room " + name + " from " + dir
+                        + " in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+            }
+            journals.add(journal);
+            return new ChatRoom(name, new JournaledMessageStore(store, journal));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open the message journal in " + dir, e);
+        }
+    }
+}
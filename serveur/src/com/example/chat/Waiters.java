@@ -0,0 +1,45 @@
+package com.example.chat;
+
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+// What long polls park on without holding a thread: a waiter is registered,
+// the caller checks its condition, then either cancels the waiter or parks it
+// until the next signalAll() or its timeout. Registering before checking means
+// a signal in between is never missed. A waiter that times out is removed,
+// rather than left on a shared future until the next signal.
+final class Waiters {
+
+    private final Set<CompletableFuture<Void>> parked = ConcurrentHashMap.newKeySet();
+
+    CompletableFuture<Void> register() {
+        CompletableFuture<Void> waiter = new CompletableFuture<>();
+        parked.add(waiter);
+        return waiter;
+    }
+
+    void cancel(CompletableFuture<Void> waiter) {
+        parked.remove(waiter);
+    }
+
+    // Completes on executor once the waiter is signalled or timeoutNanos pass,
+    // so the signalling thread only hands the wake-up over
+    CompletableFuture<Void> park(CompletableFuture<Void> waiter, long timeoutNanos, Executor executor) {
+        return waiter.completeOnTimeout(null, timeoutNanos, TimeUnit.NANOSECONDS)
+                .whenCompleteAsync((ignored, failure) -> parked.remove(waiter), executor);
+    }
+
+    void signalAll() {
+        for (CompletableFuture<Void> waiter : parked) {
+            parked.remove(waiter);
+            waiter.complete(null);
+        }
+    }
+
+    int size() {
+        return parked.size();
+    }
+}
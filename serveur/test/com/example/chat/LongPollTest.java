@@ -0,0 +1,106 @@
+package com.example.chat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+// Parked long polls hold no thread: hundreds of them on a one-thread executor
+// leave it free and are all woken by one send. Waiters that time out are
+// dropped, and the blocking waits of the JAX-WS path are capped so that they
+// cannot take every thread. Run with -ea; fails with an AssertionError.
+public class LongPollTest {
+
+    public static void main(String[] args) throws Exception {
+        parkedWaitsHoldNoThread(500);
+        timedOutWaitersAreDropped(100);
+        blockingWaitsAreCapped();
+        System.out.println("LongPollTest passed");
+    }
+
+    static void parkedWaitsHoldNoThread(int waits) throws Exception {
+        RoomRegistry rooms = new RoomRegistry(16, null);
+        ChatServiceImpl service = new ChatServiceImpl(rooms);
+        service.sendRoomMessage("busy", "alice", "first");
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            List<CompletableFuture<ChatMessageBatch>> parked = new ArrayList<>();
+            for (int i = 0; i < waits; i++) {
+                parked.add(service.waitForRoomChatMessages("busy", 1, 10_000, executor));
+            }
+            check(rooms.find("busy").waiting() == waits, "parked " + rooms.find("busy").waiting());
+            // Sends and other work still get the only thread
+            executor.submit(() -> service.sendRoomMessage("other", "bob", "not starved")).get(1, TimeUnit.SECONDS);
+            check(parked.stream().noneMatch(CompletableFuture::isDone), "woken by another room");
+
+            service.sendRoomMessage("busy", "bob", "wake up");
+            for (CompletableFuture<ChatMessageBatch> wait : parked) {
+                ChatMessageBatch batch = wait.get(5, TimeUnit.SECONDS);
+                check(batch.getLastSeq() == 2 && batch.getMessages().size() == 1, "woken with the message");
+            }
+            check(rooms.find("busy").waiting() == 0, "left parked " + rooms.find("busy").waiting());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    static void timedOutWaitersAreDropped(int waits) throws Exception {
+        RoomRegistry rooms = new RoomRegistry(16, null);
+        ChatServiceImpl service = new ChatServiceImpl(rooms);
+        service.sendRoomMessage("quiet", "alice", "first");
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            List<CompletableFuture<ChatMessageBatch>> parked = new ArrayList<>();
+            for (int i = 0; i < waits; i++) {
+                parked.add(service.waitForRoomChatMessages("quiet", 1, 50, executor));
+            }
+            for (CompletableFuture<ChatMessageBatch> wait : parked) {
+                ChatMessageBatch batch = wait.get(5, TimeUnit.SECONDS);
+                check(batch.getLastSeq() == 1 && batch.getMessages().isEmpty(), "empty after the timeout");
+            }
+            check(rooms.find("quiet").waiting() == 0, "left parked " + rooms.find("quiet").waiting());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    static void blockingWaitsAreCapped() throws Exception {
+        ChatServiceImpl service = new ChatServiceImpl(new RoomRegistry(16, null), 0, 2);
+        service.sendRoomMessage("capped", "alice", "first");
+        List<CompletableFuture<ChatMessageBatch>> blocked = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            blocked.add(CompletableFuture.supplyAsync(() -> service.waitForRoomChatMessages("capped", 1, 10_000),
+                    Executors.newSingleThreadExecutor(daemon())));
+        }
+        Thread.sleep(200);
+        long start = System.nanoTime();
+        ChatMessageBatch busy = service.waitForRoomChatMessages("capped", 1, 10_000);
+        check(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1_000, "answered at once over the cap");
+        check(busy.getMessages().isEmpty() && busy.getNextPollMs() == ChatServiceImpl.BUSY_RETRY_MS,
+                "asked to come back later " + busy.getNextPollMs());
+
+        service.sendRoomMessage("capped", "bob", "wake up");
+        for (CompletableFuture<ChatMessageBatch> wait : blocked) {
+            check(wait.get(5, TimeUnit.SECONDS).getMessages().size() == 1, "blocked wait woken");
+        }
+        ChatMessageBatch after = service.waitForRoomChatMessages("capped", 2, 50);
+        check(after.getNextPollMs() == null, "slots released " + after.getNextPollMs());
+    }
+
+    private static ThreadFactory daemon() {
+        return runnable -> {
+            Thread thread = new Thread(runnable);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static void check(boolean condition, String what) {
+        if (!condition) {
+            throw new AssertionError(what);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.example.chat;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+// A small journaled ring lapped many times without a retention policy: the
+// compactor must archive every overwritten message exactly once, delete the
+// journal segments below what it archived, and a restart must carry on after
+// them. Beyond one capacity's worth between two passes, overwritten messages
+// are counted as lost. Run with -ea; fails with an AssertionError.
+public class MessageCompactorTest {
+
+    public static void main(String[] args) throws Exception {
+        Path dir = Files.createTempDirectory("chat-compactor");
+        try {
+            archivesLappedMessagesAndDropsSegments(dir);
+            countsWhatTheQueueCannotHold();
+        } finally {
+            delete(dir);
+        }
+        System.out.println("MessageCompactorTest passed");
+    }
+
+    static void archivesLappedMessagesAndDropsSegments(Path dir) throws Exception {
+        Path journalDir = dir.resolve("journal");
+        MessageArchive archive = new MessageArchive(dir.resolve("archive"));
+        RetentionPolicy none = new RetentionPolicy(0, 0, 0);
+        RoomRegistry rooms = new RoomRegistry(8, journalDir, 1024, FsyncPolicy.OS, 10, true);
+        ChatRoom room = rooms.room(RoomRegistry.DEFAULT_ROOM);
+        MessageCompactor compactor = new MessageCompactor(rooms, none, archive);
+        for (int i = 1; i <= 300; i++) {
+            room.post("alice", "message " + i);
+            // A pass at least every capacity's worth of messages loses none
+            if (i % 8 == 0) {
+                compactor.compact();
+            }
+        }
+        compactor.compact();
+
+        List<Long> archived = archivedSeqs(archive.getDirectory().resolve(RoomRegistry.DEFAULT_ROOM));
+        List<Long> expected = new ArrayList<>();
+        for (long seq = 1; seq <= 292; seq++) {
+            expected.add(seq);
+        }
+        check(archived.equals(expected), "archived 1..292 once, got " + archived.size() + " " + archived);
+        check(compactor.archived() == 292, "archived count " + compactor.archived());
+        check(room.getStore().overwrittenLost() == 0, "nothing lost");
+
+        List<Path> segments = segments(journalDir);
+        String newest = segments.get(segments.size() - 1).getFileName().toString();
+        check(segments.size() <= 2 && Integer.parseInt(newest.substring(0, 8)) > 4, "segments deleted " + segments);
+        check(Files.exists(journalDir.resolve("discarded.seq")), "floor recorded");
+
+        RoomRegistry restarted = new RoomRegistry(8, journalDir, 1024, FsyncPolicy.OS, 10, true);
+        MessageStore store = restarted.room(RoomRegistry.DEFAULT_ROOM).getStore();
+        check(store.lastSequence() == 300, "recovered through " + store.lastSequence());
+        List<ChatMessage> held = store.since(0).getMessages();
+        check(held.size() == 8 && held.get(0).getSeq() == 293, "recovered 293..300 " + held);
+        check(store.evict(none, System.currentTimeMillis()).isEmpty(), "nothing archived twice after restart");
+        check(restarted.room(RoomRegistry.DEFAULT_ROOM).post("bob", "after") == 301, "sequence carries on");
+    }
+
+    static void countsWhatTheQueueCannotHold() {
+        RingBufferMessageStore store = new RingBufferMessageStore(4, true);
+        for (int i = 1; i <= 12; i++) {
+            store.append("alice", "message " + i, i);
+        }
+        check(store.overwrittenLost() == 4, "lost " + store.overwrittenLost());
+        List<ChatMessage> evicted = store.evict(new RetentionPolicy(0, 0, 0), 0);
+        check(evicted.size() == 4 && evicted.get(0).getSeq() == 1, "queued the first lap " + evicted);
+        check(store.evict(new RetentionPolicy(0, 0, 0), 0).isEmpty(), "handed over once");
+    }
+
+    private static List<Path> segments(Path journalDir) throws IOException {
+        List<Path> segments = new ArrayList<>();
+        try (Stream<Path> files = Files.list(journalDir)) {
+            files.filter(file -> file.getFileName().toString().endsWith(".journal")).sorted().forEach(segments::add);
+        }
+        return segments;
+    }
+
+    private static List<Long> archivedSeqs(Path roomDir) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (Stream<Path> stream = Files.list(roomDir)) {
+            stream.sorted().forEach(files::add);
+        }
+        List<Long> seqs = new ArrayList<>();
+        for (Path file : files) {
+            try (BufferedReader in = new BufferedReader(new InputStreamReader(
+                    new GZIPInputStream(Files.newInputStream(file)), StandardCharsets.UTF_8))) {
+                for (String line = in.readLine(); line != null; line = in.readLine()) {
+                    seqs.add(Long.parseLong(line.substring(0, line.indexOf('\t'))));
+                }
+            }
+        }
+        return seqs;
+    }
+
+    private static void delete(Path dir) throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    private static void check(boolean condition, String what) {
+        if (!condition) {
+            throw new AssertionError(what);
+        }
+    }
+}
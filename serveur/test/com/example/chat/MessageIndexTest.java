@@ -0,0 +1,113 @@
+package com.example.chat;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+// Messages published out of order, a writer that never publishes, and pruning
+// as the ring laps. Run with -ea; fails with an AssertionError.
+public class MessageIndexTest {
+
+    public static void main(String[] args) {
+        outOfOrderPublishes();
+        unpublishedMessageDoesNotStall();
+        pruneAsTheRingLaps();
+        System.out.println("MessageIndexTest passed");
+    }
+
+    // 3 is published before 2: the index must not see 3 until 2 is there, and
+    // then find both
+    static void outOfOrderPublishes() {
+        RingBufferMessageStore ring = new RingBufferMessageStore(16);
+        long[] unpublished = {0};
+        MessageStore store = withUnpublished(ring, unpublished);
+        MessageIndex index = new MessageIndex();
+        ring.append("alice", "hello one", 1);
+        ring.append("bob", "hello two", 2);
+        ring.append("carol", "hello three", 3);
+        unpublished[0] = 2;
+        check(seqs(index.search("hello", 10, store)).equals(List.of(1L)), "only 1 before 2 is published");
+        unpublished[0] = 0;
+        check(seqs(index.search("hello", 10, store)).equals(List.of(3L, 2L, 1L)), "all once 2 is published");
+        check(seqs(index.search("bob", 10, store)).equals(List.of(2L)), "2 indexed once");
+    }
+
+    // A sequence number claimed but never published only holds the index back
+    // until the ring laps it
+    static void unpublishedMessageDoesNotStall() {
+        RingBufferMessageStore ring = new RingBufferMessageStore(4);
+        MessageStore store = withUnpublished(ring, new long[] {2});
+        MessageIndex index = new MessageIndex();
+        for (int i = 1; i <= 3; i++) {
+            ring.append("alice", "word" + i, i);
+        }
+        check(index.search("word3", 10, store).isEmpty(), "held back behind 2");
+        for (int i = 4; i <= 8; i++) {
+            ring.append("alice", "word" + i, i);
+        }
+        // 2 is out of the ring now: readers start at 5
+        check(seqs(index.search("word8", 10, store)).equals(List.of(8L)), "indexed past the gap");
+        check(seqs(index.search("word*", 10, store)).equals(List.of(8L, 7L, 6L, 5L)), "prefix past the gap");
+    }
+
+    static void pruneAsTheRingLaps() {
+        RingBufferMessageStore store = new RingBufferMessageStore(8);
+        MessageIndex index = new MessageIndex();
+        for (int i = 1; i <= 1000; i++) {
+            store.append("alice", "common unique" + i, i);
+            if (i % 5 == 0) {
+                index.catchUp(store);
+            }
+        }
+        index.catchUp(store);
+        // alice, common and at most two capacities' worth of unique terms
+        check(index.termCount() <= 2 + 2 * 8, "pruned to " + index.termCount() + " terms");
+        check(seqs(index.search("common", 100, store)).equals(List.of(1000L, 999L, 998L, 997L, 996L, 995L, 994L, 993L)),
+                "newest still found");
+        check(seqs(index.search("unique99*", 100, store)).equals(List.of(999L, 998L, 997L, 996L, 995L, 994L, 993L)),
+                "prefix after pruning");
+    }
+
+    // The ring as seen while the writer of message unpublished[0] has claimed
+    // its sequence number but not published yet: reads stop before it
+    private static MessageStore withUnpublished(MessageStore ring, long[] unpublished) {
+        return (MessageStore) Proxy.newProxyInstance(MessageIndexTest.class.getClassLoader(),
+                new Class<?>[] {MessageStore.class}, (proxy, method, methodArgs) -> {
+                    Object result;
+                    try {
+                        result = method.invoke(ring, methodArgs);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                    if (method.getName().equals("since")) {
+                        ChatMessageBatch batch = (ChatMessageBatch) result;
+                        List<ChatMessage> visible = new ArrayList<>();
+                        for (ChatMessage message : batch.getMessages()) {
+                            if (message.getSeq() == unpublished[0]) {
+                                break;
+                            }
+                            visible.add(message);
+                        }
+                        long end = visible.isEmpty() ? Math.min(batch.getLastSeq(), (Long) methodArgs[0])
+                                : visible.get(visible.size() - 1).getSeq();
+                        result = new ChatMessageBatch(end, visible);
+                    }
+                    return result;
+                });
+    }
+
+    private static List<Long> seqs(List<ChatMessage> messages) {
+        List<Long> seqs = new ArrayList<>();
+        for (ChatMessage message : messages) {
+            seqs.add(message.getSeq());
+        }
+        return seqs;
+    }
+
+    private static void check(boolean condition, String what) {
+        if (!condition) {
+            throw new AssertionError(what);
+        }
+    }
+}
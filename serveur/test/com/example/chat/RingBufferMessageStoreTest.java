@@ -0,0 +1,183 @@
+package com.example.chat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+// Concurrent appends and reads on a small ring that writers lap many times,
+// then send/get throughput at increasing thread counts. Run with -ea; fails
+// with an AssertionError.
+public class RingBufferMessageStoreTest {
+
+    public static void main(String[] args) throws Exception {
+        appendAndRead();
+        olderMessageNeverReplacesNewer();
+        concurrentAppendsAndReads(4, 4, 64, 200_000);
+        throughput(args.length > 0 ? Integer.parseInt(args[0]) : 8);
+        System.out.println("RingBufferMessageStoreTest passed");
+    }
+
+    static void appendAndRead() {
+        RingBufferMessageStore store = new RingBufferMessageStore(4);
+        for (int i = 1; i <= 6; i++) {
+            check(store.append("u" + i, "m" + i, i) == i, "sequence " + i);
+        }
+        ChatMessageBatch all = store.since(0);
+        check(all.getLastSeq() == 6, "last seq " + all.getLastSeq());
+        check(texts(all.getMessages()).equals(List.of("m3", "m4", "m5", "m6")), "ring keeps the last 4 " + texts(all.getMessages()));
+        check(texts(store.since(5).getMessages()).equals(List.of("m6")), "since 5");
+        ChatMessagePage page = store.before(6, 2);
+        check(page.getFirstSeq() == 4 && page.getLastSeq() == 5 && texts(page.getMessages()).equals(List.of("m4", "m5")),
+                "page before 6");
+        check(store.get(2) == null && "m3".equals(store.get(3).getText()), "get");
+        check(store.retainedBytes() == 4 * RetentionPolicy.estimateBytes(2), "retained bytes " + store.retainedBytes());
+        check(store.appendAll(List.of(new MessageInput("u", "b1"), new MessageInput("u", "b2")), 7) == 8, "batch of half");
+        try {
+            store.appendAll(List.of(new MessageInput("u", "x"), new MessageInput("u", "y"), new MessageInput("u", "z")), 8);
+            throw new AssertionError("batch above half the capacity accepted");
+        } catch (IllegalArgumentException expected) {
+            check(store.lastSequence() == 8, "rejected batch claimed no sequence");
+        }
+    }
+
+    // Once the ring holds 5..8, seq 4 arriving late (restore publishes like a
+    // writer descheduled since it claimed 4) must leave 8 readable and counted
+    static void olderMessageNeverReplacesNewer() {
+        RingBufferMessageStore store = new RingBufferMessageStore(4);
+        for (int i = 1; i <= 8; i++) {
+            store.append("u", "m" + i, i);
+        }
+        long bytes = store.retainedBytes();
+        store.restore(new ChatMessage(4, "late", 0, "a much longer stale message"));
+        check(texts(store.since(0).getMessages()).equals(List.of("m5", "m6", "m7", "m8")),
+                "stale publish kept out " + texts(store.since(0).getMessages()));
+        check(store.retainedBytes() == bytes, "retained bytes unchanged " + store.retainedBytes() + " != " + bytes);
+    }
+
+    // Writers lap the ring continuously while readers poll it: every batch must
+    // be in order and contiguous where nothing was overwritten, and once the
+    // writers stop, readers must reach the last sequence and the byte count
+    // must match what the ring holds
+    static void concurrentAppendsAndReads(int writers, int readers, int capacity, int messagesPerWriter)
+            throws Exception {
+        RingBufferMessageStore store = new RingBufferMessageStore(capacity);
+        AtomicBoolean writing = new AtomicBoolean(true);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<Thread> threads = new ArrayList<>();
+        CountDownLatch writersDone = new CountDownLatch(writers);
+        for (int w = 0; w < writers; w++) {
+            String user = "writer" + w;
+            threads.add(new Thread(() -> {
+                try {
+                    for (int i = 0; i < messagesPerWriter; i++) {
+                        if (i % 8 == 0) {
+                            List<MessageInput> batch = new ArrayList<>();
+                            for (int j = 0; j < 4; j++) {
+                                batch.add(new MessageInput(user, "batch " + i + "." + j));
+                            }
+                            store.appendAll(batch, i);
+                        } else {
+                            store.append(user, "message " + i, i);
+                        }
+                    }
+                } finally {
+                    writersDone.countDown();
+                }
+            }));
+        }
+        for (int r = 0; r < readers; r++) {
+            threads.add(new Thread(() -> {
+                try {
+                    long lastSeq = 0;
+                    while (writing.get() || lastSeq < store.lastSequence()) {
+                        ChatMessageBatch batch = store.since(lastSeq);
+                        long previous = lastSeq;
+                        for (ChatMessage message : batch.getMessages()) {
+                            check(message.getSeq() > previous, "in order: " + message.getSeq() + " after " + previous);
+                            previous = message.getSeq();
+                        }
+                        check(batch.getLastSeq() >= previous, "batch end " + batch.getLastSeq() + " before " + previous);
+                        lastSeq = Math.max(lastSeq, batch.getLastSeq());
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        writersDone.await();
+        writing.set(false);
+        for (Thread thread : threads) {
+            thread.join(30_000);
+            check(!thread.isAlive(), "reader stalled at " + store.since(store.lastSequence() - capacity).getLastSeq()
+                    + " of " + store.lastSequence());
+        }
+        if (failure.get() != null) {
+            throw new AssertionError("reader failed", failure.get());
+        }
+        long expected = (long) writers * messagesPerWriter / 8 * 7 + (long) writers * messagesPerWriter / 8 * 4;
+        check(store.lastSequence() == expected, "sequence " + store.lastSequence() + " != " + expected);
+        ChatMessageBatch tail = store.since(0);
+        check(tail.getLastSeq() == store.lastSequence(), "readable through " + tail.getLastSeq());
+        long bytes = 0;
+        long seq = store.lastSequence() - tail.getMessages().size();
+        for (ChatMessage message : tail.getMessages()) {
+            check(message.getSeq() == ++seq, "contiguous tail at " + message.getSeq());
+            bytes += RetentionPolicy.estimateBytes(message.getText().length());
+        }
+        check(tail.getMessages().size() == capacity, "full ring " + tail.getMessages().size());
+        check(store.retainedBytes() == bytes, "retained bytes " + store.retainedBytes() + " != " + bytes);
+    }
+
+    // Not a pass/fail check: prints send and get rates as threads are added
+    static void throughput(int maxThreads) throws Exception {
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            RingBufferMessageStore store = new RingBufferMessageStore(RingBufferMessageStore.DEFAULT_CAPACITY);
+            for (int i = 0; i < RingBufferMessageStore.DEFAULT_CAPACITY; i++) {
+                store.append("user", "warm up", i);
+            }
+            LongAdder sends = new LongAdder();
+            LongAdder gets = new LongAdder();
+            AtomicBoolean running = new AtomicBoolean(true);
+            List<Thread> workers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                boolean sender = t % 2 == 0;
+                workers.add(new Thread(() -> {
+                    while (running.get()) {
+                        if (sender) {
+                            store.append("user", "hello everyone", 0);
+                            sends.increment();
+                        } else {
+                            store.since(store.lastSequence() - 100);
+                            gets.increment();
+                        }
+                    }
+                }));
+            }
+            workers.forEach(Thread::start);
+            Thread.sleep(500);
+            running.set(false);
+            for (Thread worker : workers) {
+                worker.join();
+            }
+            System.out.printf("%d threads: %,d sends/s, %,d gets/s%n", threads, sends.sum() * 2, gets.sum() * 2);
+        }
+    }
+
+    private static List<String> texts(List<ChatMessage> messages) {
+        List<String> texts = new ArrayList<>();
+        for (ChatMessage message : messages) {
+            texts.add(message.getText());
+        }
+        return texts;
+    }
+
+    private static void check(boolean condition, String what) {
+        if (!condition) {
+            throw new AssertionError(what);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.chat;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+// Only sends create rooms, and no more than maxRooms of them; a wait on a
+// room that does not exist yet is woken by the send that creates it; names
+// that could escape the journal directory are refused. Run with -ea; fails
+// with an AssertionError.
+public class RoomRegistryTest {
+
+    public static void main(String[] args) throws Exception {
+        readsAndWaitsDoNotCreateRooms();
+        waitIsWokenByTheCreatingSend();
+        roomCountIsCapped();
+        invalidNames();
+        System.out.println("RoomRegistryTest passed");
+    }
+
+    static void readsAndWaitsDoNotCreateRooms() {
+        ChatServiceImpl service = new ChatServiceImpl(registry(10));
+        service.getRoomChatMessages("a");
+        service.getRoomChatMessagesSince("b", 0);
+        service.searchRoomChatMessages("c", "x", 10);
+        ChatMessageBatch batch = service.waitForRoomChatMessages("d", 0, 50);
+        check(batch.getLastSeq() == 0 && batch.getMessages().isEmpty(), "empty batch for an unknown room");
+        check(service.listRooms().isEmpty(), "rooms " + service.listRooms());
+    }
+
+    static void waitIsWokenByTheCreatingSend() throws Exception {
+        ChatServiceImpl service = new ChatServiceImpl(registry(10));
+        CompletableFuture<ChatMessageBatch> waiting =
+                CompletableFuture.supplyAsync(() -> service.waitForRoomChatMessages("later", 0, 10_000));
+        Thread.sleep(100);
+        long start = System.nanoTime();
+        service.sendRoomMessage("later", "alice", "hello");
+        ChatMessageBatch batch = waiting.get(5, TimeUnit.SECONDS);
+        check(batch.getLastSeq() == 1 && batch.getMessages().size() == 1, "woken with the message " + batch.getLastSeq());
+        check(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 2_000, "woken right away");
+    }
+
+    static void roomCountIsCapped() {
+        RoomRegistry rooms = registry(2);
+        ChatServiceImpl service = new ChatServiceImpl(rooms);
+        service.sendRoomMessage("one", "u", "m");
+        service.sendRoomMessage("two", "u", "m");
+        try {
+            service.sendRoomMessage("three", "u", "m");
+            throw new AssertionError("third room created");
+        } catch (IllegalArgumentException expected) {
+            check(rooms.size() == 2, "rooms " + rooms.names());
+        }
+        service.sendRoomMessage("two", "u", "existing rooms still take messages");
+        check(rooms.find("two").getStore().lastSequence() == 2, "sent to an existing room");
+    }
+
+    static void invalidNames() {
+        RoomRegistry rooms = registry(10);
+        for (String name : new String[] {"../etc", "a.b", "a/b", "x".repeat(65), "espace ici"}) {
+            try {
+                rooms.room(name);
+                throw new AssertionError("accepted room name " + name);
+            } catch (IllegalArgumentException expected) {
+                // Rejected before anything is created
+            }
+        }
+        check(rooms.size() == 0, "rooms " + rooms.names());
+    }
+
+    private static RoomRegistry registry(int maxRooms) {
+        return new RoomRegistry(16, null, MessageJournal.DEFAULT_SEGMENT_SIZE, FsyncPolicy.GROUP, 10, false, maxRooms);
+    }
+
+    private static void check(boolean condition, String what) {
+        if (!condition) {
+            throw new AssertionError(what);
+        }
+    }
+}